@@ -166,7 +166,16 @@ public class PingApplication extends Application {
 	}
 
 	/** 
-	 * Sends a ping packet if this is an active application instance.
+	 * Returns false; the application sets a timer for the next ping.
+	 */
+	@Override
+	public boolean isPolled() {
+		return false;
+	}
+
+	/** 
+	 * Sends a ping packet if this is an active application instance and
+	 * sets the timer for the next ping.
 	 * 
 	 * @param host to which the application instance is attached
 	 */
@@ -188,6 +197,7 @@ public class PingApplication extends Application {
 			
 			this.lastPing = curTime;
 		}
+		setTimer(host, this.lastPing + this.interval);
 	}
 
 	/**
@@ -17,7 +17,11 @@ import java.util.List;
  * 
  * <p>
  * In addition, the application's <code>update()</code> method is called every
- * simulation cycle.
+ * simulation cycle. Applications that only need to do something at certain
+ * times can return <code>false</code> from {@link #isPolled()} and set a
+ * timer with {@link #setTimer(DTNHost, double)} instead; such applications
+ * are updated once when the host is initialized and then whenever their
+ * timer expires.
  * </p>
  * 
  * <p>
@@ -69,12 +73,39 @@ public abstract class Application {
 	
 
 	/** 
-	 * Called every simulation cycle.
+	 * Called every simulation cycle, or only when the application's timer
+	 * expires if the application is not polled (see {@link #isPolled()}).
 	 * 
 	 * @param host	The host this application instance is attached to.
 	 */
 	public abstract void update(DTNHost host);
 	
+	/**
+	 * Returns true if the application should be updated every simulation
+	 * cycle. Applications that return false are updated only when their
+	 * timer (see {@link #setTimer(DTNHost, double)}) expires, and once when
+	 * the host is initialized so that they can set their first timer.
+	 * The value should not change during the lifetime of the application.
+	 * This implementation returns always true.
+	 * 
+	 * @return	True if the application is updated every cycle.
+	 */
+	public boolean isPolled() {
+		return true;
+	}
+	
+	/**
+	 * Sets the timer of the application: the application is updated at the
+	 * first update of the host at or after the given time. Replaces the
+	 * previous timer of the application, if any.
+	 * 
+	 * @param host	The host this application instance is attached to.
+	 * @param time	The simulation time when the application is updated.
+	 */
+	protected void setTimer(DTNHost host, double time) {
+		host.getRouter().setApplicationTimer(this, time);
+	}
+	
 	/** 
 	 * <p>
 	 * Returns an unique application ID. The application will only receive
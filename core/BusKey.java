@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A typed key of the {@link ModuleCommunicationBus}. Keys are registered
+ * once, usually to a static field of the module that uses them, and each key
+ * has an index to the value and listener arrays of the buses. Registering the
+ * same name again returns the same key. Double and Integer values are stored
+ * in the buses as primitives, so e.g.
+ * {@link ModuleCommunicationBus#updateDouble(BusKey, double)} doesn't
+ * require a map lookup or boxing.<BR>
+ * The String keyed methods of the bus use the keys too: a name that hasn't
+ * been registered is registered as a key of Object values when it is first
+ * used, and such a key can later be registered with a more specific type.
+ * Registrations are kept over simulation resets.
+ * @param <T> Type of the values of the key
+ */
+public class BusKey<T> {
+	/** The registered keys by name */
+	private static HashMap<String, BusKey<?>> keys =
+		new HashMap<String, BusKey<?>>();
+	/** The registered keys by index */
+	private static ArrayList<BusKey<?>> keysByIndex =
+		new ArrayList<BusKey<?>>();
+
+	/** Name of the key */
+	private String name;
+	/** Type of the values */
+	private Class<?> type;
+	/** Index of the key in the arrays of the buses */
+	private int index;
+
+	private BusKey(String name, Class<?> type, int index) {
+		this.name = name;
+		this.type = type;
+		this.index = index;
+	}
+
+	/**
+	 * Returns the key with the given name, registering a new key if no key
+	 * has been registered with the name.
+	 * @param name Name of the key (the name used with the String keyed
+	 * methods of the bus). Should be such that no other class accidentally
+	 * uses the same name.
+	 * @param type Type of the values of the key
+	 * @return The key
+	 * @throws SimError if the name has already been registered for values of
+	 * another type
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> BusKey<T> register(String name, Class<T> type)
+		throws SimError {
+		BusKey<?> key = keys.get(name);
+		if (key == null) {
+			key = new BusKey<T>(name, type, keys.size());
+			keys.put(name, key);
+			keysByIndex.add(key);
+		}
+		else if (key.type != type) {
+			if (key.type != Object.class) {
+				throw new SimError("Bus key " + name + " is already " +
+						"registered for " + key.type.getSimpleName() +
+						" values");
+			}
+			key.type = type; /* first used with the String keyed methods */
+		}
+		return (BusKey<T>)key;
+	}
+
+	/**
+	 * Returns the key with the given name, registering a key for Object
+	 * values if no key has been registered with the name
+	 * @param name Name of the key
+	 * @return The key
+	 */
+	static BusKey<?> forName(String name) {
+		BusKey<?> key = keys.get(name);
+		if (key == null) {
+			key = register(name, Object.class);
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the number of registered keys
+	 * @return the number of registered keys
+	 */
+	static int getNrofKeys() {
+		return keys.size();
+	}
+
+	/**
+	 * Returns the name of the key with the given index
+	 * @param index Index of the key
+	 * @return The name of the key
+	 */
+	static String getName(int index) {
+		return keysByIndex.get(index).name;
+	}
+
+	/**
+	 * Returns the index of the key in the arrays of the buses
+	 * @return the index of the key
+	 */
+	int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Returns the name of the key
+	 * @return the name of the key
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the type of the values of the key
+	 * @return the type of the values
+	 */
+	public Class<?> getType() {
+		return this.type;
+	}
+
+	public String toString() {
+		return "BusKey " + this.name;
+	}
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * This interface should be implemented by classes that want to be notified
+ * of changes to values of typed keys (see {@link BusKey}) in
+ * ModuleCommunicationBuses. Unlike with {@link ModuleCommunicationListener},
+ * the new value is not passed to the listener (boxed) but the listener reads
+ * it from the bus.
+ */
+public interface BusKeyListener {
+
+	/**
+	 * This method is called whenever a value, whose changes the module has
+	 * subscribed to, changes.
+	 * @param key The key of the value
+	 * @param bus The bus where the value changed
+	 */
+	public void busValueChanged(BusKey<?> key, ModuleCommunicationBus bus);
+
+}
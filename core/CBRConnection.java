@@ -7,10 +7,15 @@ package core;
 import routing.MessageRouter;
 
 /**
- * A constant bit-rate connection between two DTN nodes.
+ * A constant bit-rate connection between two DTN nodes. If the interfaces
+ * allow concurrent transfers, the speed is divided equally among the 
+ * transfers of the more loaded interface 
+ * (see {@link NetworkInterface#CONCURRENT_TRANSFERS_S}).
  */
 public class CBRConnection extends Connection {
 	private int speed;
+	/** current speed of the connection (speed divided by the share count) */
+	private double currentSpeed;
 	private double transferDoneTime;
 
 	/**
@@ -27,6 +32,7 @@ public class CBRConnection extends Connection {
 			DTNHost toNode,	NetworkInterface toInterface, int connectionSpeed) {
 		super(fromNode, fromInterface, toNode, toInterface);
 		this.speed = connectionSpeed;
+		this.currentSpeed = connectionSpeed;
 		this.transferDoneTime = 0;
 
 	}
@@ -53,9 +59,9 @@ public class CBRConnection extends Connection {
 		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
 
 		if (retVal == MessageRouter.RCV_OK) {
-			this.msgOnFly = newMessage;
 			this.transferDoneTime = SimClock.getTime() + 
-			(1.0*m.getSize()) / this.speed;
+			(1.0*m.getSize()) / this.currentSpeed;
+			setMsgOnFly(newMessage); // may change the current speed
 		}
 
 		return retVal;
@@ -70,6 +76,7 @@ public class CBRConnection extends Connection {
 				msgFromNode,getRemainingByteCount());
 		clearMsgOnFly();
 		this.transferDoneTime = 0;
+		transferEnded();
 	}
 
 	/**
@@ -91,7 +98,29 @@ public class CBRConnection extends Connection {
 	 * returns the current speed of the connection
 	 */
 	public double getSpeed() {
-		return this.speed;
+		return this.currentSpeed;
+	}
+	
+	/**
+	 * Recalculates the current speed from the number of transfers sharing
+	 * the interfaces' transmit speed. The remaining part of an ongoing 
+	 * transfer continues at the new speed.
+	 */
+	@Override
+	protected void transferShareChanged() {
+		double newSpeed = (1.0 * this.speed) / getTransferShareCount();
+		if (newSpeed == this.currentSpeed) {
+			return;
+		}
+		
+		if (this.msgOnFly != null) {
+			double now = SimClock.getTime();
+			double bytesLeft = (this.transferDoneTime - now) * this.currentSpeed;
+			if (bytesLeft > 0) {
+				this.transferDoneTime = now + bytesLeft / newSpeed;
+			}
+		}
+		this.currentSpeed = newSpeed;
 	}
 
 	/**
@@ -108,7 +137,7 @@ public class CBRConnection extends Connection {
 		}
 
 		remaining = (int)((this.transferDoneTime - SimClock.getTime()) 
-				* this.speed);
+				* this.currentSpeed);
 
 		return (remaining > 0 ? remaining : 0);
 	}
@@ -63,6 +63,11 @@ public abstract class Connection {
 	 * @param state True if the connection is up, false if not
 	 */
 	public void setUpState(boolean state) {
+		if (this.isUp != state && this.msgOnFly != null) {
+			/* only transfers of the connections that are up keep the hosts 
+			 * busy */
+			changeBusyCount(state ? 1 : -1);
+		}
 		this.isUp = state;
 	}
 
@@ -96,6 +101,7 @@ public abstract class Connection {
 		getOtherNode(msgFromNode).messageAborted(this.msgOnFly.getId(),
 				msgFromNode, bytesRemaining);
 		clearMsgOnFly();
+		transferEnded();
 	}	
 
 	/**
@@ -111,9 +117,60 @@ public abstract class Connection {
 	 * Calls to {@link #getMessage()} will return null after this.
 	 */
 	protected void clearMsgOnFly() {
+		if (this.msgOnFly != null && this.isUp) {
+			changeBusyCount(-1);
+		}
 		this.msgOnFly = null;
 		this.msgFromNode = null;		
 	}
+	
+	/**
+	 * Sets the message that this connection is currently transferring and
+	 * marks the connection busy for the hosts in both ends of it.
+	 * @param m The message that is being transferred
+	 */
+	protected void setMsgOnFly(Message m) {
+		assert this.msgOnFly == null : "Already transferring " + this.msgOnFly;
+		this.msgOnFly = m;
+		if (this.isUp) {
+			changeBusyCount(1);
+		}
+	}
+	
+	/**
+	 * Changes the busy connection counters of the hosts and interfaces in 
+	 * both ends of the connection.
+	 * @param delta How much the counters are changed
+	 * @see DTNHost#getNrofBusyConnections()
+	 * @see NetworkInterface#getNrofBusyConnections()
+	 */
+	private void changeBusyCount(int delta) {
+		this.fromNode.changeBusyConnectionCount(delta);
+		this.toNode.changeBusyConnectionCount(delta);
+		this.fromInterface.changeBusyConnectionCount(delta);
+		this.toInterface.changeBusyConnectionCount(delta);
+		this.fromInterface.transferSharesChanged();
+		this.toInterface.transferSharesChanged();
+	}
+	
+	/**
+	 * Returns the number of transfers this connection's transfer shares 
+	 * the transmit speed with, i.e., the larger share count of the 
+	 * interfaces in the ends of the connection.
+	 * @return The number of transfers sharing the transmit speed
+	 * @see NetworkInterface#getTransferShareCount()
+	 */
+	protected int getTransferShareCount() {
+		return Math.max(this.fromInterface.getTransferShareCount(),
+				this.toInterface.getTransferShareCount());
+	}
+	
+	/**
+	 * Called when the number of transfers sharing the transmit speed of
+	 * either of the interfaces may have changed. Connections whose speed
+	 * depends on the share should recalculate it here.
+	 */
+	protected void transferShareChanged() {}
 
 	/**
 	 * Finalizes the transfer of the currently transferred message.
@@ -130,6 +187,18 @@ public abstract class Connection {
 		getOtherNode(msgFromNode).messageTransferred(this.msgOnFly.getId(),
 				msgFromNode);
 		clearMsgOnFly();
+		transferEnded();
+	}
+	
+	/**
+	 * Informs the hosts in both ends of the connection that their routing
+	 * state has changed. Should be called when a transfer ends since the
+	 * hosts may be able to start (or accept) new transfers then.
+	 * @see DTNHost#routingStateChanged()
+	 */
+	protected void transferEnded() {
+		this.fromNode.routingStateChanged();
+		this.toNode.routingStateChanged();
 	}
 
 	/**
@@ -140,11 +209,15 @@ public abstract class Connection {
 
 	/**
 	 * Returns true if the connection is ready to transfer a message (connection
-	 * is up and there is no message being transferred).
+	 * is up, there is no message being transferred and neither of the 
+	 * interfaces has reached its concurrent transfer limit).
 	 * @return true if the connection is ready to transfer a message
+	 * @see NetworkInterface#isTransferLimitReached()
 	 */
 	public boolean isReadyForTransfer() {
-		return this.isUp && this.msgOnFly == null; 
+		return this.isUp && this.msgOnFly == null && 
+			!this.fromInterface.isTransferLimitReached() &&
+			!this.toInterface.isTransferLimitReached(); 
 	}
 
 	/**
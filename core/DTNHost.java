@@ -34,6 +34,10 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
 	private ModuleCommunicationBus comBus;
+	/** number of connections this host currently has */
+	private int connectionCount;
+	/** number of connections of this host that are transferring a message */
+	private int busyConnectionCount;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -151,12 +155,38 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 	 * @param con  The connection object whose state changed
 	 */
 	public void connectionUp(Connection con) {
+		this.connectionCount++;
+		routingStateChanged();
 		this.router.changedConnection(con);
 	}
 
 	public void connectionDown(Connection con) {
+		this.connectionCount--;
+		routingStateChanged();
 		this.router.changedConnection(con);
 	}
+	
+	/**
+	 * Informs the router of this host that its state has changed (see 
+	 * {@link MessageRouter#stateChanged()}) and wakes up the router of this
+	 * host and the routers of all the hosts this host is currently 
+	 * connected to. Should be called whenever the state of this host 
+	 * changes in a way that could give new work to the routers 
+	 * (see {@link MessageRouter#wakeUp()}).
+	 */
+	public void routingStateChanged() {
+		this.router.stateChanged();
+		if (!this.router.isSkippingIdle()) {
+			return; // all routers are updated anyway
+		}
+		
+		this.router.wakeUp();
+		for (NetworkInterface i : net) {
+			for (Connection c : i.getConnections()) {
+				c.getOtherNode(this).getRouter().wakeUp();
+			}
+		}
+	}
 
 	/**
 	 * Returns a copy of the list of connections this host has with other hosts
@@ -315,7 +345,8 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 	}
 
 	/**
-	 * Updates node's network layer and router.
+	 * Updates node's network layer and router. Router is updated only if
+	 * it is awake (see {@link MessageRouter#isAwake()}).
 	 * @param simulateConnections Should network layer be updated too
 	 */
 	public void update(boolean simulateConnections) {
@@ -328,7 +359,9 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 				i.update();
 			}
 		}
-		this.router.update();
+		if (this.router.isAwake()) {
+			this.router.update();
+		}
 	}
 
 	/**
@@ -502,12 +535,51 @@ public class DTNHost implements Comparable<DTNHost>, Iterable<Connection> {
 		return this.getAddress() - h.getAddress();
 	}
 	
+	/**
+	 * Returns the number of connections this host currently has with other
+	 * hosts (over all the interfaces). 
+	 * @return the number of connections
+	 */
 	public int getConnectionCount() {
-		int sum = 0;
-		for (NetworkInterface i : net) {
-			sum += i.connectionCount();
+		return this.connectionCount;
+	}
+	
+	/**
+	 * Returns the number of connections of this host that are not ready for
+	 * a new transfer because they are transferring a message (to either
+	 * direction).
+	 * @return the number of busy connections
+	 */
+	public int getNrofBusyConnections() {
+		return this.busyConnectionCount;
+	}
+	
+	/**
+	 * Changes the busy connection counter. Called by the connections of this
+	 * host when their transfers start or end, or they go down.
+	 * @param delta The amount to change the counter
+	 */
+	void changeBusyConnectionCount(int delta) {
+		this.busyConnectionCount += delta;
+		assert this.busyConnectionCount >= 0 : "Negative busy connection " +
+			"count at " + this;
+	}
+	
+	/**
+	 * Returns true if some interface of this host allows concurrent 
+	 * transfers and has capacity for one more transfer 
+	 * (see {@link NetworkInterface#CONCURRENT_TRANSFERS_S}).
+	 * @return true if a new transfer can be started next to the ongoing ones
+	 */
+	public boolean hasConcurrentTransferCapacity() {
+		for (int i=0, n=this.net.size(); i<n; i++) {
+			NetworkInterface ni = this.net.get(i);
+			if (ni.getConcurrentTransfers() > 1 && 
+					!ni.isTransferLimitReached()) {
+				return true;
+			}
 		}
-		return sum;
+		return false;
 	}
 	
 	public Iterator<Connection> iterator()
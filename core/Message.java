@@ -5,6 +5,7 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +46,11 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** Values of the primitive property slots by slot index (or null if 
+	 * no slot has been set, see {@link MessageSlot}) */
+	private long[] slotValues;
+	/** Bit mask of the slots that have a value */
+	private long slotsSet;
 	
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -198,6 +204,18 @@ public class Message implements Comparable<Message> {
 		return this.timeCreated;
 	}
 	
+	/**
+	 * Returns the time when the TTL of this message expires
+	 * @return The expiry time or Double.POSITIVE_INFINITY if the TTL is
+	 * infinite
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return this.timeCreated + this.initTtl * 60.0;
+	}
+	
 	/**
 	 * If this message is a response to a request, sets the request message
 	 * @param request The request message
@@ -269,6 +287,11 @@ public class Message implements Comparable<Message> {
 				updateProperty(key, m.getProperty(key));
 			}
 		}
+		
+		if (m.slotValues != null) {
+			this.slotValues = m.slotValues.clone();
+			this.slotsSet = m.slotsSet;
+		}
 	}
 	
 	/**
@@ -321,6 +344,95 @@ public class Message implements Comparable<Message> {
 		this.properties.put(key, value);
 	}
 	
+	/**
+	 * Returns true if the given slot has a value
+	 * @param slot The slot
+	 * @return True if a value has been set for the slot
+	 */
+	public boolean hasSlot(MessageSlot slot) {
+		return (this.slotsSet & (1L << slot.getIndex())) != 0;
+	}
+	
+	/**
+	 * Returns the int value of a slot
+	 * @param slot The slot
+	 * @return The value of the slot
+	 * @throws SimError if the slot has no value
+	 */
+	public int getInt(MessageSlot slot) throws SimError {
+		return (int)getLong(slot);
+	}
+	
+	/**
+	 * Returns the long value of a slot
+	 * @param slot The slot
+	 * @return The value of the slot
+	 * @throws SimError if the slot has no value
+	 */
+	public long getLong(MessageSlot slot) throws SimError {
+		if (!hasSlot(slot)) {
+			throw new SimError("Message " + this + " has no value for " + 
+					slot);
+		}
+		return this.slotValues[slot.getIndex()];
+	}
+	
+	/**
+	 * Returns the double value of a slot
+	 * @param slot The slot
+	 * @return The value of the slot
+	 * @throws SimError if the slot has no value
+	 */
+	public double getDouble(MessageSlot slot) throws SimError {
+		return Double.longBitsToDouble(getLong(slot));
+	}
+	
+	/**
+	 * Sets the int value of a slot
+	 * @param slot The slot
+	 * @param value The new value
+	 */
+	public void setInt(MessageSlot slot, int value) {
+		setLong(slot, value);
+	}
+	
+	/**
+	 * Sets the long value of a slot
+	 * @param slot The slot
+	 * @param value The new value
+	 */
+	public void setLong(MessageSlot slot, long value) {
+		int index = slot.getIndex();
+		if (this.slotValues == null) {
+			/* lazy creation like with the properties */
+			this.slotValues = new long[MessageSlot.getNrofSlots()];
+		}
+		else if (index >= this.slotValues.length) {
+			this.slotValues = Arrays.copyOf(this.slotValues, 
+					MessageSlot.getNrofSlots());
+		}
+		
+		this.slotValues[index] = value;
+		this.slotsSet |= 1L << index;
+	}
+	
+	/**
+	 * Sets the double value of a slot
+	 * @param slot The slot
+	 * @param value The new value
+	 */
+	public void setDouble(MessageSlot slot, double value) {
+		setLong(slot, Double.doubleToRawLongBits(value));
+	}
+	
+	/**
+	 * Removes the value of a slot
+	 * @param slot The slot
+	 */
+	public void clearSlot(MessageSlot slot) {
+		this.slotsSet &= ~(1L << slot.getIndex());
+	}
+	
 	/**
 	 * Returns a replicate of this message (identical except for the unique id)
 	 * @return A replicate of the message
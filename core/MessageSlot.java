@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.HashMap;
+
+/**
+ * A primitive valued message property. Unlike the generic properties (see
+ * {@link Message#addProperty(String, Object)}), the values of slots are
+ * stored in an array of the message indexed by the slot, so reading or
+ * writing a slot value doesn't require a map lookup or boxing. A slot can
+ * hold an int, long or double value (see e.g.
+ * {@link Message#getInt(MessageSlot)}); the same slot should always be used
+ * with the same type.<BR>
+ * Slots are registered once, usually to a static field of the module that
+ * uses them. Registering the same name again returns the same slot.
+ * Registrations are kept over simulation resets.
+ */
+public class MessageSlot {
+	/** Maximum number of slots that can be registered ({@value}) */
+	public static final int MAX_SLOTS = 64;
+	/** The registered slots by name */
+	private static HashMap<String, MessageSlot> slots =
+		new HashMap<String, MessageSlot>();
+
+	/** Name of the slot */
+	private String name;
+	/** Index of the slot in the value array of the messages */
+	private int index;
+
+	private MessageSlot(String name, int index) {
+		this.name = name;
+		this.index = index;
+	}
+
+	/**
+	 * Returns the slot with the given name, registering a new slot if no
+	 * slot has been registered with the name.
+	 * @param name Name of the slot. Should be such that no other class
+	 * accidentally uses the same name.
+	 * @return The slot
+	 * @throws SimError if the maximum number of slots has been registered
+	 */
+	public static MessageSlot register(String name) throws SimError {
+		MessageSlot slot = slots.get(name);
+		if (slot == null) {
+			if (slots.size() == MAX_SLOTS) {
+				throw new SimError("Can't register message slot " + name +
+						"; all " + MAX_SLOTS + " slots are in use");
+			}
+			slot = new MessageSlot(name, slots.size());
+			slots.put(name, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the number of registered slots
+	 * @return the number of registered slots
+	 */
+	static int getNrofSlots() {
+		return slots.size();
+	}
+
+	/**
+	 * Returns the index of the slot in the value arrays of the messages
+	 * @return the index of the slot
+	 */
+	int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Returns the name of the slot
+	 * @return the name of the slot
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	public String toString() {
+		return "MessageSlot " + this.name;
+	}
+}
@@ -4,32 +4,50 @@
  */
 package core;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
-
+
 /**
  * Intermodule communication bus. Works as a blackboard where modules can
  * post data, subscribe to data changes and also poll for data values.
  * This is fairly similar to Message class' property interface, but these
- * values are shared for a node instead of message.
- */
+ * values are shared for a node instead of message.<BR>
+ * The values can be accessed with typed keys (see {@link BusKey}) or with
+ * String keys. Double and Integer values are stored as primitives in arrays
+ * indexed by the keys, so the typed access methods (e.g.
+ * {@link #updateDouble(BusKey, double)}) don't need any lookups or boxing.
+ * The String keyed methods look up the key of the name and work as before.
+ */
 public class ModuleCommunicationBus {
-	/** Initial capacity for the listener lists (instead of 10) */
-	private static int INIT_CAPACITY = 3;
-	/** The values in the blackboard (or null if none)*/
-	private HashMap<String, Object> values;
-	/** Subscribed listeners (or null if none)*/
-	private HashMap<String, List<ModuleCommunicationListener>> listeners;
-	
+	/** Kind of a value: no value */
+	private static final byte NONE = 0;
+	/** Kind of a value: a Double in {@link #numbers} */
+	private static final byte DOUBLE = 1;
+	/** Kind of a value: an Integer in {@link #numbers} */
+	private static final byte INT = 2;
+	/** Kind of a value: an Object (or null) in {@link #objects} */
+	private static final byte OBJECT = 3;
+	/** Empty listener array */
+	private static final Object[] NO_LISTENERS = new Object[0];
+
+	/** Kinds of the values by key index (or null if no values) */
+	private byte[] kinds;
+	/** The Double and Integer values by key index (or null if none) */
+	private double[] numbers;
+	/** The other values by key index (or null if none) */
+	private Object[] objects;
+	/** Subscribed {@link BusKeyListener}s and
+	 * {@link ModuleCommunicationListener}s by key index (or null if none).
+	 * The arrays are replaced, not modified, when the subscriptions change. */
+	private Object[][] listeners;
+
 	/**
 	 * Constructor.
 	 */
 	public ModuleCommunicationBus() {
-		this.values = null; /* use lazy creation  */
+		this.kinds = null; /* use lazy creation  */
 		this.listeners = null;
 	}
-	
+
 	/**
 	 * Adds a new property for this node. The key can be any string but 
 	 * it should be such that no other class accidently uses the same value.
@@ -40,15 +58,19 @@ public class ModuleCommunicationBus {
 	 * @throws SimError if there is already a value for the given key
 	 */
 	public void addProperty(String key, Object value) throws SimError {
-		if (this.values != null && this.values.containsKey(key)) {
-			/* check to prevent accidental name space collisions */
-			throw new SimError("A value for the key " + key + 
-					" already exists");
-		}
-		
-		this.updateProperty(key, value);
+		addValue(BusKey.forName(key), value);
 	}
-	
+
+	/**
+	 * Adds a new property for this node.
+	 * @param key The key which is used to lookup the value
+	 * @param value The value to store
+	 * @throws SimError if there is already a value for the given key
+	 */
+	public <T> void addProperty(BusKey<T> key, T value) throws SimError {
+		addValue(key, value);
+	}
+
 	/**
 	 * Returns an object that was stored using the given key. If such object 
 	 * is not found, null is returned.
@@ -56,12 +78,30 @@ public class ModuleCommunicationBus {
 	 * @return The stored object or null if it isn't found
 	 */
 	public Object getProperty(String key) {
-		if (this.values == null) {
-			return null;
-		}
-		return this.values.get(key);
+		return getValue(BusKey.forName(key));
+	}
+
+	/**
+	 * Returns the value that was stored using the given key. Double and
+	 * Integer values are boxed; use {@link #getDouble(BusKey, double)} and
+	 * {@link #getInt(BusKey, int)} to avoid that.
+	 * @param key The key used to lookup the value
+	 * @return The stored value or null if it isn't found
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getProperty(BusKey<T> key) {
+		return (T)getValue(key);
+	}
+
+	/**
+	 * Returns true if there is a value for the given key
+	 * @param key The key
+	 * @return true if there is a value for the key
+	 */
+	public boolean hasProperty(BusKey<?> key) {
+		return kindOf(key.getIndex()) != NONE;
 	}
-	
+
 	/**
 	 * Updates a value for an existing property. For storing the value first 
 	 * time, {@link #addProperty(String, Object)} should be used which
@@ -70,14 +110,18 @@ public class ModuleCommunicationBus {
 	 * @param value The new value to store
 	 */
 	public void updateProperty(String key, Object value) throws SimError {
-		if (this.values == null) {
-			/* lazy creation to prevent performance overhead for classes
-			   that don't use the property feature  */
-			this.values = new HashMap<String, Object>();
-		}		
+		setValue(BusKey.forName(key), value);
+	}
 
-		this.values.put(key, value);
-		notifyListeners(key, value);
+	/**
+	 * Updates a value for an existing property. For storing the value first 
+	 * time, {@link #addProperty(BusKey, Object)} should be used which
+	 * checks for name space clashes.
+	 * @param key The key which is used to lookup the value
+	 * @param value The new value to store
+	 */
+	public <T> void updateProperty(BusKey<T> key, T value) {
+		setValue(key, value);
 	}
 
 	/**
@@ -88,21 +132,50 @@ public class ModuleCommunicationBus {
 	 * @throws SimError if the value with the given key was not a Double
 	 */
 	public double updateDouble(String key, double delta) throws SimError {
-		double current;
-		try {
-			current = (Double)getProperty(key);
-			updateProperty(key, current + delta);
-		}
-		catch (ClassCastException cce) {
-			throw new SimError("No Double value for key " + key);
+		return updateDouble(BusKey.forName(key), delta);
+	}
+
+	/**
+	 * Changes the Double value with given key with the value delta  
+	 * @param key The key of variable to update
+	 * @param delta Value added to the old value
+	 * @return The new value
+	 * @throws SimError if the value with the given key was not a Double
+	 */
+	public double updateDouble(BusKey<?> key, double delta) throws SimError {
+		int i = key.getIndex();
+		byte kind = kindOf(i);
+		if (kind == NONE || (kind == OBJECT && this.objects[i] == null)) {
+			throw new SimError("No value for key " + key.getName());
 		}
-		catch (NullPointerException npe) {
-			throw new SimError("No value for key " + key);
+		if (kind != DOUBLE) {
+			throw new SimError("No Double value for key " + key.getName());
 		}
 
-		return current + delta;
+		double value = this.numbers[i] + delta;
+		this.numbers[i] = value;
+		notifyListeners(key);
+		return value;
+	}
+
+	/**
+	 * Sets a Double value without boxing it
+	 * @param key The key of the value
+	 * @param value The new value
+	 */
+	public void setDouble(BusKey<Double> key, double value) {
+		setNumber(key, DOUBLE, value);
 	}
-	
+
+	/**
+	 * Sets an Integer value without boxing it
+	 * @param key The key of the value
+	 * @param value The new value
+	 */
+	public void setInt(BusKey<Integer> key, int value) {
+		setNumber(key, INT, value);
+	}
+
 	/**
 	 * Returns a double value from the communication bus.
 	 * @param key The key of the variable
@@ -111,18 +184,28 @@ public class ModuleCommunicationBus {
 	 * @throws SimError if the value with the given key was not a Double
 	 */
 	public double getDouble(String key, double naValue) throws SimError {
-		Object value = this.getProperty(key);
-		if (value == null) {
-			return naValue;
-		}
-		try {
-			return (Double)value;
+		return getDouble(BusKey.forName(key), naValue);
+	}
+
+	/**
+	 * Returns a double value from the communication bus.
+	 * @param key The key of the variable
+	 * @param naValue The value to return if there is no value for the key
+	 * @return The value of the key, or the naValue if they key was not found
+	 * @throws SimError if the value with the given key was not a Double
+	 */
+	public double getDouble(BusKey<?> key, double naValue) throws SimError {
+		int i = key.getIndex();
+		byte kind = kindOf(i);
+		if (kind == DOUBLE) {
+			return this.numbers[i];
 		}
-		catch (ClassCastException cce) {
-			throw new SimError("No Double value for key " + key);
+		if (kind == NONE || (kind == OBJECT && this.objects[i] == null)) {
+			return naValue;
 		}
+		throw new SimError("No Double value for key " + key.getName());
 	}
-	
+
 	/**
 	 * Returns an integer value from the communication bus.
 	 * @param key The key of the variable
@@ -131,87 +214,296 @@ public class ModuleCommunicationBus {
 	 * @throws SimError if the value with the given key was not an Integer
 	 */
 	public int getInt(String key, int naValue) throws SimError {
-		Object value = this.getProperty(key);
-		if (value == null) {
-			return naValue;
-		}
-		try {
-			return (Integer)value;
+		return getInt(BusKey.forName(key), naValue);
+	}
+
+	/**
+	 * Returns an integer value from the communication bus.
+	 * @param key The key of the variable
+	 * @param naValue The value to return if there is no value for the key
+	 * @return The value of the key, or the naValue if they key was not found
+	 * @throws SimError if the value with the given key was not an Integer
+	 */
+	public int getInt(BusKey<?> key, int naValue) throws SimError {
+		int i = key.getIndex();
+		byte kind = kindOf(i);
+		if (kind == INT) {
+			return (int)this.numbers[i];
 		}
-		catch (ClassCastException cce) {
-			throw new SimError("No Integer value for key " + key);
+		if (kind == NONE || (kind == OBJECT && this.objects[i] == null)) {
+			return naValue;
 		}
+		throw new SimError("No Integer value for key " + key.getName());
 	}
-	
+
 	/**
 	 * Subscribes a module to changes of a certain value.
 	 * @param key The key of the value whose changes the module is interested of
 	 * @param module The module to subscribe.
 	 */
 	public void subscribe(String key, ModuleCommunicationListener module) {
-		if (this.listeners == null) {
-			/* first listener for the whole node */
-			this.listeners = 
-				new HashMap<String, List<ModuleCommunicationListener>>();
-		}
-		
-		List<ModuleCommunicationListener> list = this.listeners.get(key);
-		if (list == null) {
-			/* first listener for this key */
-			list = new ArrayList<ModuleCommunicationListener>(INIT_CAPACITY);
-			this.listeners.put(key, list);
-		}
-		
-		list.add(module);
+		addListener(BusKey.forName(key), module);
+	}
+
+	/**
+	 * Subscribes a module to changes of a certain value.
+	 * @param key The key of the value whose changes the module is interested of
+	 * @param module The module to subscribe.
+	 */
+	public void subscribe(BusKey<?> key, BusKeyListener module) {
+		addListener(key, module);
 	}
-	
+
 	/**
 	 * Removes a notification subscription
 	 * @param key The key for which the subscription should be removed
 	 * @param module The module to whose subscription is removed
 	 */
 	public void unsubscribe(String key, ModuleCommunicationListener module) {
-		List<ModuleCommunicationListener> list;
-		
-		if (this.listeners == null) {
-			return; /* no subscriptions */
+		removeListener(BusKey.forName(key), module);
+	}
+
+	/**
+	 * Removes a notification subscription
+	 * @param key The key for which the subscription should be removed
+	 * @param module The module to whose subscription is removed
+	 */
+	public void unsubscribe(BusKey<?> key, BusKeyListener module) {
+		removeListener(key, module);
+	}
+
+	/**
+	 * Adds a value for a key that has no value yet
+	 * @param key The key
+	 * @param value The value
+	 * @throws SimError if there is already a value for the given key
+	 */
+	private void addValue(BusKey<?> key, Object value) throws SimError {
+		if (kindOf(key.getIndex()) != NONE) {
+			/* check to prevent accidental name space collisions */
+			throw new SimError("A value for the key " + key.getName() +
+					" already exists");
+		}
+
+		setValue(key, value);
+	}
+
+	/**
+	 * Returns the (boxed) value of a key
+	 * @param key The key
+	 * @return The value or null if there's no value for the key
+	 */
+	private Object getValue(BusKey<?> key) {
+		return getValue(key.getIndex());
+	}
+
+	/**
+	 * Returns the (boxed) value of a key index
+	 * @param i The key index
+	 * @return The value or null if there's no value for the key
+	 */
+	private Object getValue(int i) {
+		switch (kindOf(i)) {
+		case DOUBLE:
+			return this.numbers[i];
+		case INT:
+			return (int)this.numbers[i];
+		case OBJECT:
+			return this.objects[i];
+		default:
+			return null;
 		}
-		
-		list = this.listeners.get(key);
-		if (list == null) {
-			return; /* no subscriptions for the key */
+	}
+
+	/**
+	 * Sets the value of a key. Double and Integer values are stored
+	 * unboxed.
+	 * @param key The key
+	 * @param value The new value
+	 */
+	private void setValue(BusKey<?> key, Object value) {
+		if (value instanceof Double) {
+			setNumber(key, DOUBLE, (Double)value);
+		}
+		else if (value instanceof Integer) {
+			setNumber(key, INT, (Integer)value);
+		}
+		else {
+			int i = key.getIndex();
+			ensureCapacity(i);
+			if (this.objects == null) {
+				this.objects = new Object[this.kinds.length];
+			}
+			this.kinds[i] = OBJECT;
+			this.objects[i] = value;
+			notifyListeners(key);
 		}
-		
-		list.remove(module);
 	}
-	
-	
+
 	/**
-	 * Notifies all listeners that have subscribed to the given key 
-	 * @param key The key which got new value
-	 * @param newValue The new value for the key
+	 * Sets a Double or Integer value
+	 * @param key The key
+	 * @param kind Kind of the value ({@link #DOUBLE} or {@link #INT})
+	 * @param value The new value
 	 */
-	private void notifyListeners(String key, Object newValue) {
-		List<ModuleCommunicationListener> list;
-		
-		if (this.listeners == null) {
-			return;
+	private void setNumber(BusKey<?> key, byte kind, double value) {
+		int i = key.getIndex();
+		ensureCapacity(i);
+		if (this.numbers == null) {
+			this.numbers = new double[this.kinds.length];
+		}
+		if (this.kinds[i] == OBJECT) {
+			this.objects[i] = null;
+		}
+		this.kinds[i] = kind;
+		this.numbers[i] = value;
+		notifyListeners(key);
+	}
+
+	/**
+	 * Returns the kind of the value with the given key index
+	 * @param i The key index
+	 * @return The kind of the value
+	 */
+	private byte kindOf(int i) {
+		if (this.kinds == null || i >= this.kinds.length) {
+			return NONE;
 		}
-		list = this.listeners.get(key);
-		
-		if (list == null) {
+		return this.kinds[i];
+	}
+
+	/**
+	 * Makes sure the value arrays have room for the given key index. The
+	 * arrays are created lazily to prevent performance overhead for classes
+	 * that don't use the property feature.
+	 * @param i The key index
+	 */
+	private void ensureCapacity(int i) {
+		if (this.kinds != null && i < this.kinds.length) {
 			return;
 		}
-		
-		for (ModuleCommunicationListener mcl : list) {
-			mcl.moduleValueChanged(key, newValue);
+		int length = Math.max(i + 1, BusKey.getNrofKeys());
+		this.kinds = copyOf(this.kinds, new byte[length]);
+		if (this.numbers != null) {
+			double[] numbers = new double[length];
+			System.arraycopy(this.numbers, 0, numbers, 0, this.numbers.length);
+			this.numbers = numbers;
+		}
+		if (this.objects != null) {
+			Object[] objects = new Object[length];
+			System.arraycopy(this.objects, 0, objects, 0, this.objects.length);
+			this.objects = objects;
+		}
+	}
+
+	/**
+	 * Copies the contents of an array to a bigger array
+	 * @param from The array to copy from (or null)
+	 * @param to The array to copy to
+	 * @return The array that was copied to
+	 */
+	private static byte[] copyOf(byte[] from, byte[] to) {
+		if (from != null) {
+			System.arraycopy(from, 0, to, 0, from.length);
+		}
+		return to;
+	}
+
+	/**
+	 * Returns the listeners of a key
+	 * @param i Index of the key
+	 * @return The listeners (possibly an empty array)
+	 */
+	private Object[] getListeners(int i) {
+		if (this.listeners == null || i >= this.listeners.length ||
+				this.listeners[i] == null) {
+			return NO_LISTENERS;
+		}
+		return this.listeners[i];
+	}
+
+	/**
+	 * Adds a listener for a key
+	 * @param key The key
+	 * @param module The listener
+	 */
+	private void addListener(BusKey<?> key, Object module) {
+		int i = key.getIndex();
+		if (this.listeners == null || i >= this.listeners.length) {
+			Object[][] listeners = new Object[Math.max(i + 1,
+					BusKey.getNrofKeys())][];
+			if (this.listeners != null) {
+				System.arraycopy(this.listeners, 0, listeners, 0,
+						this.listeners.length);
+			}
+			this.listeners = listeners;
+		}
+
+		Object[] old = getListeners(i);
+		Object[] list = new Object[old.length + 1];
+		System.arraycopy(old, 0, list, 0, old.length);
+		list[old.length] = module;
+		this.listeners[i] = list;
+	}
+
+	/**
+	 * Removes (the first subscription of) a listener of a key
+	 * @param key The key
+	 * @param module The listener
+	 */
+	private void removeListener(BusKey<?> key, Object module) {
+		int i = key.getIndex();
+		Object[] old = getListeners(i);
+
+		for (int j = 0; j < old.length; j++) {
+			if (old[j].equals(module)) {
+				Object[] list = new Object[old.length - 1];
+				System.arraycopy(old, 0, list, 0, j);
+				System.arraycopy(old, j + 1, list, j, list.length - j);
+				this.listeners[i] = list;
+				return;
+			}
 		}
 	}
-	
-	
+
+	/**
+	 * Notifies all listeners that have subscribed to the given key. The
+	 * value is boxed only if there are {@link ModuleCommunicationListener}s.
+	 * @param key The key which got new value
+	 */
+	private void notifyListeners(BusKey<?> key) {
+		Object[] list = getListeners(key.getIndex());
+		Object value = null;
+		boolean boxed = false;
+
+		for (Object l : list) {
+			if (l instanceof BusKeyListener) {
+				((BusKeyListener)l).busValueChanged(key, this);
+			}
+			else {
+				if (!boxed) {
+					value = getValue(key);
+					boxed = true;
+				}
+				((ModuleCommunicationListener)l).moduleValueChanged(
+						key.getName(), value);
+			}
+		}
+	}
+
+
 	@Override
 	public String toString() {
-		return "ComBus with mapping: " + (this.values != null ? 
-				this.values.toString() : "n/a");
+		if (this.kinds == null) {
+			return "ComBus with mapping: n/a";
+		}
+
+		HashMap<String, Object> values = new HashMap<String, Object>();
+		for (int i = 0; i < this.kinds.length; i++) {
+			if (this.kinds[i] != NONE) {
+				values.put(BusKey.getName(i), getValue(i));
+			}
+		}
+		return "ComBus with mapping: " + values.toString();
 	}
 }
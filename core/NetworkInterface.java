@@ -14,13 +14,21 @@ import java.util.Random;
 /**
  * Network interface of a DTNHost. Takes care of connectivity among hosts.
  */
-abstract public class NetworkInterface implements ModuleCommunicationListener {
+abstract public class NetworkInterface implements ModuleCommunicationListener,
+		BusKeyListener {
 	/** transmit range -setting id ({@value})*/
 	public static final String TRANSMIT_RANGE_S = "transmitRange";
 	/** transmit speed -setting id ({@value})*/
 	public static final String TRANSMIT_SPEED_S = "transmitSpeed";
 	/** scanning interval -setting id ({@value})*/
 	public static final String SCAN_INTERVAL_S = "scanInterval";
+	/** 
+	 * maximum number of concurrent transfers -setting id ({@value}). 
+	 * Integer valued, default = 1. If more than one concurrent transfer is
+	 * allowed, the transmit speed is divided equally among the ongoing 
+	 * transfers of the interface. 
+	 */
+	public static final String CONCURRENT_TRANSFERS_S = "concurrentTransfers";
 	
 	/** {@link ModuleCommunicationBus} identifier for the "scanning interval" 
     variable. */
@@ -31,6 +39,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** {@link ModuleCommunicationBus} identifier for the "transmission speed" 
     variable. Value type: integer */
 	public static final String SPEED_ID = "Network.speed";
+	/** Typed {@link ModuleCommunicationBus} key for {@link #SCAN_INTERVAL_ID} */
+	public static final BusKey<Double> SCAN_INTERVAL_KEY =
+		BusKey.register(SCAN_INTERVAL_ID, Double.class);
+	/** Typed {@link ModuleCommunicationBus} key for {@link #RANGE_ID} */
+	public static final BusKey<Double> RANGE_KEY =
+		BusKey.register(RANGE_ID, Double.class);
+	/** Typed {@link ModuleCommunicationBus} key for {@link #SPEED_ID} */
+	public static final BusKey<Integer> SPEED_KEY =
+		BusKey.register(SPEED_ID, Integer.class);
 	
 	protected static final int CON_UP = 1;
 	protected static final int CON_DOWN = 2;
@@ -48,6 +65,10 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
+	/** maximum number of concurrent transfers */
+	private int concurrentTransfers;
+	/** number of connections that are transferring a message */
+	private int busyConnectionCount;
 	
 	protected Activeness activeModel;
 
@@ -82,6 +103,15 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		} else {
 			this.scanInterval = 0;
 		}
+		if (s.contains(CONCURRENT_TRANSFERS_S)) {
+			this.concurrentTransfers = s.getInt(CONCURRENT_TRANSFERS_S);
+			if (this.concurrentTransfers < 1) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(CONCURRENT_TRANSFERS_S));
+			}
+		} else {
+			this.concurrentTransfers = 1;
+		}
 	}
 	
 	/**
@@ -91,6 +121,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.interfacetype = "Default";
 		this.connections = new ArrayList<Connection>();
 		this.address = getNextNetAddress();
+		this.concurrentTransfers = 1;
 	}
 	
 	/**
@@ -104,6 +135,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.interfacetype = ni.interfacetype;
 		this.transmitRange = ni.transmitRange;
 		this.transmitSpeed = ni.transmitSpeed;
+		this.concurrentTransfers = ni.concurrentTransfers;
 		if(ni.activeModel != null)
 			this.activeModel = ni.activeModel.replicate();
 		
@@ -124,9 +156,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public void setHost(DTNHost host) {
 		this.host = host;
 		ModuleCommunicationBus comBus = host.getComBus();
-		comBus.subscribe(SCAN_INTERVAL_ID, this);
-		comBus.subscribe(RANGE_ID, this);
-		comBus.subscribe(SPEED_ID, this);
+		comBus.subscribe(SCAN_INTERVAL_KEY, this);
+		comBus.subscribe(RANGE_KEY, this);
+		comBus.subscribe(SPEED_KEY, this);
 		
 		optimizer = ConnectivityGrid.ConnectivityGridFactory(
 				this.interfacetype.hashCode(), transmitRange);
@@ -195,6 +227,74 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.connections;
 	}
 	
+	/**
+	 * Returns the maximum number of concurrent transfers of this interface
+	 * @return the maximum number of concurrent transfers
+	 * @see #CONCURRENT_TRANSFERS_S
+	 */
+	public int getConcurrentTransfers() {
+		return this.concurrentTransfers;
+	}
+	
+	/**
+	 * Returns the number of connections of this interface that are 
+	 * currently transferring a message
+	 * @return the number of busy connections
+	 */
+	public int getNrofBusyConnections() {
+		return this.busyConnectionCount;
+	}
+	
+	/**
+	 * Returns true if this interface allows concurrent transfers and all 
+	 * of them are in use. Interfaces that allow only one transfer at a 
+	 * time leave the decision to the routers (that transfer only one 
+	 * message at a time) and never reach the limit.
+	 * @return true if no new transfers can be started using this interface
+	 */
+	public boolean isTransferLimitReached() {
+		return this.concurrentTransfers > 1 && 
+			this.busyConnectionCount >= this.concurrentTransfers;
+	}
+	
+	/**
+	 * Returns the number of transfers the transmit speed of this interface
+	 * is currently divided to. Always 1 for interfaces that allow only one
+	 * transfer at a time.
+	 * @return the number of transfers sharing the transmit speed
+	 */
+	public int getTransferShareCount() {
+		if (this.concurrentTransfers > 1 && this.busyConnectionCount > 1) {
+			return this.busyConnectionCount;
+		}
+		return 1;
+	}
+	
+	/**
+	 * Changes the number of busy connections of this interface. Called by
+	 * the connections when their transfers start and end.
+	 * @param delta How much the counter is changed
+	 */
+	void changeBusyConnectionCount(int delta) {
+		this.busyConnectionCount += delta;
+		assert this.busyConnectionCount >= 0 : "Negative busy connection " +
+			"count at " + this;
+	}
+	
+	/**
+	 * Informs the connections of this interface that the number of
+	 * transfers sharing the transmit speed may have changed. Does nothing
+	 * if the interface allows only one transfer at a time.
+	 */
+	void transferSharesChanged() {
+		if (this.concurrentTransfers <= 1) {
+			return;
+		}
+		for (int i=0, n=this.connections.size(); i<n; i++) {
+			this.connections.get(i).transferShareChanged();
+		}
+	}
+	
 	/**
 	 * Checks if this interface is currently in the scanning mode
 	 * @return True if the interface is scanning; false if not
@@ -367,6 +467,27 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 	}
 
+	/**
+	 * This method is called by the {@link ModuleCommunicationBus} when/if
+	 * someone changes the scanning interval, transmit speed, or range
+	 * @param key Key of the changed value
+	 * @param bus The bus where the value changed
+	 */
+	public void busValueChanged(BusKey<?> key, ModuleCommunicationBus bus) {
+		if (key == SCAN_INTERVAL_KEY) {
+			this.scanInterval = bus.getDouble(SCAN_INTERVAL_KEY, 0);
+		}
+		else if (key == SPEED_KEY) {
+			this.transmitSpeed = bus.getInt(SPEED_KEY, 0);
+		}
+		else if (key == RANGE_KEY) {
+			this.transmitRange = bus.getDouble(RANGE_KEY, 0);
+		}
+		else {
+			throw new SimError("Unexpected combus key " + key);
+		}
+	}
+
 	/** 
 	 * Creates a connection to another host. This method does not do any checks
 	 * on whether the other node is in range or active.
@@ -393,20 +514,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	private void removeConnectionByIndex(int index) {
 		Connection con = this.connections.get(index);
-		DTNHost anotherNode = con.getOtherNode(this.host);
-		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherNode);
-
-		// tear down bidirectional connection
-		/*if (!anotherNode.getConnections().remove(con)) {
-			throw new SimError("No connection " + con + " found in " +
-					anotherNode);   
-		}*/
-
-		this.host.connectionDown(con);
-		anotherNode.connectionDown(con);
-
-		connections.remove(index);
+		/* tears down the bidirectional connection so that the connection
+		 * counters of both hosts stay in sync with the connection lists */
+		con.disconnect(this);
 	}
 
 	/**
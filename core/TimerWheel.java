@@ -0,0 +1,412 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel. Items are scheduled to expire at a (simulation)
+ * time and the expired items are collected by advancing the wheel to
+ * the current time. Scheduling and cancelling a timer take constant time
+ * and advancing the wheel costs amortized constant time per timer (plus
+ * a small cost per elapsed tick when the wheel is not empty).<BR>
+ * The time is divided to ticks of equal length. The first level of the wheel
+ * has a slot for each of the next {@link #NROF_SLOTS} ticks and each higher
+ * level has a slot for {@link #NROF_SLOTS} slots of the level below it.
+ * Timers further in the future are kept in the higher levels and cascaded
+ * down when their slot comes up. Timers beyond the highest level
+ * are kept in an overflow list.
+ * @param <T> Type of the scheduled items
+ */
+public class TimerWheel<T> {
+	/** Number of slots in each level of the wheel ({@value}) */
+	public static final int NROF_SLOTS = 64;
+	/** Number of levels in the wheel ({@value}) */
+	public static final int NROF_LEVELS = 4;
+	/** Number of bits in the slot index */
+	private static final int SLOT_BITS = 6;
+	/** Mask for the slot index */
+	private static final int SLOT_MASK = NROF_SLOTS - 1;
+	/** Level of the overflow list */
+	private static final int OVERFLOW = NROF_LEVELS;
+
+	/** Orders the expired timers by their time and scheduling order */
+	private static final Comparator<Timer<?>> TIME_ORDER =
+		new Comparator<Timer<?>>() {
+		public int compare(Timer<?> t1, Timer<?> t2) {
+			if (t1.time != t2.time) {
+				return t1.time < t2.time ? -1 : 1;
+			}
+			return t1.seq < t2.seq ? -1 : (t1.seq == t2.seq ? 0 : 1);
+		}
+	};
+
+	/** Length of a tick (simulated seconds) */
+	private double tickLength;
+	/** The tick the wheel has been advanced to */
+	private long currentTick;
+	/** Heads of the timer lists of the slots (level by level) */
+	private Timer<T>[][] slots;
+	/** Heads of the overflow list */
+	private Timer<T> overflow;
+	/** Number of timers in each level (and the overflow list) */
+	private int[] counts;
+	/** Number of scheduled timers */
+	private int size;
+	/** Sequence number for the next scheduled timer */
+	private long nextSeq;
+
+	/**
+	 * Creates a new, empty, timer wheel
+	 * @param tickLength Length of a tick (simulated seconds). The expired
+	 * timers are kept in the order of their time, so the tick length only
+	 * affects the performance of the wheel: the wheel should span most of the
+	 * timers with a tolerable number of ticks.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimerWheel(double tickLength) {
+		if (tickLength <= 0) {
+			throw new SimError("Invalid tick length " + tickLength);
+		}
+		this.tickLength = tickLength;
+		this.currentTick = 0;
+		this.slots = new Timer[NROF_LEVELS][NROF_SLOTS];
+		this.counts = new int[NROF_LEVELS + 1];
+		this.size = 0;
+		this.nextSeq = 0;
+	}
+
+	/**
+	 * Schedules an item to expire at the given time. If the time has already
+	 * passed, the item expires at the next {@link #advance(double)}.
+	 * @param item The item
+	 * @param time The expiry time
+	 * @return The timer of the item (can be used to cancel the timer)
+	 */
+	public Timer<T> schedule(T item, double time) {
+		Timer<T> timer = new Timer<T>(item, time, nextSeq++,
+				toTick(time));
+		place(timer);
+		this.size++;
+		return timer;
+	}
+
+	/**
+	 * Cancels a scheduled timer. Cancelling a timer that has already expired
+	 * or has been cancelled has no effect.
+	 * @param timer The timer to cancel
+	 */
+	public void cancel(Timer<T> timer) {
+		if (timer.level < 0) {
+			return; // not scheduled
+		}
+		unlink(timer);
+		this.size--;
+	}
+
+	/**
+	 * Advances the wheel to the given time and removes the timers that have
+	 * expired by then (time of the timer is less than or equal to the given
+	 * time)
+	 * @param time The time to advance to
+	 * @return The items of the expired timers in the order of their expiry
+	 * times (timers with equal times in the order they were scheduled)
+	 */
+	public List<T> advance(double time) {
+		long target = toTick(time);
+		List<Timer<T>> expired = null;
+
+		while (this.currentTick <= target && this.size > 0) {
+			if (this.counts[0] == 0) {
+				if (this.currentTick == target) {
+					break;
+				}
+				skipEmptyTicks(target);
+				continue;
+			}
+
+			/* expire the timers of the current tick */
+			int index = (int)(this.currentTick & SLOT_MASK);
+			for (Timer<T> t = slots[0][index]; t != null; ) {
+				Timer<T> next = t.next;
+				if (t.time <= time) {
+					unlink(t);
+					this.size--;
+					if (expired == null) {
+						expired = new ArrayList<Timer<T>>();
+					}
+					expired.add(t);
+				}
+				t = next;
+			}
+
+			if (this.currentTick == target) {
+				break; // rest of the tick's timers expire later
+			}
+			nextTick();
+		}
+
+		if (this.size == 0 && this.currentTick < target) {
+			this.currentTick = target; // nothing to cascade on the way
+		}
+
+		if (expired == null) {
+			return Collections.emptyList();
+		}
+		Collections.sort(expired, TIME_ORDER);
+		List<T> items = new ArrayList<T>(expired.size());
+		for (Timer<T> t : expired) {
+			items.add(t.item);
+		}
+		return items;
+	}
+
+	/**
+	 * Returns a lower bound for the time of the next timer to expire, i.e.,
+	 * no timer will expire before the returned time. For timers in the first
+	 * level of the wheel the time is exact.
+	 * @return A lower bound for the next expiry time or
+	 * Double.POSITIVE_INFINITY if no timers are scheduled
+	 */
+	public double getNextTime() {
+		double next = Double.POSITIVE_INFINITY;
+		if (this.size == 0) {
+			return next;
+		}
+
+		if (this.counts[0] > 0) {
+			for (int i = 0; i < NROF_SLOTS; i++) {
+				int index = (int)((this.currentTick + i) & SLOT_MASK);
+				for (Timer<T> t = slots[0][index]; t != null; t = t.next) {
+					next = Math.min(next, t.time);
+				}
+				if (next < Double.POSITIVE_INFINITY) {
+					break;
+				}
+			}
+		}
+
+		for (int level = 1; level < NROF_LEVELS; level++) {
+			if (this.counts[level] == 0) {
+				continue;
+			}
+			int shift = level * SLOT_BITS;
+			long base = this.currentTick >> shift;
+			for (int i = 1; i <= NROF_SLOTS; i++) {
+				if (slots[level][(int)((base + i) & SLOT_MASK)] != null) {
+					next = Math.min(next, ((base + i) << shift) * tickLength);
+					break;
+				}
+			}
+		}
+
+		if (this.counts[OVERFLOW] > 0) {
+			long start = ((this.currentTick >> (NROF_LEVELS * SLOT_BITS)) + 1)
+				<< (NROF_LEVELS * SLOT_BITS);
+			next = Math.min(next, start * tickLength);
+		}
+
+		return next;
+	}
+
+	/**
+	 * Returns the number of scheduled timers
+	 * @return the number of scheduled timers
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the tick of a time
+	 * @param time The time
+	 * @return The tick
+	 */
+	private long toTick(double time) {
+		double tick = Math.floor(time / this.tickLength);
+		if (tick >= Long.MAX_VALUE / 2) {
+			return Long.MAX_VALUE / 2;
+		}
+		return Math.max((long)tick, 0);
+	}
+
+	/**
+	 * Moves the wheel forward while the first level is empty, i.e., up to
+	 * the next tick where timers are cascaded down from the lowest non-empty
+	 * level (or up to the target tick if that is earlier)
+	 * @param target The target tick
+	 */
+	private void skipEmptyTicks(long target) {
+		int level = 1;
+		while (level < NROF_LEVELS && this.counts[level] == 0) {
+			level++;
+		}
+		int shift = level * SLOT_BITS;
+		long next = ((this.currentTick >> shift) + 1) << shift;
+		if (next > target) {
+			this.currentTick = target;
+		}
+		else {
+			this.currentTick = next - 1;
+			nextTick();
+		}
+	}
+
+	/**
+	 * Moves the wheel to the next tick, cascading down the timers of the
+	 * higher level slots that come up
+	 */
+	private void nextTick() {
+		this.currentTick++;
+		int top = 0;
+		while (top < NROF_LEVELS &&
+				((this.currentTick >> (top * SLOT_BITS)) & SLOT_MASK) == 0) {
+			top++;
+		}
+
+		/* cascade the higher levels first so that their timers are cascaded
+		 * further down if needed */
+		if (top == NROF_LEVELS) {
+			top--;
+			cascade(this.overflow);
+		}
+		for (int level = top; level > 0; level--) {
+			int index = (int)((this.currentTick >> (level * SLOT_BITS))
+					& SLOT_MASK);
+			cascade(slots[level][index]);
+		}
+	}
+
+	/**
+	 * Re-places a list of timers to the wheel
+	 * @param head Head of the list
+	 */
+	private void cascade(Timer<T> head) {
+		for (Timer<T> t = head; t != null; ) {
+			Timer<T> next = t.next;
+			unlink(t);
+			place(t);
+			t = next;
+		}
+	}
+
+	/**
+	 * Places a timer to the right slot of the wheel
+	 * @param timer The timer
+	 */
+	private void place(Timer<T> timer) {
+		long delta = timer.tick - this.currentTick;
+		int level;
+		int index;
+
+		if (delta < NROF_SLOTS) {
+			level = 0;
+			index = (int)(Math.max(timer.tick, this.currentTick) & SLOT_MASK);
+		}
+		else {
+			level = 1;
+			while (level < NROF_LEVELS &&
+					delta >= (1L << ((level + 1) * SLOT_BITS))) {
+				level++;
+			}
+			index = (int)((timer.tick >> (level * SLOT_BITS)) & SLOT_MASK);
+		}
+
+		timer.level = level;
+		timer.index = index;
+		timer.prev = null;
+		if (level == OVERFLOW) {
+			timer.next = this.overflow;
+			this.overflow = timer;
+		}
+		else {
+			timer.next = slots[level][index];
+			slots[level][index] = timer;
+		}
+		if (timer.next != null) {
+			timer.next.prev = timer;
+		}
+		this.counts[level]++;
+	}
+
+	/**
+	 * Removes a timer from its slot
+	 * @param timer The timer
+	 */
+	private void unlink(Timer<T> timer) {
+		if (timer.prev != null) {
+			timer.prev.next = timer.next;
+		}
+		else if (timer.level == OVERFLOW) {
+			this.overflow = timer.next;
+		}
+		else {
+			slots[timer.level][timer.index] = timer.next;
+		}
+		if (timer.next != null) {
+			timer.next.prev = timer.prev;
+		}
+		this.counts[timer.level]--;
+		timer.level = -1;
+		timer.prev = null;
+		timer.next = null;
+	}
+
+	/**
+	 * A timer of an item in the wheel
+	 * @param <T> Type of the item
+	 */
+	public static class Timer<T> {
+		private T item;
+		private double time;
+		private long seq;
+		private long tick;
+		/** Level of the wheel the timer is at or -1 if not scheduled */
+		private int level;
+		private int index;
+		private Timer<T> prev;
+		private Timer<T> next;
+
+		private Timer(T item, double time, long seq, long tick) {
+			this.item = item;
+			this.time = time;
+			this.seq = seq;
+			this.tick = tick;
+			this.level = -1;
+		}
+
+		/**
+		 * Returns the item of the timer
+		 * @return the item of the timer
+		 */
+		public T getItem() {
+			return this.item;
+		}
+
+		/**
+		 * Returns the expiry time of the timer
+		 * @return the expiry time of the timer
+		 */
+		public double getTime() {
+			return this.time;
+		}
+
+		/**
+		 * Returns true if the timer is scheduled (i.e., it hasn't expired
+		 * or been cancelled)
+		 * @return true if the timer is scheduled
+		 */
+		public boolean isScheduled() {
+			return this.level >= 0;
+		}
+
+		public String toString() {
+			return "Timer of " + this.item + " at " + this.time;
+		}
+	}
+}
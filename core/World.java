@@ -37,11 +37,24 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Should idle routers be skipped in the update round -setting id 
+	 * ({@value}). Boolean (true/false) variable. If enabled, routers that
+	 * declare that they have nothing to do are not updated until their buffer
+	 * or connections change, a transfer of the host or one of its peers ends,
+	 * or the router's own timer expires. Routers that don't declare
+	 * themselves idle are updated as usual.
+	 * Default is {@link #DEF_SKIP_IDLE_ROUTERS}.
+	 * @see routing.MessageRouter#isAwake()
+	 */
+	public static final String SKIP_IDLE_ROUTERS_S = "skipIdleRouters";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** should idle routers be skipped -setting's default value ({@value}) */
+	public static final boolean DEF_SKIP_IDLE_ROUTERS = false;
 
 	private int sizeX;
 	private int sizeY;
@@ -194,7 +207,8 @@ public class World {
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. Routers of the hosts are updated only if
+	 * they are awake (see {@link #SKIP_IDLE_ROUTERS_S}).
 	 */
 	private void updateHosts() {
 		if (this.updateOrder == null) { // randomizing is off
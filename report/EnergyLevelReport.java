@@ -7,6 +7,7 @@ package report;
 import java.util.HashSet;
 import java.util.List;
 
+import routing.EnergyModel;
 import core.DTNHost;
 import core.Settings;
 import core.SimError;
@@ -76,17 +77,18 @@ public class EnergyLevelReport extends Report implements UpdateListener {
 	 */
 	private void createSnapshot(List<DTNHost> hosts) {
 		write ("[" + (int)getSimTime() + "]"); /* simulation time stamp */
+		double[] levels = EnergyModel.getEnergyLevels(getSimTime());
 		for (DTNHost h : hosts) {
 			if (this.reportedNodes != null && 
 				!this.reportedNodes.contains(h.getAddress())) {
 				continue; /* node not in the list */
 			}
-			Double value = (Double)h.getComBus().
-				getProperty(routing.EnergyAwareRouter.ENERGY_VALUE_ID);
-			if (value == null) {
+			int address = h.getAddress();
+			if (address >= levels.length || Double.isNaN(levels[address])) {
 				throw new SimError("Host " + h + 
 						" is not using an energy aware router");
 			}
+			double value = levels[address];
 			
 			write(h.toString() + " " +  format(value));
 		}
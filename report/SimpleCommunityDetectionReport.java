@@ -9,6 +9,7 @@ package report;
 import java.util.*;
 
 import core.*;
+import routing.community.ContactHistory;
 
 /**
  * <p>Reports the community structure of the simulation scenario using the
@@ -64,8 +65,7 @@ public class SimpleCommunityDetectionReport extends Report implements
 	protected Map<DTNHost, Set<DTNHost>> familiars;
 	protected Map<DTNHost, Set<DTNHost>> localCommunities;
 	
-	protected Map<Pair, Double> startTimestamps;
-	protected Map<Pair, List<Duration>> connHistories;
+	protected Map<Pair, ContactHistory> connHistories;
 	
 	protected double lambda;
 	protected double gamma;
@@ -75,8 +75,7 @@ public class SimpleCommunityDetectionReport extends Report implements
 	{
 		this.familiars = new HashMap<DTNHost, Set<DTNHost>>();
 		this.localCommunities = new HashMap<DTNHost, Set<DTNHost>>();
-		this.startTimestamps = new HashMap<Pair, Double>();
-		this.connHistories = new HashMap<Pair, List<Duration>>();
+		this.connHistories = new HashMap<Pair, ContactHistory>();
 		
 		Settings s = getSettings();
 		this.lambda = s.getDouble(LAMBDA_SETTING);
@@ -130,7 +129,7 @@ public class SimpleCommunityDetectionReport extends Report implements
 		// Step 4 of alg: if not in familar set, begin recording contact duration
 		if(!host1familiarSet.contains(host2) || !host2familiarSet.contains(host1))
 		{
-			startTimestamps.put(new Pair(host1, host2), SimClock.getTime());
+			getHistory(new Pair(host1, host2)).connectionStarted(SimClock.getTime());
 		}
 		
 		// Add peer to my local community if needed
@@ -194,8 +193,6 @@ public class SimpleCommunityDetectionReport extends Report implements
 
 	public void hostsDisconnected(DTNHost host1, DTNHost host2)
 	{
-		double time, etime;
-		
 		if(familiars.containsKey(host1) && familiars.get(host1).contains(host2) &&
 			 familiars.containsKey(host2) && familiars.get(host2).contains(host1))
 			return;
@@ -203,44 +200,39 @@ public class SimpleCommunityDetectionReport extends Report implements
 		Pair p = new Pair(host1, host2);
 		
 		// record connection length in connection history
-		
-		time = startTimestamps.get(p);
-		etime = SimClock.getTime();
-		
-		List<Duration> history;
-		if(!connHistories.containsKey(p))
-		{
-			history = new LinkedList<Duration>();
-			connHistories.put(p, history);
-		}
-		else
-			history = connHistories.get(p);
-
-		if(etime - time > 0)
-			history.add(new Duration(time, etime));
-
-		Iterator<Duration> i = history.iterator();
-		time = 0;
-		while(i.hasNext())
-		{
-			Duration d = i.next();
-			time += d.end - d.start;
-		}
+		ContactHistory history = getHistory(p);
+		history.connectionEnded(SimClock.getTime());
 	
 		// if the peers' total connection history crossed the threshold, add
 		// as familiars
-		if(time > this.familiarThreshold)
+		if(history.getTotalDuration() > this.familiarThreshold)
 		{
 			familiars.get(host1).add(host1);
 			familiars.get(host2).add(host1);
 			localCommunities.get(host1).add(host2);
 			localCommunities.get(host2).add(host1);
 		}
-		
-		startTimestamps.remove(p);
 
 	}
 	
+	/**
+	 * Returns the connection history of a pair of hosts (creates a new 
+	 * history for the first connection of the pair)
+	 * 
+	 * @param p The pair of hosts
+	 * @return The connection history of the pair
+	 */
+	protected ContactHistory getHistory(Pair p)
+	{
+		ContactHistory history = connHistories.get(p);
+		if(history == null)
+		{
+			history = new ContactHistory();
+			connHistories.put(p, history);
+		}
+		return history;
+	}
+	
 	@Override
 	public void done()
 	{
@@ -303,19 +295,5 @@ public class SimpleCommunityDetectionReport extends Report implements
 		}
 		
 	}
-	
-	/**
-	 * Helper class to store start and end timestamps for a connection.
-	 * 
-	 * @author PJ Dillon, University of Pittsburgh
-	 *
-	 */
-	private class Duration
-	{
-		double start;
-		double end;
-		
-		public Duration(double s, double e) {start = s; end = e;}
-	}
 
 }
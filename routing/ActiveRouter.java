@@ -7,15 +7,20 @@ package routing;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
+import core.SettingsError;
 import core.SimClock;
+import core.TimerWheel;
 import core.Tuple;
 
 /**
@@ -31,15 +36,33 @@ public abstract class ActiveRouter extends MessageRouter {
 	/** should messages that final recipient marks as delivered be deleted
 	 * from message buffer */
 	protected boolean deleteDelivered;
+	/** Interval of the TTL checks -setting id ({@value}). Double valued.
+	 * The buffered messages whose TTL has run out (less than a minute
+	 * left) are dropped every this many seconds. If 0, the messages are
+	 * dropped exactly when their TTL expires. 
+	 * Default={@link #TTL_CHECK_INTERVAL} */
+	public static final String TTL_CHECK_INTERVAL_S = "ttlCheckInterval";
 	
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
-	/** how often TTL check (discarding old messages) is performed */
+	/** how often TTL check (discarding old messages) is performed by 
+	 * default */
 	public static int TTL_CHECK_INTERVAL = 60;
+	/** length of a tick of the message expiry timer wheel (seconds) */
+	private static final double EXPIRY_TICK = 1.0;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** interval of the TTL checks or 0 for dropping at expiry */
+	private double ttlCheckInterval;
+	/** expiry timers of the buffered messages */
+	private TimerWheel<Message> expiryTimers;
+	/** expiry timers of the buffered messages by message ID */
+	private HashMap<String, TimerWheel.Timer<Message>> expiryTimersById;
+	/** messages the peers lack, cached per connection (forgotten with 
+	 * the connection) */
+	private WeakHashMap<Connection, LackedMessages> lackedMessages;
 	
 
 	/**
@@ -56,6 +79,17 @@ public abstract class ActiveRouter extends MessageRouter {
 		else {
 			this.deleteDelivered = false;
 		}
+		
+		if (s.contains(TTL_CHECK_INTERVAL_S)) {
+			this.ttlCheckInterval = s.getDouble(TTL_CHECK_INTERVAL_S);
+			if (this.ttlCheckInterval < 0) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(TTL_CHECK_INTERVAL_S));
+			}
+		}
+		else {
+			this.ttlCheckInterval = TTL_CHECK_INTERVAL;
+		}
 	}
 	
 	/**
@@ -65,6 +99,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.ttlCheckInterval = r.ttlCheckInterval;
 	}
 	
 	@Override
@@ -72,6 +107,9 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.initialize(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.expiryTimers = new TimerWheel<Message>(EXPIRY_TICK);
+		this.expiryTimersById = new HashMap<String, TimerWheel.Timer<Message>>();
+		this.lackedMessages = new WeakHashMap<Connection, LackedMessages>();
 	}
 	
 	/**
@@ -92,6 +130,9 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		
 		DTNHost other = con.getOtherNode(getHost());
+		if (this.getMessagesFor(other).isEmpty()) {
+			return false; /* nothing for the peer; skip the buffer scan */
+		}
 		/* do a copy to avoid concurrent modification exceptions 
 		 * (startTransfer may remove messages) */
 		ArrayList<Message> temp = 
@@ -261,15 +302,60 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL has expired. If the TTL checks are done
+	 * periodically, the messages with less than a minute of TTL left (i.e.,
+	 * whose TTL in minutes is zero) are dropped too.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		double now = SimClock.getTime();
+		if (this.ttlCheckInterval > 0) {
+			now += 60; /* TTL is checked in (rounded down) minutes */
+		}
+		
+		for (Message m : this.expiryTimers.advance(now)) {
+			this.expiryTimersById.remove(m.getId());
+			if (this.ttlCheckInterval > 0 && m.getTtl() > 0) {
+				scheduleExpiry(m); /* exactly a minute left; not yet */
+				continue;
 			}
+			deleteMessage(m.getId(), true);
+		}
+	}
+	
+	/**
+	 * Schedules the expiry timer of a buffered message (if its TTL is
+	 * finite)
+	 * @param m The message
+	 */
+	private void scheduleExpiry(Message m) {
+		double expiryTime = m.getExpiryTime();
+		if (expiryTime < Double.POSITIVE_INFINITY) {
+			this.expiryTimersById.put(m.getId(), 
+					this.expiryTimers.schedule(m, expiryTime));
+		}
+	}
+	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		cancelExpiry(m.getId()); /* in case an old copy is replaced */
+		super.addToMessages(m, newMessage);
+		scheduleExpiry(m);
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id) {
+		cancelExpiry(id);
+		return super.removeFromMessages(id);
+	}
+	
+	/**
+	 * Cancels the expiry timer of a message
+	 * @param id ID of the message
+	 */
+	private void cancelExpiry(String id) {
+		TimerWheel.Timer<Message> timer = this.expiryTimersById.remove(id);
+		if (timer != null) {
+			this.expiryTimers.cancel(timer);
 		}
 	}
 	
@@ -326,16 +412,28 @@ public abstract class ActiveRouter extends MessageRouter {
 			return new ArrayList<Tuple<Message, Connection>>(0); 
 		}
 
+		/* count the deliverable messages from the destination index */
+		int nrofTuples = 0;
+		for (Connection con : getHost()) {
+			nrofTuples += getMessagesFor(con.getOtherNode(getHost())).size();
+		}
+		if (nrofTuples == 0) {
+			return new ArrayList<Tuple<Message, Connection>>(0);
+		}
+
+		/* collect the tuples in the buffer order */
 		List<Tuple<Message, Connection>> forTuples = 
-			new ArrayList<Tuple<Message, Connection>>();
+			new ArrayList<Tuple<Message, Connection>>(nrofTuples);
 		for (Message m : getMessageCollection()) {
-			for(Connection con : getHost().getConnections()) {
-			//for (Connection con : getConnections()) {
+			for (Connection con : getHost()) {
 				DTNHost to = con.getOtherNode(getHost());
 				if (m.getTo() == to) {
 					forTuples.add(new Tuple<Message, Connection>(m,con));
 				}
 			}
+			if (forTuples.size() == nrofTuples) {
+				break; /* found all */
+			}
 		}
 		
 		return forTuples;
@@ -343,14 +441,14 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Tries to send messages for the connections that are mentioned
-	 * in the Tuples in the order they are in the list until one of
+	 * in the Tuples in the order they are in the collection until one of
 	 * the connections starts transferring or all tuples have been tried.
 	 * @param tuples The tuples to try
 	 * @return The tuple whose connection accepted the message or null if
 	 * none of the connections accepted the message that was meant for them.
 	 */
 	protected Tuple<Message, Connection> tryMessagesForConnected(
-			List<Tuple<Message, Connection>> tuples) {
+			Collection<Tuple<Message, Connection>> tuples) {
 		if (tuples.size() == 0) {
 			return null;
 		}
@@ -358,7 +456,7 @@ public abstract class ActiveRouter extends MessageRouter {
 		for (Tuple<Message, Connection> t : tuples) {
 			Message m = t.getKey();
 			Connection con = t.getValue();
-			if (startTransfer(m, con) == RCV_OK) {
+			if (tryTransfer(m, con) == RCV_OK) {
 				return t;
 			}
 		}
@@ -370,14 +468,19 @@ public abstract class ActiveRouter extends MessageRouter {
 	  * Goes trough the messages until the other node accepts one
 	  * for receiving (or doesn't accept any). If a transfer is started, the
 	  * connection is included in the list of sending connections.
+	  * Messages that the other node has rejected (because it already has 
+	  * them, they don't fit in its buffer or their TTL has expired) are not
+	  * tried again until the state of the other node changes (see 
+	  * {@link SendQueue#isRejected(Message, Connection)}).
 	  * @param con Connection trough which the messages are sent
-	  * @param messages A list of messages to try
+	  * @param messages The messages to try
 	  * @return The message whose transfer was started or null if no 
 	  * transfer was started. 
 	  */
-	protected Message tryAllMessages(Connection con, List<Message> messages) {
+	protected Message tryAllMessages(Connection con, 
+			Iterable<Message> messages) {
 		for (Message m : messages) {
-			int retVal = startTransfer(m, con); 
+			int retVal = tryTransfer(m, con); 
 			if (retVal == RCV_OK) {
 				return m;	// accepted a message, don't try others
 			}
@@ -388,6 +491,32 @@ public abstract class ActiveRouter extends MessageRouter {
 		
 		return null; // no message was accepted		
 	}
+	
+	/**
+	 * Tries to start a transfer of a message using a connection (see 
+	 * {@link #startTransfer(Message, Connection)}) unless the other node has
+	 * already rejected the message and its state hasn't changed since. 
+	 * Rejections that depend only on the state of the other node are 
+	 * recorded to the sending queue.
+	 * @param m The message to transfer
+	 * @param con The connection to use
+	 * @return The value returned by startTransfer or 
+	 * {@link MessageRouter#DENIED_UNSPECIFIED} if the message was skipped
+	 */
+	private int tryTransfer(Message m, Connection con) {
+		SendQueue queue = getSendQueue();
+		if (queue.isRejected(m, con)) {
+			return DENIED_UNSPECIFIED; // would be rejected again
+		}
+		
+		int retVal = startTransfer(m, con);
+		if (retVal == DENIED_OLD || retVal == DENIED_NO_SPACE || 
+				retVal == DENIED_TTL) {
+			queue.setRejected(m, con);
+		}
+		
+		return retVal;
+	}
 
 	/**
 	 * Tries to send all given messages to all given connections. Connections
@@ -433,8 +562,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Tries to send all messages that this router is carrying to all
-	 * connections this node has. Messages are ordered using the 
-	 * {@link MessageRouter#sortByQueueMode(List)}. See 
+	 * connections this node has. Messages are tried in the order of the 
+	 * sending queue (see {@link MessageRouter#getSendQueue()}). See 
 	 * {@link #tryMessagesToConnections(List, List)} for sending details.
 	 * @return The connections that started a transfer or null if no connection
 	 * accepted a message.
@@ -444,14 +573,93 @@ public abstract class ActiveRouter extends MessageRouter {
 		if (getConnectionCount() == 0 || this.getNrofMessages() == 0) {
 			return null;
 		}
-		
-		//List<Connection> connections = getConnections();
-
-		List<Message> messages = 
-			new ArrayList<Message>(this.getMessageCollection());
-		this.sortByQueueMode(messages);
 
-		return tryMessagesToAllConnections(messages);
+		for (Connection con : getHost()) {
+			Message started = tryAllMessages(con, getSendQueue()); 
+			if (started != null) { 
+				return con;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Tries to send the messages that the peers lack (see 
+	 * {@link #getMessagesPeerLacks(Connection)}) to all connections this
+	 * node has. Otherwise works like {@link #tryAllMessagesToAllConnections()}
+	 * but the messages that the peers would reject as old are not offered.
+	 * @param messages The messages to try or null to try all messages
+	 * @return The connection that started a transfer or null if no 
+	 * connection accepted a message.
+	 */
+	protected Connection tryLackedMessagesToAllConnections(
+			Set<Message> messages) {
+		if (getConnectionCount() == 0 || this.getNrofMessages() == 0) {
+			return null;
+		}
+		
+		for (Connection con : getHost()) {
+			List<Message> lacked = getMessagesPeerLacks(con);
+			if (messages != null) {
+				lacked = new ArrayList<Message>(lacked);
+				lacked.retainAll(messages);
+			}
+			Message started = tryAllMessages(con, lacked); 
+			if (started != null) { 
+				return con;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns true if the host at the other end of a connection lacks the
+	 * message, i.e., the message is not in its summary vector (see
+	 * {@link MessageRouter#getSummaryVector()}). If delivered messages are
+	 * deleted, messages for the peer are reported lacking so they are still
+	 * offered and deleted when the peer rejects them.
+	 * @param m The message
+	 * @param peer The peer
+	 * @return True if the peer lacks the message
+	 */
+	protected boolean peerLacks(Message m, DTNHost peer) {
+		if (!peer.getRouter().getSummaryVector().contains(m)) {
+			return true;
+		}
+		return deleteDelivered && m.getTo() == peer;
+	}
+	
+	/**
+	 * Returns the messages of this router that the host at the other end
+	 * of the connection lacks (see {@link #peerLacks(Message, DTNHost)}), 
+	 * in the order of the sending queue. The list is computed once per 
+	 * connection and refreshed only when the summary vector of either 
+	 * host changes. The returned list must not be modified.
+	 * @param con The connection
+	 * @return The messages the peer lacks
+	 */
+	protected List<Message> getMessagesPeerLacks(Connection con) {
+		DTNHost peer = con.getOtherNode(getHost());
+		int myVersion = getSummaryVector().getVersion();
+		int peerVersion = peer.getRouter().getSummaryVector().getVersion();
+		
+		LackedMessages lacked = this.lackedMessages.get(con);
+		if (lacked != null && lacked.myVersion == myVersion && 
+				lacked.peerVersion == peerVersion) {
+			return lacked.messages;
+		}
+		
+		List<Message> messages = new ArrayList<Message>();
+		for (Message m : getSendQueue()) {
+			if (peerLacks(m, peer)) {
+				messages.add(m);
+			}
+		}
+		this.lackedMessages.put(con, 
+				new LackedMessages(myVersion, peerVersion, messages));
+		return messages;
 	}
 		
 	/**
@@ -511,37 +719,24 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	protected void addToSendingConnections(Connection con) {
 		this.sendingConnections.add(con);
+		wakeUp(); // transfer can be started on request of a peer
 	}
 		
 	/**
 	 * Returns true if this router is transferring something at the moment or
-	 * some transfer has not been finalized.
+	 * some transfer has not been finalized. If the interfaces of the host 
+	 * allow concurrent transfers, the router counts as transferring only 
+	 * when none of those interfaces has capacity for a new transfer.
 	 * @return true if this router is transferring something
+	 * @see core.NetworkInterface#CONCURRENT_TRANSFERS_S
 	 */
 	public boolean isTransferring() {
-		if (this.sendingConnections.size() > 0) {
-			return true; // sending something
-		}
-		
-		/*if (this.getHost().getConnections().size() == 0) {
-			return false; // not connected
-		}*/
-		
-		/*List<Connection> connections = getConnections();
-		for (int i=0, n=connections.size(); i<n; i++) {
-			Connection con = connections.get(i);
-			if (!con.isReadyForTransfer()) {
-				return true;	// a connection isn't ready for new transfer
-			}
-		}*/
-		
-		for(Connection con : getHost()) {
-			if(!con.isReadyForTransfer()) {
-				return true;
-			}
+		if (this.sendingConnections.size() == 0 && 
+				getHost().getNrofBusyConnections() == 0) {
+			return false; // nothing going on
 		}
 		
-		return false;		
+		return !getHost().hasConcurrentTransferCapacity();
 	}
 	
 	/**
@@ -573,8 +768,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		
 		super.update();
 		
-		/* in theory we can have multiple sending connections even though
-		  currently all routers allow only one concurrent sending connection */
+		/* there can be multiple sending connections if the interfaces allow
+		  concurrent transfers */
 		for (int i=0; i<this.sendingConnections.size(); ) {
 			boolean removeCurrent = false;
 			Connection con = sendingConnections.get(i);
@@ -610,13 +805,35 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 		
 		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
+		if ((ttlCheckInterval == 0 || 
+				SimClock.getTime() - lastTtlCheck >= ttlCheckInterval) && 
 				sendingConnections.size() == 0) {
 			dropExpiredMessages();
 			lastTtlCheck = SimClock.getTime();
 		}
 	}
 	
+	/**
+	 * Declares that this router has nothing to do until its buffer or
+	 * connections change, a transfer of this host or one of its peers ends,
+	 * or the next TTL check is due (or the next message expires, if the
+	 * messages are dropped at expiry). Routers that are sending something are
+	 * kept awake since the transfers are watched in {@link #update()}.
+	 * Has effect only if idle routers are skipped 
+	 * (see {@link core.World#SKIP_IDLE_ROUTERS_S}).
+	 */
+	protected void sleepUntilChange() {
+		if (this.sendingConnections.size() > 0) {
+			return;
+		}
+		if (this.ttlCheckInterval == 0) {
+			sleep(this.expiryTimers.getNextTime());
+		}
+		else {
+			sleep(this.lastTtlCheck + this.ttlCheckInterval);
+		}
+	}
+	
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()} 
 	 * due connection going down. This happens on the sending host. 
@@ -638,4 +855,24 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected int getConnectionCount() {
 		return getHost().getConnectionCount();
 	}
+	
+	/**
+	 * Messages a peer lacked when the summary vectors of this router and
+	 * the peer had certain versions
+	 */
+	private static class LackedMessages {
+		/** Version of this router's summary vector */
+		private int myVersion;
+		/** Version of the peer's summary vector */
+		private int peerVersion;
+		/** The messages the peer lacked, in the sending queue order */
+		private List<Message> messages;
+		
+		private LackedMessages(int myVersion, int peerVersion, 
+				List<Message> messages) {
+			this.myVersion = myVersion;
+			this.peerVersion = peerVersion;
+			this.messages = messages;
+		}
+	}
 }
@@ -25,6 +25,11 @@ import core.*;
  * to the list if so. When a connection goes down, any Tuple in the list
  * associated with that connection is removed from the List.
  * 
+ * The List is an {@link OutgoingQueue} that indexes the Tuples by connection
+ * and by message, so removing the Tuples of a connection that goes down, of a
+ * message that was sent, or of a message that was removed from the buffer
+ * doesn't require going through the whole List.
+ * 
  * <strong>Decision Engines</strong>
  * 
  * Most (if not all) routing decision making is provided by a 
@@ -89,7 +94,7 @@ public class DecisionEngineRouter extends ActiveRouter
 	
 	protected boolean tombstoning;
 	protected RoutingDecisionEngine decider;
-	protected List<Tuple<Message, Connection>> outgoingMessages;
+	protected OutgoingQueue outgoingMessages;
 	
 	protected Set<String> tombstones;
 	
@@ -105,7 +110,7 @@ public class DecisionEngineRouter extends ActiveRouter
 		
 		Settings routeSettings = new Settings(PUBSUB_NS);
 		
-		outgoingMessages = new LinkedList<Tuple<Message, Connection>>();
+		outgoingMessages = new OutgoingQueue();
 		
 		decider = (RoutingDecisionEngine)routeSettings.createIntializedObject(
 				"routing." + routeSettings.getSetting(ENGINE_SETTING));
@@ -123,7 +128,7 @@ public class DecisionEngineRouter extends ActiveRouter
 	public DecisionEngineRouter(DecisionEngineRouter r)
 	{
 		super(r);
-		outgoingMessages = new LinkedList<Tuple<Message, Connection>>();
+		outgoingMessages = new OutgoingQueue();
 		decider = r.decider.replicate();
 		tombstoning = r.tombstoning;
 		
@@ -199,7 +204,7 @@ public class DecisionEngineRouter extends ActiveRouter
 		for(Message m : msgs)
 		{
 			if(decider.shouldSendMessageToHost(m, otherNode))
-				outgoingMessages.add(new Tuple<Message,Connection>(m, con));
+				outgoingMessages.add(m, con);
 		}
 	}
 	
@@ -218,15 +223,9 @@ public class DecisionEngineRouter extends ActiveRouter
 		
 		/*
 		 * If we  were trying to send message to this peer, we need to remove them
-		 * from the outgoing List.
+		 * from the outgoing queue.
 		 */
-		for(Iterator<Tuple<Message,Connection>> i = outgoingMessages.iterator(); 
-				i.hasNext();)
-		{
-			Tuple<Message, Connection> t = i.next();
-			if(t.getValue() == con)
-				i.remove();
-		}
+		outgoingMessages.removeConnection(con);
 	}
 
 	/*@Override
@@ -363,7 +362,7 @@ public class DecisionEngineRouter extends ActiveRouter
 		incoming.setReceiveTime(SimClock.getTime());
 		
 		Message outgoing = incoming;
-		for (Application app : getApplications(incoming.getAppID())) {
+		for (Application app : getApplicationArray(incoming.getAppID())) {
 			// Note that the order of applications is significant
 			// since the next one gets the output of the previous.
 			outgoing = app.handle(outgoing, getHost());
@@ -388,7 +387,7 @@ public class DecisionEngineRouter extends ActiveRouter
 		
 		if (isFirstDelivery)
 		{
-			this.deliveredMessages.put(id, aMessage);
+			addToDeliveredMessages(id, aMessage);
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -404,35 +403,26 @@ public class DecisionEngineRouter extends ActiveRouter
 	{
 		Message transferred = this.getMessage(con.getMessage().getId());
 		
-		for(Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator(); 
-		i.hasNext();)
-		{
-			Tuple<Message, Connection> t = i.next();
-			if(t.getKey().getId().equals(transferred.getId()) && 
-					t.getValue().equals(con))
-			{
-				i.remove();
-				break;
-			}
-		}
+		outgoingMessages.remove(transferred.getId(), con);
 		
 		if(decider.shouldDeleteSentMessage(transferred, con.getOtherNode(getHost())))
 		{
 			if(transferred.getId().equals("M14"))
 				System.out.println("Host: " + getHost() + " deleting M14 after transfer");
 			this.deleteMessage(transferred.getId(), false);
-			
-			for(Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator(); 
-			i.hasNext();)
-			{
-				Tuple<Message, Connection> t = i.next();
-				if(t.getKey().getId().equals(transferred.getId()))
-				{
-					i.remove();
-				}
-			}
 		}
 	}
+	
+	/**
+	 * Removes the message from the buffer and drops all the attempts to send
+	 * it from the outgoing queue.
+	 */
+	@Override
+	protected Message removeFromMessages(String id)
+	{
+		outgoingMessages.removeMessage(id);
+		return super.removeFromMessages(id);
+	}
 
 	@Override
 	public void update()
@@ -443,16 +433,6 @@ public class DecisionEngineRouter extends ActiveRouter
 		}
 		
 		tryMessagesForConnected(outgoingMessages);
-		
-		for(Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator(); 
-			i.hasNext();)
-		{
-			Tuple<Message, Connection> t = i.next();
-			if(!this.hasMessage(t.getKey().getId()))
-			{
-				i.remove();
-			}
-		}
 	}
 	
 	public RoutingDecisionEngine getDecisionEngine()
@@ -476,7 +456,7 @@ public class DecisionEngineRouter extends ActiveRouter
 			{
 				if(m.getId().equals("M14"))
 					System.out.println("Adding attempt for M14 from: " + getHost() + " to: " + other);
-				outgoingMessages.add(new Tuple<Message, Connection>(m, c));
+				outgoingMessages.add(m, c);
 			}
 		}
 	}
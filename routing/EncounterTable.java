@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+import core.SimError;
+
+/**
+ * Table of the times a host last encountered other hosts. The times are
+ * stored in an array indexed by the address of the other host, so looking up
+ * a time doesn't require hashing or boxing.<BR>
+ * The table can be exchanged with peers as a read-only snapshot (see 
+ * {@link #snapshot()}). The snapshots share the array of the table until the
+ * table is modified the next time, when the table copies the array 
+ * (copy-on-write), so taking a snapshot on every contact is cheap.
+ */
+public class EncounterTable {
+	/** Encounter times by host address; NaN for hosts not encountered */
+	private double[] times;
+	/** Number of hosts in the table */
+	private int size;
+	/** Is the array shared with snapshots (and copied on the next write) */
+	private boolean shared;
+	/** Is this table a read-only snapshot */
+	private boolean readOnly;
+
+	/**
+	 * Creates a new, empty, encounter table
+	 */
+	public EncounterTable() {
+		this.times = new double[0];
+		this.size = 0;
+		this.shared = false;
+		this.readOnly = false;
+	}
+
+	/**
+	 * Creates a read-only snapshot of a table
+	 * @param table The table
+	 */
+	private EncounterTable(EncounterTable table) {
+		this.times = table.times;
+		this.size = table.size;
+		this.shared = true;
+		this.readOnly = true;
+	}
+
+	/**
+	 * Returns a read-only snapshot of the current state of this table. 
+	 * Changes to this table after the snapshot are not visible in the 
+	 * snapshot.
+	 * @return The snapshot
+	 */
+	public EncounterTable snapshot() {
+		this.shared = true;
+		return new EncounterTable(this);
+	}
+
+	/**
+	 * Returns true if the table has an encounter time for the host
+	 * @param host The host
+	 * @return true if the host has been encountered
+	 */
+	public boolean contains(DTNHost host) {
+		return !Double.isNaN(getTime(host.getAddress()));
+	}
+
+	/**
+	 * Returns the last encounter time of a host
+	 * @param host The host
+	 * @param defaultTime The time to return if the host hasn't been 
+	 * encountered
+	 * @return The encounter time or the default time
+	 */
+	public double getTime(DTNHost host, double defaultTime) {
+		double time = getTime(host.getAddress());
+		return Double.isNaN(time) ? defaultTime : time;
+	}
+
+	/**
+	 * Returns the last encounter time of the host with the given address
+	 * @param address Address of the host
+	 * @return The encounter time or NaN if the host hasn't been encountered
+	 */
+	public double getTime(int address) {
+		if (address >= this.times.length) {
+			return Double.NaN;
+		}
+		return this.times[address];
+	}
+
+	/**
+	 * Sets the last encounter time of a host
+	 * @param host The host
+	 * @param time The encounter time
+	 * @throws SimError if the table is a read-only snapshot
+	 */
+	public void setTime(DTNHost host, double time) {
+		setTime(host.getAddress(), time);
+	}
+
+	/**
+	 * Sets the last encounter time of the host with the given address
+	 * @param address Address of the host
+	 * @param time The encounter time
+	 * @throws SimError if the table is a read-only snapshot
+	 */
+	public void setTime(int address, double time) {
+		if (this.readOnly) {
+			throw new SimError("Can't modify a snapshot of an encounter table");
+		}
+		if (address >= this.times.length) {
+			int oldLength = this.times.length;
+			this.times = Arrays.copyOf(this.times, 
+					Math.max(address + 1, 2 * oldLength));
+			Arrays.fill(this.times, oldLength, this.times.length, Double.NaN);
+			this.shared = false;
+		}
+		else if (this.shared) {
+			this.times = this.times.clone();
+			this.shared = false;
+		}
+
+		if (Double.isNaN(this.times[address])) {
+			this.size++;
+		}
+		this.times[address] = time;
+	}
+
+	/**
+	 * Returns the number of hosts in the table
+	 * @return the number of hosts in the table
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the upper bound (exclusive) for the addresses of the hosts in 
+	 * the table
+	 * @return Upper bound for the addresses
+	 */
+	public int getAddressBound() {
+		return this.times.length;
+	}
+
+	public String toString() {
+		return "EncounterTable of " + this.size + " hosts";
+	}
+}
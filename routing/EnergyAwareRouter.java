@@ -4,45 +4,37 @@
  */
 package routing;
 
-import java.util.Random;
+import java.util.List;
+
 import core.*;
 
 /**
- * Energy level-aware variant of Epidemic router.
+ * Energy level-aware variant of Epidemic router. The energy usage of the
+ * node is modeled by an {@link EnergyModel}; the router only tells the model
+ * when the node starts or stops transmitting or receiving.
  */
-public class EnergyAwareRouter extends ActiveRouter 
-		implements ModuleCommunicationListener{
-	/** Initial units of energy -setting id ({@value}). Can be either a 
-	 * single value, or a range of two values. In the latter case, the used
-	 * value is a uniformly distributed random value between the two values. */
-	public static final String INIT_ENERGY_S = "intialEnergy";
-	/** Energy usage per scanning -setting id ({@value}). */
-	public static final String SCAN_ENERGY_S = "scanEnergy";
+public class EnergyAwareRouter extends ActiveRouter {
+	/** Initial units of energy -setting id ({@value}).
+	 * @see EnergyModel#INIT_ENERGY_S */
+	public static final String INIT_ENERGY_S = EnergyModel.INIT_ENERGY_S;
+	/** Energy usage per scanning -setting id ({@value}).
+	 * @see EnergyModel#SCAN_ENERGY_S */
+	public static final String SCAN_ENERGY_S = EnergyModel.SCAN_ENERGY_S;
 	/** Energy usage per second when sending -setting id ({@value}). */
-	public static final String TRANSMIT_ENERGY_S = "transmitEnergy";
-	/** Energy update warmup period -setting id ({@value}). Defines the 
-	 * simulation time after which the energy level starts to decrease due to 
-	 * scanning, transmissions, etc. Default value = 0. If value of "-1" is 
-	 * defined, uses the value from the report warmup setting 
-	 * {@link report.Report#WARMUP_S} from the namespace 
-	 * {@value report.Report#REPORT_NS}. */
-	public static final String WARMUP_S = "energyWarmup";
+	public static final String TRANSMIT_ENERGY_S =
+		EnergyModel.TRANSMIT_ENERGY_S;
+	/** Energy update warmup period -setting id ({@value}).
+	 * @see EnergyModel#WARMUP_S */
+	public static final String WARMUP_S = EnergyModel.WARMUP_S;
 
 	/** {@link ModuleCommunicationBus} identifier for the "current amount of 
 	 * energy left" variable. Value type: double */
-	public static final String ENERGY_VALUE_ID = "Energy.value";
-	
-	private final double[] initEnergy;
-	private double warmupTime;
-	private double currentEnergy;
-	/** energy usage per scan */
-	private double scanEnergy;
-	private double transmitEnergy;
-	private double lastScanUpdate;
-	private double lastUpdate;
-	private double scanInterval;	
-	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
+	public static final String ENERGY_VALUE_ID = EnergyModel.ENERGY_VALUE_ID;
+	/** Typed {@link ModuleCommunicationBus} key for {@link #ENERGY_VALUE_ID} */
+	public static final BusKey<Double> ENERGY_KEY = EnergyModel.ENERGY_KEY;
+
+	/** Energy model of the node (or the prototype of the models) */
+	private EnergyModel energy;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -51,158 +43,95 @@ public class EnergyAwareRouter extends ActiveRouter
 	 */
 	public EnergyAwareRouter(Settings s) {
 		super(s);
-		this.initEnergy = s.getCsvDoubles(INIT_ENERGY_S);
-		
-		if (this.initEnergy.length != 1 && this.initEnergy.length != 2) {
-			throw new SettingsError(INIT_ENERGY_S + " setting must have " + 
-					"either a single value or two comma separated values");
-		}
-		
-		this.scanEnergy = s.getDouble(SCAN_ENERGY_S);
-		this.transmitEnergy = s.getDouble(TRANSMIT_ENERGY_S);
-		this.scanInterval  = s.getDouble(SimScenario.SCAN_INTERVAL_S);
-		
-		if (s.contains(WARMUP_S)) {
-			this.warmupTime = s.getInt(WARMUP_S);
-			if (this.warmupTime == -1) {
-				this.warmupTime = new Settings(report.Report.REPORT_NS).
-					getInt(report.Report.WARMUP_S);
-			}
-		}
-		else {
-			this.warmupTime = 0;
-		}
-	}
-	
-	/**
-	 * Sets the current energy level into the given range using uniform 
-	 * random distribution.
-	 * @param range The min and max values of the range, or if only one value
-	 * is given, that is used as the energy level
-	 */
-	protected void setEnergy(double range[]) {
-		if (range.length == 1) {
-			this.currentEnergy = range[0];
-		}
-		else {
-			if (rng == null) {
-				rng = new Random((int)(range[0] + range[1]));
-			}
-			this.currentEnergy = range[0] + 
-				rng.nextDouble() * (range[1] - range[0]);
-		}
+		this.energy = new EnergyModel(s);
 	}
-	
+
 	/**
 	 * Copy constructor.
 	 * @param r The router prototype where setting values are copied from
 	 */
 	protected EnergyAwareRouter(EnergyAwareRouter r) {
 		super(r);
-		this.initEnergy = r.initEnergy;
-		setEnergy(this.initEnergy);
-		this.scanEnergy = r.scanEnergy;
-		this.transmitEnergy = r.transmitEnergy;
-		this.scanInterval = r.scanInterval;
-		this.warmupTime  = r.warmupTime;
-		this.comBus = null;
-		this.lastScanUpdate = 0;
-		this.lastUpdate = 0;
+		this.energy = r.energy.replicate();
 	}
-	
+
+	@Override
+	public void initialize(DTNHost host, List<MessageListener> mListeners) {
+		super.initialize(host, mListeners);
+		this.energy.setHost(host);
+	}
+
 	@Override
 	protected int checkReceiving(Message m) {
-		if (this.currentEnergy < 0) {
+		if (this.energy.isDepleted()) {
 			return DENIED_UNSPECIFIED;
 		}
 		else {
 			 return super.checkReceiving(m);
 		}
 	}
-	
+
 	/**
-	 * Updates the current energy so that the given amount is reduced from it.
-	 * If the energy level goes below zero, sets the level to zero.
-	 * Does nothing if the warmup time has not passed.
-	 * @param amount The amount of energy to reduce
+	 * Returns the energy model of the node
+	 * @return the energy model of the node
 	 */
-	protected void reduceEnergy(double amount) {
-		if (SimClock.getTime() < this.warmupTime) {
-			return;
-		}
-		
-		comBus.updateDouble(ENERGY_VALUE_ID, -amount);
-		if (this.currentEnergy < 0) {
-			comBus.updateProperty(ENERGY_VALUE_ID, 0.0);
-		}
+	public EnergyModel getEnergyModel() {
+		return this.energy;
 	}
-	
+
 	/**
-	 * Reduces the energy reserve for the amount that is used by sending data
-	 * and scanning for the other nodes. 
+	 * Tells the energy model the current state of the node: always 
+	 * scanning, transmitting if there are sending connections, and
+	 * receiving if some other node is transferring a message to this node.
 	 */
-	protected void reduceSendingAndScanningEnergy() {
-		double simTime = SimClock.getTime();
-		
-		if (this.comBus == null) {
-			this.comBus = getHost().getComBus();
-			this.comBus.addProperty(ENERGY_VALUE_ID, this.currentEnergy);
-			this.comBus.subscribe(ENERGY_VALUE_ID, this);
-		}
-		
-		if (this.currentEnergy <= 0) {
-			/* turn radio off */
-			this.comBus.updateProperty(NetworkInterface.RANGE_ID, 0.0);
-			return; /* no more energy to start new transfers */
-		}
-		
-		if (simTime > this.lastUpdate && sendingConnections.size() > 0) {
-			/* sending data */
-			reduceEnergy((simTime - this.lastUpdate) * this.transmitEnergy);
+	protected void updateEnergyState() {
+		int state = EnergyModel.SCANNING;
+
+		if (sendingConnections.size() > 0) {
+			state |= EnergyModel.TRANSMITTING;
 		}
-		this.lastUpdate = simTime;
-		
-		if (simTime > this.lastScanUpdate + this.scanInterval) {
-			/* scanning at this update round */
-			reduceEnergy(this.scanEnergy);
-			this.lastScanUpdate = simTime;
+		for (Connection con : getHost().getConnections()) {
+			if (con.getMessage() != null && !sendingConnections.contains(con)) {
+				state |= EnergyModel.RECEIVING;
+				break;
+			}
 		}
+
+		this.energy.setState(state, SimClock.getTime());
+	}
+
+	@Override
+	protected void addToSendingConnections(Connection con) {
+		super.addToSendingConnections(con);
+		updateEnergyState();
 	}
-	
+
 	@Override
 	public void update() {
 		super.update();
-		reduceSendingAndScanningEnergy();
-				
+		EnergyModel.update(SimClock.getTime());
+		updateEnergyState();
+
 		if (isTransferring() || !canStartTransfer()) {
 			return; // transferring, don't try other connections yet
 		}
-		
+
 		// Try first the messages that can be delivered to final recipient
 		if (exchangeDeliverableMessages() != null) {
 			return; // started a transfer, don't try others (yet)
 		}
-		
+
 		this.tryAllMessagesToAllConnections();
 	}
-		
+
 	@Override
 	public EnergyAwareRouter replicate() {
 		return new EnergyAwareRouter(this);
 	}
-	
-	/**
-	 * Called by the combus is the energy value is changed
-	 * @param key The energy ID
-	 * @param newValue The new energy value
-	 */
-	public void moduleValueChanged(String key, Object newValue) {
-		this.currentEnergy = (Double)newValue;
-	}
 
-	
 	@Override
 	public String toString() {
-		return super.toString() + " energy level = " + this.currentEnergy;
-	}	
+		return super.toString() + " energy level = " + 
+			this.energy.getEnergy(SimClock.getTime());
+	}
 }
\ No newline at end of file
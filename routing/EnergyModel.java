@@ -0,0 +1,398 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import core.BusKey;
+import core.BusKeyListener;
+import core.DTNHost;
+import core.DTNSim;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.SimClock;
+import core.SimScenario;
+import core.TimerWheel;
+
+/**
+ * Energy model of a node. The energy is consumed at a constant rate that
+ * depends on the state of the node (idle, scanning, transmitting and/or
+ * receiving), so the energy level is integrated only when the state changes
+ * and the time when the node runs out of energy is known in advance.
+ * Depletions are scheduled as events that are run by
+ * {@link #update(double)}; a depleted node's radio is turned off.<BR>
+ * The energy levels of all nodes are kept in an array indexed by the
+ * nodes' addresses (see {@link #getEnergyLevels(double)}) and the level of
+ * each node is also published to its {@link ModuleCommunicationBus} with
+ * the key {@link #ENERGY_KEY} whenever its state changes. Setting the value
+ * of the key (e.g., by a charging module) changes the energy level.
+ */
+public class EnergyModel implements BusKeyListener {
+	/** Initial units of energy -setting id ({@value}). Can be either a
+	 * single value, or a range of two values. In the latter case, the used
+	 * value is a uniformly distributed random value between the two values. */
+	public static final String INIT_ENERGY_S = "intialEnergy";
+	/** Energy usage per scanning -setting id ({@value}). The energy is
+	 * used evenly over the scanning interval
+	 * ({@link core.SimScenario#SCAN_INTERVAL_S}, default = 0). With scanning
+	 * interval 0 (continuous scanning) the energy is used once per update
+	 * interval ({@link core.SimScenario#UP_INT_S}). */
+	public static final String SCAN_ENERGY_S = "scanEnergy";
+	/** Energy usage per second when sending -setting id ({@value}). */
+	public static final String TRANSMIT_ENERGY_S = "transmitEnergy";
+	/** Energy usage per second when receiving -setting id ({@value}).
+	 * Default value = 0. */
+	public static final String RECEIVE_ENERGY_S = "receiveEnergy";
+	/** Energy usage per second in all states -setting id ({@value}).
+	 * Default value = 0. */
+	public static final String IDLE_ENERGY_S = "idleEnergy";
+	/** Energy update warmup period -setting id ({@value}). Defines the
+	 * simulation time after which the energy level starts to decrease due to
+	 * scanning, transmissions, etc. Default value = 0. If value of "-1" is
+	 * defined, uses the value from the report warmup setting
+	 * {@link report.Report#WARMUP_S} from the namespace
+	 * {@value report.Report#REPORT_NS}. */
+	public static final String WARMUP_S = "energyWarmup";
+
+	/** {@link ModuleCommunicationBus} identifier for the "current amount of
+	 * energy left" variable. Value type: double */
+	public static final String ENERGY_VALUE_ID = "Energy.value";
+	/** Typed {@link ModuleCommunicationBus} key for {@link #ENERGY_VALUE_ID} */
+	public static final BusKey<Double> ENERGY_KEY =
+		BusKey.register(ENERGY_VALUE_ID, Double.class);
+
+	/** State of a node that only uses the idle energy */
+	public static final int IDLE = 0;
+	/** State flag of a scanning node */
+	public static final int SCANNING = 1;
+	/** State flag of a transmitting node */
+	public static final int TRANSMITTING = 2;
+	/** State flag of a receiving node */
+	public static final int RECEIVING = 4;
+
+	/** Tick length of the depletion timer wheel (seconds) */
+	private static final double DEPLETION_TICK = 1.0;
+
+	/** Scheduled depletions of the nodes */
+	private static TimerWheel<EnergyModel> depletions;
+	/** Energy levels of the nodes by address (NaN for nodes without a
+	 * model) as of {@link #levelTimes} */
+	private static double[] levels;
+	/** Times of the energy levels */
+	private static double[] levelTimes;
+	/** Energy models of the nodes by address */
+	private static EnergyModel[] models;
+	private static Random rng = null;
+
+	static {
+		DTNSim.registerForReset(EnergyModel.class.getCanonicalName());
+		reset();
+	}
+
+	private final double[] initEnergy;
+	private double warmupTime;
+	/** Energy usage per second in each state */
+	private double[] rates;
+
+	/** Address of the node (or -1 if not set) */
+	private int address;
+	private ModuleCommunicationBus comBus;
+	/** The state of the node */
+	private int state;
+	/** Timer of the node's depletion (or null if none is scheduled) */
+	private TimerWheel.Timer<EnergyModel> depletion;
+	/** Has the node run out of energy */
+	private boolean depleted;
+	/** Is the level being published to the bus */
+	private boolean publishing;
+
+	/**
+	 * Creates a new energy model prototype based on the settings in the
+	 * given Settings object.
+	 * @param s The settings object
+	 */
+	public EnergyModel(Settings s) {
+		this.initEnergy = s.getCsvDoubles(INIT_ENERGY_S);
+
+		if (this.initEnergy.length != 1 && this.initEnergy.length != 2) {
+			throw new SettingsError(INIT_ENERGY_S + " setting must have " +
+					"either a single value or two comma separated values");
+		}
+
+		double scanInterval = s.contains(SimScenario.SCAN_INTERVAL_S) ?
+				s.getDouble(SimScenario.SCAN_INTERVAL_S) : 0;
+		if (scanInterval <= 0) {
+			/* continuous scanning: scan energy is used on every update */
+			scanInterval = new Settings(SimScenario.SCENARIO_NS).getDouble(
+					SimScenario.UP_INT_S);
+		}
+		double scanRate = s.getDouble(SCAN_ENERGY_S) / scanInterval;
+		double transmitRate = s.getDouble(TRANSMIT_ENERGY_S);
+		double receiveRate = s.contains(RECEIVE_ENERGY_S) ?
+				s.getDouble(RECEIVE_ENERGY_S) : 0;
+		double idleRate = s.contains(IDLE_ENERGY_S) ?
+				s.getDouble(IDLE_ENERGY_S) : 0;
+
+		this.rates = new double[(SCANNING | TRANSMITTING | RECEIVING) + 1];
+		for (int i = 0; i < this.rates.length; i++) {
+			this.rates[i] = idleRate +
+				((i & SCANNING) != 0 ? scanRate : 0) +
+				((i & TRANSMITTING) != 0 ? transmitRate : 0) +
+				((i & RECEIVING) != 0 ? receiveRate : 0);
+		}
+
+		if (s.contains(WARMUP_S)) {
+			this.warmupTime = s.getInt(WARMUP_S);
+			if (this.warmupTime == -1) {
+				this.warmupTime = new Settings(report.Report.REPORT_NS).
+					getInt(report.Report.WARMUP_S);
+			}
+		}
+		else {
+			this.warmupTime = 0;
+		}
+		this.address = -1;
+	}
+
+	/**
+	 * Copy constructor. The initial energy level is set when the model
+	 * gets its node (see {@link #setHost(DTNHost)}).
+	 * @param proto The model prototype where setting values are copied from
+	 */
+	protected EnergyModel(EnergyModel proto) {
+		this.initEnergy = proto.initEnergy;
+		this.warmupTime = proto.warmupTime;
+		this.rates = proto.rates;
+		this.address = -1;
+		this.state = SCANNING;
+		this.depleted = false;
+		this.publishing = false;
+	}
+
+	/**
+	 * Creates a replicate of this model prototype
+	 * @return A new model with the same settings
+	 */
+	public EnergyModel replicate() {
+		return new EnergyModel(this);
+	}
+
+	/**
+	 * Resets the energy levels and scheduled depletions of all nodes
+	 */
+	public static void reset() {
+		depletions = new TimerWheel<EnergyModel>(DEPLETION_TICK);
+		levels = new double[0];
+		levelTimes = new double[0];
+		models = new EnergyModel[0];
+	}
+
+	/**
+	 * Returns the initial energy level from the given range using uniform
+	 * random distribution.
+	 * @param range The min and max values of the range, or if only one value
+	 * is given, that is used as the energy level
+	 * @return The initial energy level
+	 */
+	protected double getInitialEnergy(double range[]) {
+		if (range.length == 1) {
+			return range[0];
+		}
+		if (rng == null) {
+			rng = new Random((int)(range[0] + range[1]));
+		}
+		return range[0] + rng.nextDouble() * (range[1] - range[0]);
+	}
+
+	/**
+	 * Sets the node of this model, sets the initial energy level of the
+	 * node and publishes it to the node's bus
+	 * @param host The node
+	 */
+	public void setHost(DTNHost host) {
+		this.address = host.getAddress();
+		this.comBus = host.getComBus();
+
+		if (this.address >= models.length) {
+			int length = Math.max(this.address + 1, models.length * 2);
+			models = Arrays.copyOf(models, length);
+			levelTimes = Arrays.copyOf(levelTimes, length);
+			int oldLength = levels.length;
+			levels = Arrays.copyOf(levels, length);
+			Arrays.fill(levels, oldLength, length, Double.NaN);
+		}
+		models[this.address] = this;
+		levels[this.address] = getInitialEnergy(this.initEnergy);
+		levelTimes[this.address] = SimClock.getTime();
+
+		this.publishing = true;
+		this.comBus.addProperty(ENERGY_KEY, levels[this.address]);
+		this.publishing = false;
+		this.comBus.subscribe(ENERGY_KEY, this);
+		scheduleDepletion();
+	}
+
+	/**
+	 * Runs the depletions that are due by the given time (i.e., turns off
+	 * the radios of the nodes that have run out of energy)
+	 * @param time The current time
+	 */
+	public static void update(double time) {
+		for (EnergyModel m : depletions.advance(time)) {
+			m.deplete(time);
+		}
+	}
+
+	/**
+	 * Returns the energy levels of all nodes at the given time. The levels
+	 * are integrated up to the time (which should not be before the last
+	 * state change of any node).
+	 * @param time The time
+	 * @return The energy levels by node address (NaN for nodes without an
+	 * energy model). The array must not be modified.
+	 */
+	public static double[] getEnergyLevels(double time) {
+		for (EnergyModel m : models) {
+			if (m != null) {
+				m.integrate(time);
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * Changes the state of the node. The energy used in the previous state
+	 * is deducted from the energy level and the depletion of the node is
+	 * rescheduled using the energy usage rate of the new state.
+	 * @param state The new state; {@link #IDLE} or a combination of the
+	 * flags {@link #SCANNING}, {@link #TRANSMITTING} and {@link #RECEIVING}
+	 * @param time The current time
+	 */
+	public void setState(int state, double time) {
+		if (state == this.state) {
+			return;
+		}
+		integrate(time);
+		this.state = state;
+		scheduleDepletion();
+		publish();
+	}
+
+	/**
+	 * Returns the state of the node
+	 * @return The state of the node
+	 */
+	public int getState() {
+		return this.state;
+	}
+
+	/**
+	 * Returns the energy level of the node at the given time
+	 * @param time The time
+	 * @return The energy level
+	 */
+	public double getEnergy(double time) {
+		integrate(time);
+		return levels[this.address];
+	}
+
+	/**
+	 * Returns true if the node has run out of energy
+	 * @return true if the node has run out of energy
+	 */
+	public boolean isDepleted() {
+		return this.depleted;
+	}
+
+	/**
+	 * Deducts the energy used since the last integration from the energy
+	 * level (no energy is used during the warmup period)
+	 * @param time The time up to which the energy level is integrated
+	 */
+	private void integrate(double time) {
+		double from = Math.max(levelTimes[this.address], this.warmupTime);
+		if (time > from) {
+			levels[this.address] = Math.max(0, levels[this.address] -
+					this.rates[this.state] * (time - from));
+		}
+		if (time > levelTimes[this.address]) {
+			levelTimes[this.address] = time;
+		}
+	}
+
+	/**
+	 * (Re)schedules the depletion of the node based on the current energy
+	 * level and usage rate
+	 */
+	private void scheduleDepletion() {
+		if (this.depletion != null) {
+			depletions.cancel(this.depletion);
+			this.depletion = null;
+		}
+
+		double level = levels[this.address];
+		double rate = this.rates[this.state];
+		if (this.depleted) {
+			return;
+		}
+		if (level <= 0) {
+			this.depletion = depletions.schedule(this,
+					levelTimes[this.address]);
+		}
+		else if (rate > 0) {
+			double from = Math.max(levelTimes[this.address], this.warmupTime);
+			this.depletion = depletions.schedule(this, from + level / rate);
+		}
+	}
+
+	/**
+	 * Sets the energy level to zero and turns off the radio of the node
+	 * @param time The current time
+	 */
+	private void deplete(double time) {
+		this.depletion = null;
+		this.depleted = true;
+		levels[this.address] = 0;
+		levelTimes[this.address] = time;
+		publish();
+		/* turn radio off */
+		this.comBus.setDouble(NetworkInterface.RANGE_KEY, 0.0);
+	}
+
+	/**
+	 * Publishes the current energy level to the bus of the node
+	 */
+	private void publish() {
+		this.publishing = true;
+		this.comBus.setDouble(ENERGY_KEY, levels[this.address]);
+		this.publishing = false;
+	}
+
+	/**
+	 * Called by the combus if the energy value is changed by some other
+	 * module. Sets the energy level to the new value.
+	 * @param key The energy key
+	 * @param bus The bus of the node
+	 */
+	public void busValueChanged(BusKey<?> key, ModuleCommunicationBus bus) {
+		if (this.publishing) {
+			return;
+		}
+		integrate(SimClock.getTime());
+		levels[this.address] = bus.getDouble(ENERGY_KEY, 0);
+		this.depleted = false;
+		scheduleDepletion();
+	}
+
+	@Override
+	public String toString() {
+		return "EnergyModel of node " + this.address + " state " +
+			this.state + " level " + (this.address < 0 ? "n/a" :
+				levels[this.address]);
+	}
+}
@@ -5,7 +5,10 @@
 package routing;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import core.*;
 
@@ -15,12 +18,19 @@ import core.*;
  * and that message is then removed from all nodes that use this routing module.
  * This router also <B>ignores message size and all messages are delivered 
  * immediately</B>.</P><P>
+ * The routers holding each message are tracked in a global index, so a 
+ * delivered message is removed only from the routers that have it.</P><P>
  * <B>Note:</B> This router module also bypasses ActiveRouter.update()
  */
 public class EpidemicOracleRouter extends ActiveRouter {
 	
 	/** List of all routers in this node group */
 	private static List<EpidemicOracleRouter> allRouters;
+	/** Indexes (in allRouters) of the routers holding each message */
+	private static Map<String, BitSet> holders;
+	
+	/** Index of this router in the list of all routers */
+	private int index;
 
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
@@ -42,6 +52,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
+		this.index = allRouters.size();
 		allRouters.add(this);
 	}
 	
@@ -52,7 +63,8 @@ public class EpidemicOracleRouter extends ActiveRouter {
 			List<Message> newMessages = new ArrayList<Message>();
 			
 			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
+				/* skip messages this router has or has received */
+				if (!getSummaryVector().contains(m)) {
 					newMessages.add(m);
 				}
 			}
@@ -111,9 +123,16 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 
 		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
-				if (r != this && r != from.getRouter()) {
-					r.removeDeliveredMessage(id);
+			BitSet holding = holders.get(id);
+			if (holding != null) {
+				/* copy, removing the message changes the holders */
+				holding = (BitSet)holding.clone();
+				for (int i = holding.nextSetBit(0); i >= 0; 
+						i = holding.nextSetBit(i + 1)) {
+					EpidemicOracleRouter r = allRouters.get(i);
+					if (r != this && r != from.getRouter()) {
+						r.removeDeliveredMessage(id);
+					}
 				}
 			}
 		} else {
@@ -142,6 +161,30 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		return RCV_OK;
 	}
 	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		BitSet holding = holders.get(m.getId());
+		if (holding == null) {
+			holding = new BitSet();
+			holders.put(m.getId(), holding);
+		}
+		holding.set(this.index);
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			BitSet holding = holders.get(id);
+			holding.clear(this.index);
+			if (holding.isEmpty()) {
+				holders.remove(id);
+			}
+		}
+		return m;
+	}
+	
 	@Override
 	protected void transferDone(Connection con) {
 		Message m = con.getMessage();
@@ -175,6 +218,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	public static void reset() {
 		allRouters = new ArrayList<EpidemicOracleRouter>();
+		holders = new HashMap<String, BitSet>();
 	}
 
 }
\ No newline at end of file
@@ -35,6 +35,7 @@ public class EpidemicRouter extends ActiveRouter {
 	public void update() {
 		super.update();
 		if (isTransferring() || !canStartTransfer()) {
+			sleepUntilChange();
 			return; // transferring, don't try other connections yet
 		}
 		
@@ -43,8 +44,10 @@ public class EpidemicRouter extends ActiveRouter {
 			return; // started a transfer, don't try others (yet)
 		}
 		
-		// then try any/all message to any/all connection
-		this.tryAllMessagesToAllConnections();
+		// then try any/all message the peers lack to any/all connection
+		if (this.tryLackedMessagesToAllConnections(null) == null) {
+			sleepUntilChange(); // no takers, wait until something changes
+		}
 	}
 	
 	
@@ -9,11 +9,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import routing.maxprop.AckedMessages;
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import core.Connection;
@@ -53,13 +55,14 @@ public class MaxPropRouter extends ActiveRouter {
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	private AckedMessages ackedMessageIds;
+	/** IDs of ACKed messages that are in the buffer but couldn't be deleted
+	 * yet (they were being sent or were received after the ACK) */
+	private Set<String> pendingAckedIds;
+	/** version of the meeting probabilities. This should be increased 
+	 * always when any of the probabilities in allProbs change (a host is 
+	 * met) so that the cached costs are recalculated */
+	private int allProbsVersion;
 		
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -111,15 +114,14 @@ public class MaxPropRouter extends ActiveRouter {
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessageIds = new AckedMessages();
+		this.pendingAckedIds = new LinkedHashSet<String>();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 	}	
 
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
-			
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
 				 * other node too (so that the meeting probs are updated
@@ -131,11 +133,13 @@ public class MaxPropRouter extends ActiveRouter {
 				" with other routers of same type";
 				MaxPropRouter otherRouter = (MaxPropRouter)mRouter;
 				
-				/* exchange ACKed message data */
-				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
-				deleteAckedMessages();
-				otherRouter.deleteAckedMessages();
+				/* exchange ACKed message data (only the new ACKs) */
+				List<String> newAcks = this.ackedMessageIds.addAllFrom(
+						otherRouter.ackedMessageIds);
+				List<String> otherNewAcks = otherRouter.ackedMessageIds.
+					addAllFrom(this.ackedMessageIds);
+				deleteAckedMessages(newAcks);
+				otherRouter.deleteAckedMessages(otherNewAcks);
 				
 				/* update both meeting probabilities */
 				probs.updateMeetingProbFor(otherHost.getAddress());
@@ -145,9 +149,13 @@ public class MaxPropRouter extends ActiveRouter {
 				this.updateTransitiveProbs(otherRouter.allProbs);
 				otherRouter.updateTransitiveProbs(this.allProbs);
 				this.allProbs.put(otherHost.getAddress(),
-						otherRouter.probs.replicate());
+						otherRouter.probs.snapshot());
 				otherRouter.allProbs.put(getHost().getAddress(),
-						this.probs.replicate());
+						this.probs.snapshot());
+				
+				/* invalidate old cost estimates */
+				this.allProbsVersion++;
+				otherRouter.allProbsVersion++;
 			}
 		}
 		else {
@@ -159,7 +167,8 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Updates transitive probability values by replacing the current 
 	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
+	 * if the given sets have more recent updates. The sets are unmodifiable
+	 * snapshots so they are shared, not copied.
 	 * @param p Mapping of the values of the other host
 	 */
 	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
@@ -167,17 +176,27 @@ public class MaxPropRouter extends ActiveRouter {
 			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey()); 
 			if (myMps == null || 
 				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
+				this.allProbs.put(e.getKey(), e.getValue().snapshot());
 			}
 		}
 	}
 	
 	/**
-	 * Deletes the messages from the message buffer that are known to be ACKed
+	 * Deletes the messages from the message buffer that are known to be ACKed.
+	 * Only the newly ACKed messages and the ACKed messages that couldn't be
+	 * deleted earlier are checked.
+	 * @param newAcks IDs of the messages that were ACKed since the last call
 	 */
-	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
+	private void deleteAckedMessages(List<String> newAcks) {
+		this.pendingAckedIds.addAll(newAcks);
+		for (Iterator<String> i = this.pendingAckedIds.iterator(); 
+				i.hasNext();) {
+			String id = i.next();
+			if (!this.hasMessage(id)) {
+				i.remove(); // not in the buffer (anymore)
+			}
+			else if (!isSending(id)) {
+				i.remove();
 				this.deleteMessage(id, false);
 			}
 		}
@@ -185,12 +204,15 @@ public class MaxPropRouter extends ActiveRouter {
 	
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
 			this.ackedMessageIds.add(id);
 		}
+		else if (this.ackedMessageIds.contains(id) && this.hasMessage(id)) {
+			/* already ACKed message -> delete at the next contact */
+			this.pendingAckedIds.add(id);
+		}
 		return m;
 	}
 	
@@ -271,6 +293,7 @@ public class MaxPropRouter extends ActiveRouter {
 	public void update() {
 		super.update();
 		if (!canStartTransfer() ||isTransferring()) {
+			sleepUntilChange();
 			return; // nothing to transfer or is currently transferring 
 		}
 		
@@ -279,50 +302,32 @@ public class MaxPropRouter extends ActiveRouter {
 			return;
 		}
 		
-		tryOtherMessages();	
+		if (tryOtherMessages() == null) {
+			sleepUntilChange(); // no takers, wait until something changes
+		}
 	}
 	
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host, 
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. The costs from a host to all other hosts
+	 * are calculated at once and reused until the meeting probabilities
+	 * change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or 
 	 * Double.MAX_VALUE if such a path doesn't exist
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
-		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
-			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-			
-			/* calculate paths only to nodes we have messages to 
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
-		}
-		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		this.allProbs.put(getHost().getAddress(), this.probs);
+		return dijkstra.getCost(from.getAddress(), to.getAddress(), 
+				this.allProbsVersion);
 	}
 	
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
 	 * hop counts and their delivery probability
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * @return The return value of {@link #tryMessagesForConnected(Collection)}
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
 		List<Tuple<Message, Connection>> messages = 
@@ -10,10 +10,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import routing.maxprop.AckedMessages;
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import core.Connection;
@@ -51,7 +54,10 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
+	private AckedMessages ackedMessageIds;
+	/** IDs of ACKed messages that are in the buffer but couldn't be deleted
+	 * yet (they were being sent or were received after the ACK) */
+	private Set<String> pendingAckedIds;
 	/** mapping of the current costs for all messages. This should be set to
 	 * null always when the costs should be updated (a host is met or a new
 	 * message is received) */
@@ -121,7 +127,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				MeetingProbabilitySet.INFINITE_SET_SIZE, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessageIds = new AckedMessages();
+		this.pendingAckedIds = new LinkedHashSet<String>();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		initMeetings();
 	}	
@@ -163,11 +170,13 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 					otherRouter.updateParam();
 				}
 				
-				/* exchange ACKed message data */
-				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
-				deleteAckedMessages();
-				otherRouter.deleteAckedMessages();
+				/* exchange ACKed message data (only the new ACKs) */
+				List<String> newAcks = this.ackedMessageIds.addAllFrom(
+						otherRouter.ackedMessageIds);
+				List<String> otherNewAcks = otherRouter.ackedMessageIds.
+					addAllFrom(this.ackedMessageIds);
+				deleteAckedMessages(newAcks);
+				otherRouter.deleteAckedMessages(otherNewAcks);
 				
 				/* update both meeting probabilities */
 				probs.updateMeetingProbFor(otherHost.getAddress());
@@ -177,9 +186,9 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				this.updateTransitiveProbs(otherRouter.allProbs);
 				otherRouter.updateTransitiveProbs(this.allProbs);
 				this.allProbs.put(otherHost.getAddress(),
-						otherRouter.probs.replicate());
+						otherRouter.probs.snapshot());
 				otherRouter.allProbs.put(getHost().getAddress(),
-						this.probs.replicate());
+						this.probs.snapshot());
 			}
 		}
 		else {
@@ -191,7 +200,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/**
 	 * Updates transitive probability values by replacing the current 
 	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
+	 * if the given sets have more recent updates. The sets are unmodifiable
+	 * snapshots so they are shared, not copied.
 	 * @param p Mapping of the values of the other host
 	 */
 	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
@@ -199,7 +209,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			MeetingProbabilitySet myMps = this.allProbs.get(e.getKey()); 
 			if (myMps == null || 
 				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
-				this.allProbs.put(e.getKey(), e.getValue().replicate());
+				this.allProbs.put(e.getKey(), e.getValue().snapshot());
 			}
 		}
 	}
@@ -317,11 +327,21 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	}
 
 	/**
-	 * Deletes the messages from the message buffer that are known to be ACKed
+	 * Deletes the messages from the message buffer that are known to be ACKed.
+	 * Only the newly ACKed messages and the ACKed messages that couldn't be
+	 * deleted earlier are checked.
+	 * @param newAcks IDs of the messages that were ACKed since the last call
 	 */
-	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
+	private void deleteAckedMessages(List<String> newAcks) {
+		this.pendingAckedIds.addAll(newAcks);
+		for (Iterator<String> i = this.pendingAckedIds.iterator(); 
+				i.hasNext();) {
+			String id = i.next();
+			if (!this.hasMessage(id)) {
+				i.remove(); // not in the buffer (anymore)
+			}
+			else if (!isSending(id)) {
+				i.remove();
 				this.deleteMessage(id, false);
 			}
 		}
@@ -335,6 +355,10 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		if (isDeliveredMessage(m)) {
 			this.ackedMessageIds.add(id);
 		}
+		else if (this.ackedMessageIds.contains(id) && this.hasMessage(id)) {
+			/* already ACKed message -> delete at the next contact */
+			this.pendingAckedIds.add(id);
+		}
 		return m;
 	}
 	
@@ -465,7 +489,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
 	 * hop counts and their delivery probability
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * @return The return value of {@link #tryMessagesForConnected(Collection)}
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
 		List<Tuple<Message, Connection>> messages = 
@@ -4,13 +4,15 @@
  */
 package routing;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 
 import core.Application;
 import core.Connection;
@@ -21,7 +23,9 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import core.TimerWheel;
 import core.Tuple;
+import core.World;
 
 /**
  * Superclass for message routers.
@@ -41,9 +45,12 @@ public abstract class MessageRouter {
 	 * one message can be sent directly to the final recipient). 
 	 * Valid values are<BR>
 	 * <UL>
-	 * <LI/> 1 : random (message order is randomized every time; default option)
+	 * <LI/> 1 : random (new messages are put to a random place in the queue;
+	 * default option)
 	 * <LI/> 2 : FIFO (most recently received messages are sent last)
 	 * </UL>
+	 * The queue is kept up to date as messages come and go, see 
+	 * {@link SendQueue}.
 	 */ 
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
 	
@@ -74,8 +81,14 @@ public abstract class MessageRouter {
 	private HashMap<String, Message> incomingMessages;
 	/** The messages this router is carrying */
 	private HashMap<String, Message> messages; 
+	/** The messages this router is carrying, indexed by final recipient */
+	private HashMap<DTNHost, Map<String, Message>> messagesByDestination;
+	/** The messages this router is carrying in the sending order */
+	private SendQueue sendQueue;
 	/** The messages this router has received as the final recipient */
 	protected HashMap<String, Message> deliveredMessages;
+	/** IDs of the buffered and delivered messages */
+	private SummaryVector summaryVector;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -84,9 +97,34 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** Can this router skip updates while it's idle 
+	 * (see {@link World#SKIP_IDLE_ROUTERS_S}) */
+	private boolean skipIdle;
+	/** Is this router waiting to be updated (i.e., not sleeping) */
+	private boolean awake;
+	/** Sim time when a sleeping router is woken up at the latest */
+	private double wakeUpTime;
+	/** Version of the router's state (see {@link #getStateVersion()}) */
+	private int stateVersion;
+
+	/** Tick length of the application timer wheel (seconds) */
+	private static final double APP_TIMER_TICK = 1.0;
+	/** Empty application array */
+	private static final Application[] NO_APPS = new Application[0];
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>>	applications = null;
+	/** Applications that handle the messages of each application ID, in
+	 * the handling order (cached; cleared when applications are added) */
+	private HashMap<String, Application[]> appDispatch;
+	/** Applications that are updated every cycle (or null if not cached) */
+	private Application[] polledApps;
+	/** Timers of the applications that are not updated every cycle */
+	private TimerWheel<Application> appTimers;
+	/** The scheduled timers of each application */
+	private HashMap<Application, TimerWheel.Timer<Application>> appTimersByApp;
+	/** Lower bound for the time of the next application timer */
+	private double nextAppTimer;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -116,6 +154,13 @@ public abstract class MessageRouter {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
 		
+		Settings optSettings = new Settings(World.SETTINGS_NS);
+		if (optSettings.contains(World.SKIP_IDLE_ROUTERS_S)) {
+			this.skipIdle = optSettings.getBoolean(World.SKIP_IDLE_ROUTERS_S);
+		}
+		else {
+			this.skipIdle = World.DEF_SKIP_IDLE_ROUTERS;
+		}
 	}
 	
 	/**
@@ -128,9 +173,27 @@ public abstract class MessageRouter {
 	public void initialize(DTNHost host, List<MessageListener> mListeners) {
 		this.incomingMessages = new HashMap<String, Message>();
 		this.messages = new HashMap<String, Message>();
+		this.messagesByDestination = 
+			new HashMap<DTNHost, Map<String, Message>>();
+		this.sendQueue = new SendQueue(host, this.sendQueueMode);
 		this.deliveredMessages = new HashMap<String, Message>();
+		this.summaryVector = new SummaryVector();
 		this.mListeners = mListeners;
 		this.host = host;
+		this.awake = true;
+		
+		this.appTimers = new TimerWheel<Application>(APP_TIMER_TICK);
+		this.appTimersByApp = 
+			new HashMap<Application, TimerWheel.Timer<Application>>();
+		this.nextAppTimer = Double.POSITIVE_INFINITY;
+		for (Collection<Application> apps : this.applications.values()) {
+			for (Application app : apps) {
+				if (!app.isPolled()) {
+					/* first update lets the app set its timer */
+					setApplicationTimer(app, SimClock.getTime());
+				}
+			}
+		}
 	}
 	
 	/**
@@ -141,6 +204,7 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.skipIdle = r.skipIdle;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -156,13 +220,91 @@ public abstract class MessageRouter {
 	 * interval to update the status of transfer(s). 
 	 */
 	public void update(){
-		for (Collection<Application> apps : this.applications.values()) {
-			for (Application app : apps) {
+		this.awake = true; // stays awake until the router sleeps again
+		
+		for (Application app : getPolledApplications()) {
+			app.update(this.host);
+		}
+		
+		double now = SimClock.getTime();
+		if (now >= this.nextAppTimer) {
+			for (Application app : this.appTimers.advance(now)) {
+				this.appTimersByApp.remove(app);
 				app.update(this.host);
 			}
+			this.nextAppTimer = this.appTimers.getNextTime();
 		}
 	}
 	
+	/**
+	 * Returns true if this router should be updated on this update round.
+	 * Routers are always awake unless they have been put to sleep with
+	 * {@link #sleep(double)} (and idle router skipping is enabled). Routers
+	 * with applications that are updated every cycle are always awake since
+	 * the applications are updated through the router. Routers are also
+	 * woken up when an application timer is due.
+	 * @return True if the router should be updated, false if not
+	 */
+	public boolean isAwake() {
+		double now = SimClock.getTime();
+		return this.awake || now >= this.wakeUpTime ||
+			now >= this.nextAppTimer || getPolledApplications().length > 0;
+	}
+	
+	/**
+	 * Returns true if this router can be put to sleep, i.e., change-driven
+	 * scheduling is enabled with the {@link World#SKIP_IDLE_ROUTERS_S} 
+	 * setting.
+	 * @return True if idle routers are not updated
+	 */
+	public boolean isSkippingIdle() {
+		return this.skipIdle;
+	}
+	
+	/**
+	 * Wakes up the router so that it is updated on the next update round.
+	 * Called when something changes that could give the router something
+	 * to do (e.g., its buffer or connections change or a transfer of this
+	 * host or a peer ends).
+	 */
+	public void wakeUp() {
+		this.awake = true;
+	}
+	
+	/**
+	 * Declares the router idle: the router is not updated until it is woken
+	 * up (see {@link #wakeUp()}) or the given simulation time is reached. 
+	 * Does nothing if idle router skipping is not enabled.
+	 * @param wakeUpTime The time when the router should be updated at the
+	 * latest (e.g., next time a timer-driven check is due)
+	 */
+	protected void sleep(double wakeUpTime) {
+		if (!this.skipIdle) {
+			return;
+		}
+		this.awake = false;
+		this.wakeUpTime = wakeUpTime;
+	}
+	
+	/**
+	 * Returns the version number of this router's state. The version 
+	 * changes every time the message buffer, the connections or the 
+	 * transfers of the host change; messages that the router rejected 
+	 * while its state had the same version would be rejected again.
+	 * @return The state version
+	 */
+	public int getStateVersion() {
+		return this.stateVersion;
+	}
+	
+	/**
+	 * Informs the router that its state has changed (increments the 
+	 * state version, see {@link #getStateVersion()}).
+	 */
+	public void stateChanged() {
+		this.stateVersion++;
+	}
+	
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -199,6 +341,27 @@ public abstract class MessageRouter {
 		return (this.deliveredMessages.containsKey(m.getId()));
 	}
 	
+	/**
+	 * Adds a message to the messages received by this host as the final
+	 * recipient
+	 * @param id ID of the message
+	 * @param m The delivered message
+	 */
+	protected void addToDeliveredMessages(String id, Message m) {
+		this.deliveredMessages.put(id, m);
+		this.summaryVector.add(id);
+	}
+	
+	/**
+	 * Returns the summary vector of this router, i.e., the IDs of the 
+	 * messages this router is carrying or has received as the final 
+	 * recipient. A peer would reject any of these messages as old. 
+	 * @return The summary vector
+	 */
+	public SummaryVector getSummaryVector() {
+		return this.summaryVector;
+	}
+	
 	/**
 	 * Returns a reference to the messages of this router in collection.
 	 * <b>Note:</b> If there's a chance that some message(s) from the collection
@@ -211,6 +374,32 @@ public abstract class MessageRouter {
 		return this.messages.values();
 	}
 	
+	/**
+	 * Returns the messages this router is carrying whose final recipient
+	 * is the given host. The returned collection is a read-only view of the
+	 * destination index and it must be copied if the buffer could be modified
+	 * while iterating through it.
+	 * @param to The final recipient of the messages
+	 * @return The messages destined to the host (possibly an empty collection)
+	 */
+	protected Collection<Message> getMessagesFor(DTNHost to) {
+		Map<String, Message> msgs = this.messagesByDestination.get(to);
+		if (msgs == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableCollection(msgs.values());
+	}
+	
+	/**
+	 * Returns the messages this router is carrying in the order defined 
+	 * by the sending queue mode. Messages can be deleted from the buffer 
+	 * while iterating through the queue, but not added.
+	 * @return The sending queue
+	 */
+	protected SendQueue getSendQueue() {
+		return this.sendQueue;
+	}
+	
 	/**
 	 * Returns the number of messages this router has
 	 * @return How many messages this router has
@@ -325,7 +514,7 @@ public abstract class MessageRouter {
 		
 		// Pass the message to the application (if any) and get outgoing message
 		Message outgoing = incoming;
-		for (Application app : getApplications(incoming.getAppID())) {
+		for (Application app : getApplicationArray(incoming.getAppID())) {
 			// Note that the order of applications is significant
 			// since the next one gets the output of the previous.
 			outgoing = app.handle(outgoing, this.host);
@@ -345,7 +534,7 @@ public abstract class MessageRouter {
 			addToMessages(aMessage, false);
 		}
 		else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			addToDeliveredMessages(id, aMessage);
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -395,7 +584,21 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getId(), m);
+		if (old != null) {
+			removeFromDestinationIndex(old);
+		}
+		
+		Map<String, Message> msgs = this.messagesByDestination.get(m.getTo());
+		if (msgs == null) {
+			/* insertion ordered to keep the iteration order deterministic */
+			msgs = new LinkedHashMap<String, Message>();
+			this.messagesByDestination.put(m.getTo(), msgs);
+		}
+		msgs.put(m.getId(), m);
+		this.sendQueue.add(m);
+		this.summaryVector.add(m.getId());
+		this.host.routingStateChanged();
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -411,9 +614,35 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			removeFromDestinationIndex(m);
+			this.sendQueue.remove(id);
+			if (!this.deliveredMessages.containsKey(id)) {
+				this.summaryVector.remove(id);
+			}
+			else {
+				this.summaryVector.invalidate();
+			}
+			this.host.routingStateChanged();
+		}
 		return m;
 	}
 	
+	/**
+	 * Removes a message from the destination index
+	 * @param m The message to remove
+	 */
+	private void removeFromDestinationIndex(Message m) {
+		Map<String, Message> msgs = this.messagesByDestination.get(m.getTo());
+		if (msgs == null) {
+			return;
+		}
+		msgs.remove(m.getId());
+		if (msgs.isEmpty()) {
+			this.messagesByDestination.remove(m.getTo());
+		}
+	}
+	
 	/**
 	 * This method should be called (on the receiving host) when a message 
 	 * transfer was aborted.
@@ -465,78 +694,50 @@ public abstract class MessageRouter {
 	}
 	
 	/**
-	 * Sorts/shuffles the given list according to the current sending queue 
-	 * mode. The list can contain either Message or Tuple<Message, Connection> 
-	 * objects. Other objects cause error. 
-	 * @param list The list to sort or shuffle
-	 * @return The sorted/shuffled list
+	 * Sorts the given list to the order of the sending queue (see 
+	 * {@link #getSendQueue()}). The list can contain either Message or 
+	 * Tuple<Message, Connection> objects. Other objects cause error. 
+	 * @param list The list to sort
+	 * @return The sorted list
 	 */
 	@SuppressWarnings(value = "unchecked") /* ugly way to make this generic */
 	protected List sortByQueueMode(List list) {
-		switch (sendQueueMode) {
-		case Q_MODE_RANDOM:
-			Collections.shuffle(list, new Random(SimClock.getIntTime()));
-			break;
-		case Q_MODE_FIFO:
+		if (list.size() <= 1) {
+			return list; // nothing to sort
+		}
+		
+		Object o = list.get(0);
+		if (o instanceof Tuple) {
 			Collections.sort(list, 
-					new Comparator() {
-				/** Compares two tuples by their messages' receiving time */
-				public int compare(Object o1, Object o2) {
-					double diff;
-					Message m1, m2;
-					
-					if (o1 instanceof Tuple) {
-						m1 = ((Tuple<Message, Connection>)o1).getKey();
-						m2 = ((Tuple<Message, Connection>)o2).getKey();
-					}
-					else if (o1 instanceof Message) {
-						m1 = (Message)o1;
-						m2 = (Message)o2;
-					}
-					else {
-						throw new SimError("Invalid type of objects in " + 
-								"the list");
-					}
-					
-					diff = m1.getReceiveTime() - m2.getReceiveTime();
-					if (diff == 0) {
-						return 0;
-					}
-					return (diff < 0 ? -1 : 1);
+					new Comparator<Tuple<Message, Connection>>() {
+				/** Compares two tuples by their messages' queue order */
+				public int compare(Tuple<Message, Connection> t1, 
+						Tuple<Message, Connection> t2) {
+					return sendQueue.compare(t1.getKey(), t2.getKey());
 				}
 			});
-			break;
-		/* add more queue modes here */
-		default:
-			throw new SimError("Unknown queue mode " + sendQueueMode);
+		}
+		else if (o instanceof Message) {
+			Collections.sort(list, this.sendQueue);
+		}
+		else {
+			throw new SimError("Invalid type of objects in the list");
 		}
 		
 		return list;
 	}
-
+	
 	/**
 	 * Gives the order of the two given messages as defined by the current
-	 * queue mode 
+	 * queue mode (i.e., their order in the sending queue)
 	 * @param m1 The first message
 	 * @param m2 The second message
-	 * @return -1 if the first message should come first, 1 if the second 
-	 *          message should come first, or 0 if the ordering isn't defined
+	 * @return negative value if the first message should come first, 
+	 * positive value if the second message should come first, or 0 if the 
+	 * ordering isn't defined
 	 */
 	protected int compareByQueueMode(Message m1, Message m2) {
-		switch (sendQueueMode) {
-		case Q_MODE_RANDOM:
-			/* return randomly (enough) but consistently -1, 0 or 1 */
-			return (m1.hashCode()/2 + m2.hashCode()/2) % 3 - 1; 
-		case Q_MODE_FIFO:
-			double diff = m1.getReceiveTime() - m2.getReceiveTime();
-			if (diff == 0) {
-				return 0;
-			}
-			return (diff < 0 ? -1 : 1);
-		/* add more queue modes here */
-		default:
-			throw new SimError("Unknown queue mode " + sendQueueMode);
-		}
+		return this.sendQueue.compare(m1, m2);
 	}
 	
 	/**
@@ -585,6 +786,12 @@ public abstract class MessageRouter {
 					new LinkedList<Application>());
 		}
 		this.applications.get(app.getAppID()).add(app);
+		
+		this.appDispatch = null;
+		this.polledApps = null;
+		if (this.appTimers != null && !app.isPolled()) {
+			setApplicationTimer(app, SimClock.getTime());
+		}
 	}
 	
 	/** 
@@ -592,24 +799,90 @@ public abstract class MessageRouter {
 	 * application ID.
 	 * 
 	 * @param ID	The application ID or <code>null</code> for all apps.
-	 * @return		A list of all applications that want to receive the message.
+	 * @return		An unmodifiable list of all applications that want to 
+	 * receive the message.
 	 */
 	public Collection<Application> getApplications(String ID) {
-		LinkedList<Application>	apps = new LinkedList<Application>();
-		// Applications that match
-		Collection<Application> tmp = this.applications.get(ID);
-		if (tmp != null) {
-			apps.addAll(tmp);
-		}
-		// Applications that want to look at all messages
-		if (ID != null) {
-			tmp = this.applications.get(null);
+		return Collections.unmodifiableList(
+				Arrays.asList(getApplicationArray(ID)));
+	}
+	
+	/** 
+	 * Returns all the applications that want to receive messages for the given
+	 * application ID in the order they should handle the messages. The
+	 * arrays are cached per application ID.
+	 * 
+	 * @param ID	The application ID or <code>null</code> for all apps.
+	 * @return		An array of all applications that want to receive the 
+	 * message. The array must not be modified.
+	 */
+	protected Application[] getApplicationArray(String ID) {
+		if (this.applications.isEmpty()) {
+			return NO_APPS;
+		}
+		if (this.appDispatch == null) {
+			this.appDispatch = new HashMap<String, Application[]>();
+		}
+		
+		Application[] apps = this.appDispatch.get(ID);
+		if (apps == null) {
+			LinkedList<Application> list = new LinkedList<Application>();
+			// Applications that match
+			Collection<Application> tmp = this.applications.get(ID);
 			if (tmp != null) {
-				apps.addAll(tmp);
+				list.addAll(tmp);
+			}
+			// Applications that want to look at all messages
+			if (ID != null) {
+				tmp = this.applications.get(null);
+				if (tmp != null) {
+					list.addAll(tmp);
+				}
 			}
+			apps = list.isEmpty() ? NO_APPS : 
+				list.toArray(new Application[list.size()]);
+			this.appDispatch.put(ID, apps);
 		}
 		return apps;
 	}
+	
+	/**
+	 * Returns the applications that are updated every cycle
+	 * (see {@link Application#isPolled()})
+	 * @return The applications (cached). The array must not be modified.
+	 */
+	private Application[] getPolledApplications() {
+		if (this.polledApps == null) {
+			List<Application> list = new LinkedList<Application>();
+			for (Collection<Application> apps : this.applications.values()) {
+				for (Application app : apps) {
+					if (app.isPolled()) {
+						list.add(app);
+					}
+				}
+			}
+			this.polledApps = list.isEmpty() ? NO_APPS : 
+				list.toArray(new Application[list.size()]);
+		}
+		return this.polledApps;
+	}
+	
+	/**
+	 * Sets the timer of an application of this router: the application is
+	 * updated at the first update at or after the given time. Replaces the
+	 * previous timer of the application, if any.
+	 * @param app The application
+	 * @param time The time when the application should be updated
+	 * @see Application#setTimer(DTNHost, double)
+	 */
+	public void setApplicationTimer(Application app, double time) {
+		TimerWheel.Timer<Application> old = this.appTimersByApp.remove(app);
+		if (old != null) {
+			this.appTimers.cancel(old);
+		}
+		this.appTimersByApp.put(app, this.appTimers.schedule(app, time));
+		this.nextAppTimer = Math.min(this.nextAppTimer, time);
+	}
 
 	/**
 	 * Creates a replicate of this router. The replicate has the same
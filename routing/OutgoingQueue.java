@@ -0,0 +1,232 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.AbstractCollection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import core.Connection;
+import core.Message;
+import core.Tuple;
+
+/**
+ * Queue of message-connection tuples (messages waiting to be sent through
+ * connections). The tuples are kept in the order they were added and are
+ * also indexed by connection and by message ID, so all the tuples of a
+ * connection or a message can be removed without going through the whole
+ * queue. Tuples can be removed while the queue is being iterated.
+ */
+public class OutgoingQueue extends AbstractCollection<Tuple<Message, Connection>> {
+	/** First entry of the queue */
+	private Entry head;
+	/** Last entry of the queue */
+	private Entry tail;
+	/** Number of entries in the queue */
+	private int size;
+	/** Entries of the connections (in queue order) */
+	private Map<Connection, LinkedHashSet<Entry>> byConnection;
+	/** Entries of the messages mapped by message ID (in queue order) */
+	private Map<String, LinkedHashSet<Entry>> byMessage;
+
+	/**
+	 * Creates a new empty queue
+	 */
+	public OutgoingQueue() {
+		this.byConnection = new HashMap<Connection, LinkedHashSet<Entry>>();
+		this.byMessage = new HashMap<String, LinkedHashSet<Entry>>();
+	}
+
+	/**
+	 * Adds a new message-connection tuple to the end of the queue
+	 * @param m The message
+	 * @param con The connection
+	 */
+	public void add(Message m, Connection con) {
+		Entry e = new Entry(new Tuple<Message, Connection>(m, con));
+
+		if (this.tail == null) {
+			this.head = e;
+		}
+		else {
+			this.tail.next = e;
+			e.prev = this.tail;
+		}
+		this.tail = e;
+		this.size++;
+
+		getEntries(this.byConnection, con).add(e);
+		getEntries(this.byMessage, m.getId()).add(e);
+	}
+
+	/**
+	 * Returns the entry set of a key (creates a new set if needed)
+	 * @param map The index map
+	 * @param key The key
+	 * @return The entries of the key
+	 */
+	private static <K> LinkedHashSet<Entry> getEntries(
+			Map<K, LinkedHashSet<Entry>> map, K key) {
+		LinkedHashSet<Entry> entries = map.get(key);
+		if (entries == null) {
+			entries = new LinkedHashSet<Entry>();
+			map.put(key, entries);
+		}
+		return entries;
+	}
+
+	@Override
+	public boolean add(Tuple<Message, Connection> t) {
+		add(t.getKey(), t.getValue());
+		return true;
+	}
+
+	/**
+	 * Removes the first tuple with the given message ID and connection
+	 * @param id ID of the message
+	 * @param con The connection
+	 * @return True if a tuple was removed, false if no such tuple was found
+	 */
+	public boolean remove(String id, Connection con) {
+		LinkedHashSet<Entry> entries = this.byMessage.get(id);
+		if (entries == null) {
+			return false;
+		}
+
+		for (Entry e : entries) {
+			if (e.tuple.getValue() == con) {
+				unlink(e);
+				removeFrom(this.byConnection, con, e);
+				removeFrom(this.byMessage, id, e);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all the tuples of a message
+	 * @param id ID of the message
+	 */
+	public void removeMessage(String id) {
+		LinkedHashSet<Entry> entries = this.byMessage.remove(id);
+		if (entries == null) {
+			return;
+		}
+
+		for (Entry e : entries) {
+			unlink(e);
+			removeFrom(this.byConnection, e.tuple.getValue(), e);
+		}
+	}
+
+	/**
+	 * Removes all the tuples of a connection
+	 * @param con The connection
+	 */
+	public void removeConnection(Connection con) {
+		LinkedHashSet<Entry> entries = this.byConnection.remove(con);
+		if (entries == null) {
+			return;
+		}
+
+		for (Entry e : entries) {
+			unlink(e);
+			removeFrom(this.byMessage, e.tuple.getKey().getId(), e);
+		}
+	}
+
+	/**
+	 * Removes an entry from the entry set of a key
+	 * @param map The index map
+	 * @param key The key
+	 * @param e The entry to remove
+	 */
+	private static <K> void removeFrom(Map<K, LinkedHashSet<Entry>> map,
+			K key, Entry e) {
+		LinkedHashSet<Entry> entries = map.get(key);
+		entries.remove(e);
+		if (entries.isEmpty()) {
+			map.remove(key);
+		}
+	}
+
+	/**
+	 * Unlinks an entry from the queue. The removed entry keeps its link to
+	 * the next entry so that iterators positioned at it can continue.
+	 * @param e The entry to unlink
+	 */
+	private void unlink(Entry e) {
+		if (e.prev == null) {
+			this.head = e.next;
+		}
+		else {
+			e.prev.next = e.next;
+		}
+		if (e.next == null) {
+			this.tail = e.prev;
+		}
+		else {
+			e.next.prev = e.prev;
+		}
+		e.removed = true;
+		this.size--;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns an iterator over the tuples in the queue order. Tuples can be
+	 * removed from the queue (using the methods of the queue) while
+	 * iterating.
+	 * @return An iterator over the tuples
+	 */
+	@Override
+	public Iterator<Tuple<Message, Connection>> iterator() {
+		return new Iterator<Tuple<Message, Connection>>() {
+			private Entry next = head;
+
+			public boolean hasNext() {
+				while (next != null && next.removed) {
+					next = next.next; // skip entries removed while iterating
+				}
+				return next != null;
+			}
+
+			public Tuple<Message, Connection> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Entry e = next;
+				next = e.next;
+				return e.tuple;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Entry of the queue
+	 */
+	private static class Entry {
+		private Tuple<Message, Connection> tuple;
+		private Entry prev;
+		private Entry next;
+		private boolean removed;
+
+		private Entry(Tuple<Message, Connection> tuple) {
+			this.tuple = tuple;
+		}
+	}
+}
@@ -8,15 +8,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import routing.prophet.DeliveryPredictabilities;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
-import core.SimClock;
+import core.SettingsError;
 import core.Tuple;
 
 /**
@@ -45,16 +44,33 @@ public class ProphetRouter extends ActiveRouter {
 	 * Default value for setting is {@link #DEFAULT_BETA}.
 	 */
 	public static final String BETA_S = "beta";
+	
+	/**
+	 * Maximum number of delivery predictabilities -setting id ({@value}).
+	 * If set, each node keeps only this many of its largest delivery 
+	 * predictabilities, which bounds the cost of the transitive updates 
+	 * at the expense of accuracy. Default value is 0 (unlimited).
+	 */
+	public static final String MAX_PREDS_S = "maxPredictabilities";
+	
+	/**
+	 * Minimum delivery predictability -setting id ({@value}).
+	 * Delivery predictabilities that have aged below this value are 
+	 * removed. Must be less than 1. Default value is 0 (no minimum).
+	 */
+	public static final String MIN_PRED_S = "minPredictability";
 
 	/** the value of nrof seconds in time unit -setting */
 	private int secondsInTimeUnit;
 	/** value of beta setting */
 	private double beta;
+	/** value of max predictabilities setting */
+	private int maxPreds;
+	/** value of min predictability setting */
+	private double minPred;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	private DeliveryPredictabilities preds;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -71,6 +87,23 @@ public class ProphetRouter extends ActiveRouter {
 		else {
 			beta = DEFAULT_BETA;
 		}
+		
+		if (prophetSettings.contains(MAX_PREDS_S)) {
+			maxPreds = prophetSettings.getInt(MAX_PREDS_S);
+			if (maxPreds < 0) {
+				throw new SettingsError("Invalid value for " + 
+						prophetSettings.getFullPropertyName(MAX_PREDS_S) + 
+						": " + maxPreds);
+			}
+		}
+		if (prophetSettings.contains(MIN_PRED_S)) {
+			minPred = prophetSettings.getDouble(MIN_PRED_S);
+			if (minPred < 0 || minPred >= 1) {
+				throw new SettingsError("Invalid value for " + 
+						prophetSettings.getFullPropertyName(MIN_PRED_S) + 
+						": " + minPred);
+			}
+		}
 
 		initPreds();
 	}
@@ -83,14 +116,17 @@ public class ProphetRouter extends ActiveRouter {
 		super(r);
 		this.secondsInTimeUnit = r.secondsInTimeUnit;
 		this.beta = r.beta;
+		this.maxPreds = r.maxPreds;
+		this.minPred = r.minPred;
 		initPreds();
 	}
 	
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(GAMMA, secondsInTimeUnit, 
+				maxPreds, minPred);
 	}
 
 	@Override
@@ -108,9 +144,7 @@ public class ProphetRouter extends ActiveRouter {
 	 * @param host The host we just met
 	 */
 	private void updateDeliveryPredFor(DTNHost host) {
-		double oldValue = getPredFor(host);
-		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.updateEncounter(host, P_INIT);
 	}
 	
 	/**
@@ -120,13 +154,7 @@ public class ProphetRouter extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host); // the table ages the value before getting
 	}
 	
 	/**
@@ -140,56 +168,15 @@ public class ProphetRouter extends ActiveRouter {
 		assert otherRouter instanceof ProphetRouter : "PRoPHET only works " + 
 			" with other routers of same type";
 		
-		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-			((ProphetRouter)otherRouter).getDeliveryPreds();
-		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-			
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
-	}
-
-	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
-		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-	
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
+		preds.updateTransitive(getHost(), host, 
+				((ProphetRouter)otherRouter).preds, beta);
 	}
 	
 	@Override
 	public void update() {
 		super.update();
 		if (!canStartTransfer() ||isTransferring()) {
+			sleepUntilChange();
 			return; // nothing to transfer or is currently transferring 
 		}
 		
@@ -198,19 +185,18 @@ public class ProphetRouter extends ActiveRouter {
 			return;
 		}
 		
-		tryOtherMessages();		
+		if (tryOtherMessages() == null) {
+			sleepUntilChange(); // no takers, wait until something changes
+		}
 	}
 	
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
 	 * their delivery probability
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * @return The return value of {@link #tryMessagesForConnected(Collection)}
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages = 
-			new ArrayList<Tuple<Message, Connection>>(); 
-	
-		Collection<Message> msgCollection = getMessageCollection();
+		List<PredTuple> messages = new ArrayList<PredTuple>(); 
 		
 		/* for all connected hosts collect all messages that have a higher
 		   probability of delivery by the other host */
@@ -223,13 +209,12 @@ public class ProphetRouter extends ActiveRouter {
 				continue; // skip hosts that are transferring
 			}
 			
-			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
-					continue; // skip messages that the other one has
-				}
-				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
+			/* skip messages that the other one has already seen */
+			for (Message m : getMessagesPeerLacks(con)) {
+				double othPred = othRouter.getPredFor(m.getTo());
+				if (othPred > getPredFor(m.getTo())) {
 					// the other node has higher probability of delivery
-					messages.add(new Tuple<Message, Connection>(m,con));
+					messages.add(new PredTuple(m, con, othPred));
 				}
 			}			
 		}
@@ -240,7 +225,28 @@ public class ProphetRouter extends ActiveRouter {
 		
 		// sort the message-connection tuples
 		Collections.sort(messages, new TupleComparator());
-		return tryMessagesForConnected(messages);	// try to send messages
+		
+		List<Tuple<Message, Connection>> tuples = 
+			new ArrayList<Tuple<Message, Connection>>(messages.size());
+		for (PredTuple t : messages) {
+			tuples.add(t.tuple);
+		}
+		return tryMessagesForConnected(tuples);	// try to send messages
+	}
+	
+	/**
+	 * Message-Connection-Tuple with the delivery probability of the host
+	 * on the other side of the connection. The probability is looked up
+	 * once before sorting so the comparator doesn't need to do it.
+	 */
+	private static class PredTuple {
+		private Tuple<Message, Connection> tuple;
+		private double pred;
+		
+		private PredTuple(Message m, Connection con, double pred) {
+			this.tuple = new Tuple<Message, Connection>(m, con);
+			this.pred = pred;
+		}
 	}
 	
 	/**
@@ -248,26 +254,16 @@ public class ProphetRouter extends ActiveRouter {
 	 * their delivery probability by the host on the other side of the 
 	 * connection (GRTRMax)
 	 */
-	private class TupleComparator implements Comparator 
-		<Tuple<Message, Connection>> {
-
-		public int compare(Tuple<Message, Connection> tuple1,
-				Tuple<Message, Connection> tuple2) {
-			// delivery probability of tuple1's message with tuple1's connection
-			double p1 = ((ProphetRouter)tuple1.getValue().
-					getOtherNode(getHost()).getRouter()).getPredFor(
-					tuple1.getKey().getTo());
-			// -"- tuple2...
-			double p2 = ((ProphetRouter)tuple2.getValue().
-					getOtherNode(getHost()).getRouter()).getPredFor(
-					tuple2.getKey().getTo());
+	private class TupleComparator implements Comparator<PredTuple> {
 
+		public int compare(PredTuple tuple1, PredTuple tuple2) {
 			// bigger probability should come first
-			if (p2-p1 == 0) {
+			if (tuple2.pred - tuple1.pred == 0) {
 				/* equal probabilities -> let queue mode decide */
-				return compareByQueueMode(tuple1.getKey(), tuple2.getKey());
+				return compareByQueueMode(tuple1.tuple.getKey(), 
+						tuple2.tuple.getKey());
 			}
-			else if (p2-p1 < 0) {
+			else if (tuple2.pred - tuple1.pred < 0) {
 				return -1;
 			}
 			else {
@@ -278,14 +274,13 @@ public class ProphetRouter extends ActiveRouter {
 	
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i=0, n=preds.size(); i<n; i++) {
+			DTNHost host = preds.getHost(i);
+			double value = preds.get(host);
 			
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import routing.prophet.DeliveryPredictabilities;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -69,15 +70,12 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	private double ptavg;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private DeliveryPredictabilities preds;
 
 	/** last meeting time with a node */
 	private Map<DTNHost, Double> meetings;
 	private int nrofSamples;
 	private double meanIET;
-
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
 
 
 	/**
@@ -120,10 +118,10 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(gamma, 1);
 	}
 
 	/**
@@ -312,6 +310,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		}
 		gamma = Math.exp(-b);
 		pinit = 1-zeta;
+		preds.setGamma(gamma);
 	}
 
 	/**
@@ -320,9 +319,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 * @param host The host we just met
 	 */
 	private void updateDeliveryPredFor(DTNHost host) {
-		double oldValue = getPredFor(host);
-		double newValue = oldValue + (1 - oldValue) * pinit;
-		preds.put(host, newValue);
+		preds.updateEncounter(host, pinit);
 	}
 
 	/**
@@ -332,13 +329,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host); // the table ages the value before getting
 	}
 
 	/**
@@ -352,49 +343,8 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		assert otherRouter instanceof ProphetRouterWithEstimation : "PRoPHET only works " + 
 		" with other routers of same type";
 
-		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-			((ProphetRouterWithEstimation)otherRouter).getDeliveryPreds();
-
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
-	}
-
-	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
-	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate);
-
-		if (timeDiff == 0) {
-			return;
-		}
-
-		double mult = Math.pow(gamma, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
+		preds.updateTransitive(getHost(), host, 
+				((ProphetRouterWithEstimation)otherRouter).preds, beta);
 	}
 
 	@Override
@@ -415,11 +365,10 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
 	 * their delivery probability
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * @return The return value of {@link #tryMessagesForConnected(Collection)}
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages = 
-			new ArrayList<Tuple<Message, Connection>>(); 
+		List<PredTuple> messages = new ArrayList<PredTuple>(); 
 
 		Collection<Message> msgCollection = getMessageCollection();
 
@@ -438,9 +387,10 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 				if (othRouter.hasMessage(m.getId())) {
 					continue; // skip messages that the other one has
 				}
-				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
+				double othPred = othRouter.getPredFor(m.getTo());
+				if (othPred > getPredFor(m.getTo())) {
 					// the other node has higher probability of delivery
-					messages.add(new Tuple<Message, Connection>(m,con));
+					messages.add(new PredTuple(m, con, othPred));
 				}
 			}			
 		}
@@ -451,7 +401,27 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 
 		// sort the message-connection tuples
 		Collections.sort(messages, new TupleComparator());
-		return tryMessagesForConnected(messages);	// try to send messages
+
+		List<Tuple<Message, Connection>> tuples = 
+			new ArrayList<Tuple<Message, Connection>>(messages.size());
+		for (PredTuple t : messages) {
+			tuples.add(t.tuple);
+		}
+		return tryMessagesForConnected(tuples);	// try to send messages
+	}
+
+	/**
+	 * Message-Connection-Tuple with the delivery probability of the host
+	 * on the other side of the connection (looked up once before sorting)
+	 */
+	private static class PredTuple {
+		private Tuple<Message, Connection> tuple;
+		private double pred;
+
+		private PredTuple(Message m, Connection con, double pred) {
+			this.tuple = new Tuple<Message, Connection>(m, con);
+			this.pred = pred;
+		}
 	}
 
 	/**
@@ -459,26 +429,16 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 * their delivery probability by the host on the other side of the 
 	 * connection (GRTRMax)
 	 */
-	private class TupleComparator implements Comparator 
-	<Tuple<Message, Connection>> {
-
-		public int compare(Tuple<Message, Connection> tuple1,
-				Tuple<Message, Connection> tuple2) {
-			// delivery probability of tuple1's message with tuple1's connection
-			double p1 = ((ProphetRouterWithEstimation)tuple1.getValue().
-					getOtherNode(getHost()).getRouter()).getPredFor(
-							tuple1.getKey().getTo());
-			// -"- tuple2...
-			double p2 = ((ProphetRouterWithEstimation)tuple2.getValue().
-					getOtherNode(getHost()).getRouter()).getPredFor(
-							tuple2.getKey().getTo());
+	private class TupleComparator implements Comparator<PredTuple> {
 
+		public int compare(PredTuple tuple1, PredTuple tuple2) {
 			// bigger probability should come first
-			if (p2-p1 == 0) {
+			if (tuple2.pred - tuple1.pred == 0) {
 				/* equal probabilities -> let queue mode decide */
-				return compareByQueueMode(tuple1.getKey(), tuple2.getKey());
+				return compareByQueueMode(tuple1.tuple.getKey(), 
+						tuple2.tuple.getKey());
 			}
-			else if (p2-p1 < 0) {
+			else if (tuple2.pred - tuple1.pred < 0) {
 				return -1;
 			}
 			else {
@@ -489,14 +449,13 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 		" delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i=0, n=preds.size(); i<n; i++) {
+			DTNHost host = preds.getHost(i);
+			double value = preds.get(host);
 
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
@@ -151,7 +151,7 @@ public class PubSubRouter extends ActiveRouter
 		incoming.setReceiveTime(SimClock.getTime());
 		
 		Message outgoing = incoming;
-		for (Application app : getApplications(incoming.getAppID())) {
+		for (Application app : getApplicationArray(incoming.getAppID())) {
 			// Note that the order of applications is significant
 			// since the next one gets the output of the previous.
 			outgoing = app.handle(outgoing, getHost());
@@ -180,7 +180,7 @@ public class PubSubRouter extends ActiveRouter
 			}
 		}
 		else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			addToDeliveredMessages(id, aMessage);
 		}
 		
 		for (MessageListener ml : this.mListeners) {
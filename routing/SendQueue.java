@@ -0,0 +1,280 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.WeakHashMap;
+
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.SimError;
+
+/**
+ * Sending queue of the messages in a router's message buffer. The queue is
+ * updated incrementally when messages are added to or removed from the
+ * buffer so routers don't need to sort or shuffle the buffer on every
+ * update. In FIFO mode the messages are queued in the order they were
+ * added to the buffer and in random mode every new message is inserted to
+ * a random place in the queue. The random number generator is seeded with
+ * the host's address so the order is reproducible.<BR>
+ * The queue also remembers which messages the peers have rejected so they
+ * don't need to be offered again until the state of the peer changes
+ * (see {@link MessageRouter#getStateVersion()}).
+ */
+public class SendQueue implements Iterable<Message>, Comparator<Message> {
+	/** The queued messages in queue order (null for removed messages) */
+	private ArrayList<Message> queue;
+	/** Indexes of the queued messages in the queue */
+	private HashMap<String, Integer> positions;
+	/** Number of removed messages (null slots) in the queue */
+	private int nrofRemoved;
+	/** Number of times the queue has been compacted */
+	private int nrofCompactions;
+	/** Queue mode (see {@link MessageRouter#SEND_QUEUE_MODE_S}) */
+	private int mode;
+	/** Random number generator for the random queue mode */
+	private Random rng;
+	/** The host whose messages are queued */
+	private DTNHost host;
+	/** Rejected messages per connection (forgotten with the connection) */
+	private WeakHashMap<Connection, Rejections> rejections;
+
+	/**
+	 * Constructor.
+	 * @param host The host whose messages are queued
+	 * @param mode The queue mode ({@link MessageRouter#Q_MODE_RANDOM} or
+	 * {@link MessageRouter#Q_MODE_FIFO})
+	 */
+	public SendQueue(DTNHost host, int mode) {
+		if (mode != MessageRouter.Q_MODE_RANDOM &&
+				mode != MessageRouter.Q_MODE_FIFO) {
+			throw new SimError("Unknown queue mode " + mode);
+		}
+		this.host = host;
+		this.mode = mode;
+		this.rng = new Random(host.getAddress());
+		this.queue = new ArrayList<Message>();
+		this.positions = new HashMap<String, Integer>();
+		this.rejections = new WeakHashMap<Connection, Rejections>();
+	}
+
+	/**
+	 * Adds a message to the queue. If a message with the same ID is
+	 * already queued, it is replaced (and the new message is queued as
+	 * a new message).
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		remove(m.getId());
+		if (this.nrofRemoved > this.queue.size() / 2) {
+			compact();
+		}
+
+		int index = this.queue.size();
+		this.queue.add(m);
+
+		if (this.mode == MessageRouter.Q_MODE_RANDOM) {
+			/* swap with a random slot ("inside-out" Fisher-Yates shuffle) */
+			int other = this.rng.nextInt(index + 1);
+			if (other != index) {
+				Message swapped = this.queue.get(other);
+				this.queue.set(index, swapped);
+				if (swapped != null) {
+					this.positions.put(swapped.getId(), index);
+				}
+				this.queue.set(other, m);
+				index = other;
+			}
+		}
+
+		this.positions.put(m.getId(), index);
+	}
+
+	/**
+	 * Removes a message from the queue. Messages can be removed while
+	 * the queue is being iterated.
+	 * @param id ID of the message to remove
+	 * @return True if the message was queued, false if not
+	 */
+	public boolean remove(String id) {
+		Integer index = this.positions.remove(id);
+		if (index == null) {
+			return false;
+		}
+
+		if (this.positions.isEmpty()) {
+			this.queue.clear();
+			this.nrofRemoved = 0;
+		}
+		else {
+			this.queue.set(index, null);
+			this.nrofRemoved++;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the empty slots of removed messages from the queue
+	 */
+	private void compact() {
+		int n = 0;
+		for (int i=0, size=this.queue.size(); i<size; i++) {
+			Message m = this.queue.get(i);
+			if (m != null) {
+				this.queue.set(n, m);
+				this.positions.put(m.getId(), n);
+				n++;
+			}
+		}
+		this.queue.subList(n, this.queue.size()).clear();
+		this.nrofRemoved = 0;
+		this.nrofCompactions++;
+	}
+
+	/**
+	 * Returns the number of queued messages
+	 * @return the number of queued messages
+	 */
+	public int size() {
+		return this.positions.size();
+	}
+
+	/**
+	 * Compares two messages by their order in the queue. Messages that
+	 * are not queued come after the queued messages (in the order of
+	 * their IDs).
+	 * @param m1 The first message
+	 * @param m2 The second message
+	 * @return A negative value if the first message is before the second
+	 * message in the queue, positive value if it is after the second
+	 * message and zero if the messages have the same ID
+	 */
+	public int compare(Message m1, Message m2) {
+		Integer i1 = this.positions.get(m1.getId());
+		Integer i2 = this.positions.get(m2.getId());
+
+		if (i1 == null || i2 == null) {
+			if (i1 != null) {
+				return -1;
+			}
+			if (i2 != null) {
+				return 1;
+			}
+			return m1.getId().compareTo(m2.getId());
+		}
+
+		return i1 - i2;
+	}
+
+	/**
+	 * Returns true if the other end of the connection has rejected the
+	 * message after its state last changed, i.e., it would reject the
+	 * message again.
+	 * @param m The message
+	 * @param con The connection to the peer
+	 * @return True if the message was rejected, false if not
+	 */
+	public boolean isRejected(Message m, Connection con) {
+		Rejections r = this.rejections.get(con);
+		if (r == null) {
+			return false;
+		}
+		if (r.version != getPeerVersion(con)) {
+			this.rejections.remove(con); // peer has changed -> forget all
+			return false;
+		}
+
+		return r.ids.contains(m.getId());
+	}
+
+	/**
+	 * Marks the message rejected by the other end of the connection. The
+	 * mark is valid until the state of the peer changes. Should only be
+	 * used for rejections that depend only on the state of the peer.
+	 * @param m The message that was rejected
+	 * @param con The connection to the peer
+	 */
+	public void setRejected(Message m, Connection con) {
+		int version = getPeerVersion(con);
+		Rejections r = this.rejections.get(con);
+		if (r == null || r.version != version) {
+			r = new Rejections(version);
+			this.rejections.put(con, r);
+		}
+		r.ids.add(m.getId());
+	}
+
+	/**
+	 * Returns the state version of the router at the other end of the
+	 * connection
+	 * @param con The connection
+	 * @return The version of the peer's router
+	 */
+	private int getPeerVersion(Connection con) {
+		return con.getOtherNode(this.host).getRouter().getStateVersion();
+	}
+
+	/**
+	 * Returns an iterator that goes through the queued messages in the
+	 * queue order. Messages can be removed from the queue while iterating,
+	 * but adding messages may invalidate the iterator.
+	 * @return An iterator over the queued messages
+	 */
+	public Iterator<Message> iterator() {
+		return new Iterator<Message>() {
+			private int index = 0;
+			private int compactions = nrofCompactions;
+
+			public boolean hasNext() {
+				if (this.compactions != nrofCompactions) {
+					throw new ConcurrentModificationException();
+				}
+				while (index < queue.size() && queue.get(index) == null) {
+					index++;
+				}
+				return index < queue.size();
+			}
+
+			public Message next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return queue.get(index++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Messages rejected by a peer while the peer was in a certain state
+	 */
+	private static class Rejections {
+		/** State version of the peer's router when the messages
+		 * were rejected */
+		private int version;
+		/** IDs of the rejected messages */
+		private HashSet<String> ids;
+
+		private Rejections(int version) {
+			this.version = version;
+			this.ids = new HashSet<String>();
+		}
+	}
+
+	public String toString() {
+		return "SendQueue of " + this.host + " with " + size() + " messages";
+	}
+}
@@ -27,6 +27,9 @@ public class SprayAndFocusRouter extends ActiveRouter
 	public static final String TIMER_THRESHOLD_S = "transitivityTimerThreshold";
 	/** Message property key for the remaining available copies of a message */
 	public static final String MSG_COUNT_PROP = "SprayAndFocus.copies";
+	/** Message slot for the number of copies (named {@link #MSG_COUNT_PROP}) */
+	public static final MessageSlot MSG_COUNT_SLOT = 
+		MessageSlot.register(MSG_COUNT_PROP);
 	/** Message property key for summary vector messages exchanged between direct peers */
 	public static final String SUMMARY_XCHG_PROP = "SprayAndFocus.protoXchg";
 	
@@ -38,8 +41,9 @@ public class SprayAndFocusRouter extends ActiveRouter
 	protected double transitivityTimerThreshold;
 	
 	/** Stores information about nodes with which this host has come in contact */
-	protected Map<DTNHost, EncounterInfo> recentEncounters;
-	protected Map<DTNHost, Map<DTNHost, EncounterInfo>> neighborEncounters;
+	protected EncounterTable recentEncounters;
+	/** Snapshots of the encounter tables of the connected peers by address */
+	protected EncounterTable[] neighborEncounters;
 	
 	public SprayAndFocusRouter(Settings s)
 	{
@@ -52,8 +56,8 @@ public class SprayAndFocusRouter extends ActiveRouter
 		else
 			transitivityTimerThreshold = defaultTransitivityThreshold;
 		
-		recentEncounters = new HashMap<DTNHost, EncounterInfo>();
-		neighborEncounters = new HashMap<DTNHost, Map<DTNHost, EncounterInfo>>();
+		recentEncounters = new EncounterTable();
+		neighborEncounters = new EncounterTable[0];
 	}
 	
 	/**
@@ -66,8 +70,8 @@ public class SprayAndFocusRouter extends ActiveRouter
 		super(r);
 		this.initialNrofCopies = r.initialNrofCopies;
 		
-		recentEncounters = new HashMap<DTNHost, EncounterInfo>();
-		neighborEncounters = new HashMap<DTNHost, Map<DTNHost, EncounterInfo>>();
+		recentEncounters = new EncounterTable();
+		neighborEncounters = new EncounterTable[0];
 	}
 	
 	@Override
@@ -97,30 +101,23 @@ public class SprayAndFocusRouter extends ActiveRouter
 		DTNHost peer = con.getOtherNode(thisHost);
 		
 		//do this when con is up and goes down (might have been up for awhile)
-		if(recentEncounters.containsKey(peer))
-		{ 
-			EncounterInfo info = recentEncounters.get(peer);
-			info.updateEncounterTime(SimClock.getTime());
-		}
-		else
-		{
-			recentEncounters.put(peer, new EncounterInfo(SimClock.getTime()));
-		}
+		recentEncounters.setTime(peer, SimClock.getTime());
 		
 		if(!con.isUp())
 		{
-			neighborEncounters.remove(peer);
+			setNeighborEncounters(peer, null);
 			return;
 		}
 		
 		/*
 		 * For this simulator, we just need a way to give the other node in this connection
-		 * access to the peers we recently encountered; so we duplicate the recentEncounters
-		 * Map and attach it to a message.
+		 * access to the peers we recently encountered; so we attach a snapshot of the
+		 * recentEncounters table to a message (the table is copied only when we modify it
+		 * the next time).
 		 */
 		int msgSize = recentEncounters.size() * 64 + getMessageCollection().size() * 8;
 		Message newMsg = new Message(thisHost, peer, SUMMARY_XCHG_IDPREFIX + protocolMsgIdx++, msgSize);
-		newMsg.addProperty(SUMMARY_XCHG_PROP, /*new HashMap<DTNHost, EncounterInfo>(*/recentEncounters);
+		newMsg.addProperty(SUMMARY_XCHG_PROP, recentEncounters.snapshot());
 		
 		createNewMessage(newMsg);
 	}
@@ -130,7 +127,8 @@ public class SprayAndFocusRouter extends ActiveRouter
 	{
 		makeRoomForNewMessage(m.getSize());
 
-		m.addProperty(MSG_COUNT_PROP, new Integer(initialNrofCopies));
+		m.setInt(MSG_COUNT_SLOT, initialNrofCopies);
+		m.updateProperty(MSG_COUNT_PROP, initialNrofCopies);
 		addToMessages(m, true);
 		return true;
 	}
@@ -144,7 +142,7 @@ public class SprayAndFocusRouter extends ActiveRouter
 		 * Here we update our last encounter times based on the information sent
 		 * from our peer. 
 		 */
-		Map<DTNHost, EncounterInfo> peerEncounters = (Map<DTNHost, EncounterInfo>)m.getProperty(SUMMARY_XCHG_PROP);
+		EncounterTable peerEncounters = (EncounterTable)m.getProperty(SUMMARY_XCHG_PROP);
 		if(isDeliveredMessage(m) && peerEncounters != null)
 		{
 			double distTo = getHost().getLocation().distance(from.getLocation());
@@ -158,15 +156,14 @@ public class SprayAndFocusRouter extends ActiveRouter
 			 * We save the peer info for the utility based forwarding decisions, which are
 			 * implemented in update()
 			 */
-			neighborEncounters.put(from, peerEncounters); 
+			setNeighborEncounters(from, peerEncounters); 
 			
-			for(Map.Entry<DTNHost, EncounterInfo> entry : peerEncounters.entrySet())
+			for(int h = 0, n = peerEncounters.getAddressBound(); h < n; h++)
 			{
-				DTNHost h = entry.getKey();
-				if(h == getHost()) continue;
+				double peerLastSeen = peerEncounters.getTime(h);
+				if(Double.isNaN(peerLastSeen) || h == getHost().getAddress()) continue;
 				
-				EncounterInfo peerEncounter = entry.getValue();
-				EncounterInfo info = recentEncounters.get(h);
+				double lastSeen = recentEncounters.getTime(h);
 				
 				/*
 				 * We set our timestamp for some node, h, with whom our peer has come in contact
@@ -176,18 +173,9 @@ public class SprayAndFocusRouter extends ActiveRouter
 				 * fixed timestamps here to accomplish the same effect, but the computations
 				 * here are consequently a little different from the paper. 
 				 */
-				if(!recentEncounters.containsKey(h))
+				if(Double.isNaN(lastSeen) || lastSeen + timediff < peerLastSeen)
 				{
-					info = new EncounterInfo(peerEncounter.getLastSeenTime() - timediff);
-					recentEncounters.put(h, info);
-					continue;
-				}
-				
-				
-				if(info.getLastSeenTime() + timediff < peerEncounter.getLastSeenTime())
-				{
-					recentEncounters.get(h).updateEncounterTime(peerEncounter.getLastSeenTime() - 
-							timediff);
+					recentEncounters.setTime(h, peerLastSeen - timediff);
 				}
 			}
 			return m;
@@ -195,10 +183,11 @@ public class SprayAndFocusRouter extends ActiveRouter
 		
 		//Normal message beyond here
 		
-		Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROP);
+		int nrofCopies = m.getInt(MSG_COUNT_SLOT);
 		
 		nrofCopies = (int)Math.ceil(nrofCopies/2.0);
 		
+		m.setInt(MSG_COUNT_SLOT, nrofCopies);
 		m.updateProperty(MSG_COUNT_PROP, nrofCopies);
 		
 		return m;
@@ -207,7 +196,7 @@ public class SprayAndFocusRouter extends ActiveRouter
 	@Override
 	protected void transferDone(Connection con) 
 	{
-		Integer nrofCopies;
+		int nrofCopies;
 		String msgId = con.getMessage().getId();
 		/* get this router's copy of the message */
 		Message msg = getMessage(msgId);
@@ -227,12 +216,13 @@ public class SprayAndFocusRouter extends ActiveRouter
 		 * we apparently just transferred the msg (focus phase), then we should
 		 * delete it. 
 		 */
-		nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROP);
+		nrofCopies = msg.getInt(MSG_COUNT_SLOT);
 		if(nrofCopies > 1)
 			nrofCopies /= 2;
 		else
 			deleteMessage(msgId, false);
 		
+		msg.setInt(MSG_COUNT_SLOT, nrofCopies);
 		msg.updateProperty(MSG_COUNT_PROP, nrofCopies);
 	}
 	
@@ -251,16 +241,14 @@ public class SprayAndFocusRouter extends ActiveRouter
 			return;
 		}
 		
-		List<Message> spraylist = new ArrayList<Message>();
+		Set<Message> spraylist = new HashSet<Message>();
 		List<Tuple<Message,Connection>> focuslist = new LinkedList<Tuple<Message,Connection>>();
 
 		for (Message m : getMessageCollection())
 		{
 			if(m.getProperty(SUMMARY_XCHG_PROP) != null) continue;
 			
-			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROP);
-			assert nrofCopies != null : "SnF message " + m + " didn't have " + 
-				"nrof copies property!";
+			int nrofCopies = m.getInt(MSG_COUNT_SLOT);
 			if (nrofCopies > 1)
 			{
 				spraylist.add(m);
@@ -284,11 +272,11 @@ public class SprayAndFocusRouter extends ActiveRouter
 				//for(Connection c : getConnections())
 				{
 					DTNHost peer = c.getOtherNode(getHost());
-					Map<DTNHost, EncounterInfo> peerEncounters = neighborEncounters.get(peer);
+					EncounterTable peerEncounters = getNeighborEncounters(peer);
 					double peerLastSeen = 0.0;
 					
-					if(peerEncounters != null && peerEncounters.containsKey(dest))
-						peerLastSeen = neighborEncounters.get(peer).get(dest).getLastSeenTime();
+					if(peerEncounters != null)
+						peerLastSeen = peerEncounters.getTime(dest, 0.0);
 					
 					/*
 					 * We need to pick only one peer to send the copy on to; so lets find the
@@ -302,7 +290,8 @@ public class SprayAndFocusRouter extends ActiveRouter
 						}
 							
 				}
-				if (toSend != null && maxPeerLastSeen > thisLastSeen + transitivityTimerThreshold)
+				if (toSend != null && maxPeerLastSeen > thisLastSeen + transitivityTimerThreshold
+						&& peerLacks(m, toSend.getOtherNode(getHost())))
 				{
 					focuslist.add(new Tuple<Message, Connection>(m, toSend));
 				}
@@ -310,7 +299,7 @@ public class SprayAndFocusRouter extends ActiveRouter
 		}
 		
 		//arbitrarily favor spraying
-		if(tryMessagesToAllConnections(spraylist) == null)
+		if(tryLackedMessagesToAllConnections(spraylist) == null)
 		{
 			if(tryMessagesForConnected(focuslist) != null)
 			{
@@ -321,41 +310,36 @@ public class SprayAndFocusRouter extends ActiveRouter
 
 	protected double getLastEncounterTimeForHost(DTNHost host)
 	{
-		if(recentEncounters.containsKey(host))
-			return recentEncounters.get(host).getLastSeenTime();
-		else
-			return 0.0;
+		return recentEncounters.getTime(host, 0.0);
 	}
 	
 	/**
-	 * Stores all necessary info about encounters made by this host to some other host.
-	 * At the moment, all that's needed is the timestamp of the last time these two hosts
-	 * met.
-	 * 
-	 * @author PJ Dillon, University of Pittsburgh
+	 * Returns the encounter table a connected peer sent to this host
+	 * @param peer The peer
+	 * @return Snapshot of the peer's encounter table or null if the peer
+	 * hasn't sent one (during the current connection)
 	 */
-	protected class EncounterInfo
+	protected EncounterTable getNeighborEncounters(DTNHost peer)
 	{
-		protected double seenAtTime;
-		
-		public EncounterInfo(double atTime)
-		{
-			this.seenAtTime = atTime;
-		}
-		
-		public void updateEncounterTime(double atTime)
-		{
-			this.seenAtTime = atTime;
-		}
-		
-		public double getLastSeenTime()
-		{
-			return seenAtTime;
-		}
-		
-		public void updateLastSeenTime(double atTime)
+		int address = peer.getAddress();
+		return address < neighborEncounters.length ? 
+				neighborEncounters[address] : null;
+	}
+	
+	/**
+	 * Sets (or clears) the encounter table a connected peer sent to this host
+	 * @param peer The peer
+	 * @param table Snapshot of the peer's encounter table or null to clear
+	 */
+	protected void setNeighborEncounters(DTNHost peer, EncounterTable table)
+	{
+		int address = peer.getAddress();
+		if(address >= neighborEncounters.length)
 		{
-			this.seenAtTime = atTime;
+			if(table == null) return;
+			neighborEncounters = Arrays.copyOf(neighborEncounters, 
+					Math.max(address + 1, 2 * neighborEncounters.length));
 		}
+		neighborEncounters[address] = table;
 	}
 }
@@ -5,11 +5,14 @@
 package routing;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageSlot;
 import core.Settings;
 
 /**
@@ -28,9 +31,15 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	/** Message property key */
 	public static final String MSG_COUNT_PROPERTY = SPRAYANDWAIT_NS + "." +
 		"copies";
+	/** Message slot for the number of copies (named 
+	 * {@link #MSG_COUNT_PROPERTY}) */
+	public static final MessageSlot MSG_COUNT_SLOT = 
+		MessageSlot.register(MSG_COUNT_PROPERTY);
 	
 	protected int initialNrofCopies;
 	protected boolean isBinary;
+	/** The buffered messages that have copies left to distribute */
+	protected Set<Message> copiesLeft;
 
 	public SprayAndWaitRouter(Settings s) {
 		super(s);
@@ -38,6 +47,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		
 		initialNrofCopies = snwSettings.getInt(NROF_COPIES);
 		isBinary = snwSettings.getBoolean( BINARY_MODE);
+		copiesLeft = new HashSet<Message>();
 	}
 	
 	/**
@@ -48,6 +58,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		super(r);
 		this.initialNrofCopies = r.initialNrofCopies;
 		this.isBinary = r.isBinary;
+		this.copiesLeft = new HashSet<Message>();
 	}
 	
 	@Override
@@ -58,9 +69,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message msg = super.messageTransferred(id, from);
-		Integer nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
-		
-		assert nrofCopies != null : "Not a SnW message: " + msg;
+		int nrofCopies = msg.getInt(MSG_COUNT_SLOT);
 		
 		if (isBinary) {
 			/* in binary S'n'W the receiving node gets ceil(n/2) copies */
@@ -71,7 +80,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 			nrofCopies = 1;
 		}
 		
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		setNrofCopies(msg, nrofCopies);
 		return msg;
 	}
 	
@@ -80,7 +89,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		makeRoomForNewMessage(msg.getSize());
 
 		msg.setTtl(this.msgTtl);
-		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(initialNrofCopies));
+		msg.setInt(MSG_COUNT_SLOT, initialNrofCopies);
 		addToMessages(msg, true);
 		return true;
 	}
@@ -89,6 +98,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	public void update() {
 		super.update();
 		if (!canStartTransfer() || isTransferring()) {
+			sleepUntilChange();
 			return; // nothing to transfer or is currently transferring 
 		}
 
@@ -98,33 +108,70 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 		
 		/* create a list of SAWMessages that have copies left to distribute */
-		@SuppressWarnings(value = "unchecked")
-		List<Message> copiesLeft = sortByQueueMode(getMessagesWithCopiesLeft());
+		List<Message> copiesLeft = getMessagesWithCopiesLeft();
 		
 		if (copiesLeft.size() > 0) {
 			/* try to send those messages */
-			this.tryMessagesToConnections(copiesLeft, getHost().getConnections());
+			if (this.tryMessagesToConnections(copiesLeft, 
+					getHost().getConnections()) != null) {
+				return;
+			}
 		}
+		
+		sleepUntilChange(); // no takers, wait until something changes
 	}
 	
 	/**
 	 * Creates and returns a list of messages this router is currently
 	 * carrying and still has copies left to distribute (nrof copies > 1).
+	 * The messages are in the order of the sending queue.
 	 * @return A list of messages that have copies left
 	 */
+	@SuppressWarnings(value = "unchecked")
 	protected List<Message> getMessagesWithCopiesLeft() {
-		List<Message> list = new ArrayList<Message>();
-
-		for (Message m : getMessageCollection()) {
-			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROPERTY);
-			assert nrofCopies != null : "SnW message " + m + " didn't have " + 
-				"nrof copies property!";
-			if (nrofCopies > 1) {
-				list.add(m);
-			}
+		return sortByQueueMode(new ArrayList<Message>(this.copiesLeft));
+	}
+	
+	/**
+	 * Sets the number of copies of a message and updates the index of the
+	 * messages with copies left if the message is in the buffer. The count
+	 * is also kept in the {@link #MSG_COUNT_PROPERTY} property for the
+	 * modules that read it from there.
+	 * @param m The message
+	 * @param nrofCopies The new number of copies
+	 */
+	protected void setNrofCopies(Message m, int nrofCopies) {
+		m.setInt(MSG_COUNT_SLOT, nrofCopies);
+		m.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		if (getMessage(m.getId()) != m) {
+			return; // not in the buffer
 		}
 		
-		return list;
+		if (nrofCopies > 1) {
+			this.copiesLeft.add(m);
+		}
+		else {
+			this.copiesLeft.remove(m);
+		}
+	}
+	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		Message old = getMessage(m.getId());
+		if (old != null) {
+			this.copiesLeft.remove(old); // replaced by the new message
+		}
+		super.addToMessages(m, newMessage);
+		setNrofCopies(m, m.getInt(MSG_COUNT_SLOT));
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			this.copiesLeft.remove(m);
+		}
+		return m;
 	}
 	
 	/**
@@ -136,7 +183,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	 */
 	@Override
 	protected void transferDone(Connection con) {
-		Integer nrofCopies;
+		int nrofCopies;
 		String msgId = con.getMessage().getId();
 		/* get this router's copy of the message */
 		Message msg = getMessage(msgId);
@@ -146,14 +193,14 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 		
 		/* reduce the amount of copies left */
-		nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
+		nrofCopies = msg.getInt(MSG_COUNT_SLOT);
 		if (isBinary) { 
 			nrofCopies /= 2;
 		}
 		else {
 			nrofCopies--;
 		}
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		setNrofCopies(msg, nrofCopies);
 	}
 	
 	@Override
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+import core.DTNSim;
+import core.Message;
+
+/**
+ * Summary vector of the messages a router has seen, i.e., the messages in
+ * its buffer and the messages delivered to it. The message IDs are interned
+ * to small integers shared by all the vectors, so a vector is a bit set and
+ * checking if a peer already has a message doesn't require offering the
+ * message to the peer (which replicates the message). The version of the
+ * vector changes every time the vector changes, so lists derived from the
+ * vectors (see {@link ActiveRouter#getMessagesPeerLacks(core.Connection)})
+ * need to be refreshed only when either of the vectors has changed.
+ */
+public class SummaryVector {
+	/** Interned indexes of the message IDs */
+	private static HashMap<String, Integer> indexes;
+
+	/** Bits of the interned IDs of the messages in the vector */
+	private BitSet ids;
+	/** Number of IDs in the vector */
+	private int size;
+	/** Number of changes to the vector */
+	private int version;
+
+	static {
+		DTNSim.registerForReset(SummaryVector.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Creates a new, empty, summary vector
+	 */
+	public SummaryVector() {
+		this.ids = new BitSet();
+		this.size = 0;
+		this.version = 0;
+	}
+
+	/**
+	 * Resets the interned message IDs
+	 */
+	public static void reset() {
+		indexes = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Returns the interned index of a message ID
+	 * @param id The message ID
+	 * @param intern If true, an ID without an index is given a new index
+	 * @return The index or -1 if the ID has no index and intern is false
+	 */
+	private static int getIndex(String id, boolean intern) {
+		Integer index = indexes.get(id);
+		if (index == null) {
+			if (!intern) {
+				return -1;
+			}
+			index = indexes.size();
+			indexes.put(id, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a message ID to the vector
+	 * @param id The message ID
+	 */
+	public void add(String id) {
+		int index = getIndex(id, true);
+		if (!this.ids.get(index)) {
+			this.ids.set(index);
+			this.size++;
+			this.version++;
+		}
+	}
+
+	/**
+	 * Removes a message ID from the vector
+	 * @param id The message ID
+	 */
+	public void remove(String id) {
+		int index = getIndex(id, false);
+		if (index >= 0 && this.ids.get(index)) {
+			this.ids.clear(index);
+			this.size--;
+			this.version++;
+		}
+	}
+
+	/**
+	 * Changes the version of the vector without changing its contents. Used
+	 * when a message leaves the buffer but stays in the vector (because it
+	 * has been delivered), so lists derived from the vector are refreshed.
+	 */
+	void invalidate() {
+		this.version++;
+	}
+
+	/**
+	 * Returns true if the vector contains the ID of the message
+	 * @param m The message
+	 * @return True if the message is in the vector
+	 */
+	public boolean contains(Message m) {
+		int index = getIndex(m.getId(), false);
+		return index >= 0 && this.ids.get(index);
+	}
+
+	/**
+	 * Returns the number of message IDs in the vector
+	 * @return the number of message IDs in the vector
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the version of the vector. The version changes every time
+	 * the vector changes.
+	 * @return The version of the vector
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	public String toString() {
+		return "SummaryVector with " + this.size + " messages";
+	}
+}
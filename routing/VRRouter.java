@@ -37,6 +37,14 @@ public class VRRouter extends ActiveRouter
 	public static final String MESSAGE_LOOK_P = "VRRouter.look";
 	public static final String MESSAGE_LOOK_TIMEOUT_P = "VRRouter.lookTimeout";
 	
+	/** Message slots of the primitive valued message properties */
+	protected static final MessageSlot CHECKIN_SEQNUM_SLOT = 
+		MessageSlot.register(MESSAGE_CHECKIN_SEQNUM_P);
+	protected static final MessageSlot LOOK_SLOT = 
+		MessageSlot.register(MESSAGE_LOOK_P);
+	protected static final MessageSlot LOOK_TIMEOUT_SLOT = 
+		MessageSlot.register(MESSAGE_LOOK_TIMEOUT_P);
+	
 	public static final int defaultCheckInInterval = 300;  //seconds
 //	public static final int defaultCheckInTTL = 5;  //minutes
 	public static final double defaultVrRadius = 50.0; //meters
@@ -54,6 +62,8 @@ public class VRRouter extends ActiveRouter
 	protected static int checkInTTL;
 	protected static double vrRadius;
 	protected static int neighborExpirationInterval;
+	/** VR focus of each host by address (computed once, see hash()) */
+	private static Coord[] vrHomes = new Coord[0];
 	
 	/*
 	 * For now, the hashing scheme assumes we're using a rectangular movement
@@ -102,13 +112,25 @@ public class VRRouter extends ActiveRouter
 	
 	/*
 	 * hash functions for the router; takes a node's address and returns a Coord
-	 * object indicating the focus of the node's VR.
+	 * object indicating the focus of the node's VR. The focus of each address is
+	 * computed only once, so the returned Coord is shared and must not be 
+	 * modified.
 	 */
 	public static Coord hash(DTNHost node)
 	{
-		double x = hashX(node), 
-		 	y = hashY(node, x);
-		return new Coord(x, y);
+		int addr = node.getAddress();
+		if(addr >= vrHomes.length)
+			vrHomes = Arrays.copyOf(vrHomes, Math.max(addr + 1, 2 * vrHomes.length));
+		
+		Coord home = vrHomes[addr];
+		if(home == null)
+		{
+			double x = hashX(node), 
+			 	y = hashY(node, x);
+			home = new Coord(x, y);
+			vrHomes[addr] = home;
+		}
+		return home;
 	}
 	
 	private static double hashX(DTNHost node)
@@ -181,6 +203,19 @@ public class VRRouter extends ActiveRouter
 	
 	protected long checkInSeqNum;
 	
+	/**
+	 * Expiry timers of the neighborhood entries. An entry is removed once its
+	 * expiration time has passed.
+	 */
+	protected TimerWheel<DTNHost> neighborTimers;
+	
+	/**
+	 * Timers of the look timeouts of the buffered messages that are looking
+	 * for their destination, and the timers by message ID.
+	 */
+	protected TimerWheel<Message> lookTimers;
+	protected Map<String, TimerWheel.Timer<Message>> lookTimersById;
+	
 	/**
 	 * Creates an instance of the Virtual Repository Router
 	 * @param s Settings for the router
@@ -207,6 +242,9 @@ public class VRRouter extends ActiveRouter
 		finishedMessages = new HashSet<String>();
 		nextCheckInTime = SimClock.getTime() + (double)(checkInInterval * 2) * Math.random();
 		checkInSeqNum = 0;
+		neighborTimers = new TimerWheel<DTNHost>(1.0);
+		lookTimers = new TimerWheel<Message>(1.0);
+		lookTimersById = new HashMap<String, TimerWheel.Timer<Message>>();
 	}
 	
 /*	@Override
@@ -239,9 +277,9 @@ public class VRRouter extends ActiveRouter
 			doLook(m, entry.getLocation(), entry.getLocationTimestamp());
 		}
 		else {
-			m.addProperty(MESSAGE_LOOK_P, false);
+			m.setInt(LOOK_SLOT, 0);
 			m.addProperty(MESSAGE_FOCUS_P, hash(to));
-			m.addProperty(MESSAGE_LOOK_TIMEOUT_P, null);
+			m.clearSlot(LOOK_TIMEOUT_SLOT);
 		}
 				
 		addToMessages(m, true);
@@ -263,12 +301,12 @@ public class VRRouter extends ActiveRouter
 		m.setResponseSize(0);
 //		m.setTtl(checkInTTL);
 		
-		m.addProperty(MESSAGE_CHECKIN_SEQNUM_P, checkInSeqNum++);
-		m.addProperty(MESSAGE_LOOK_P, false);
+		m.setLong(CHECKIN_SEQNUM_SLOT, checkInSeqNum++);
+		m.setInt(LOOK_SLOT, 0);
 		m.addProperty(MESSAGE_FOCUS_P, hash(thisHost));
 		m.addProperty(MESSAGE_IS_CHECKIN_P, m);
 		m.addProperty(MESSAGE_HOME_LOC_P, thisHost.getLocation());
-		m.updateProperty(MESSAGE_LOOK_TIMEOUT_P, null);
+		m.clearSlot(LOOK_TIMEOUT_SLOT);
 		
 		removeOldCheckInMsgs(m);
 		addToMessages(m, true);
@@ -366,14 +404,14 @@ public class VRRouter extends ActiveRouter
 		if(isCheckInMessage(vrm) && removeOldCheckInMsgs(vrm))
 		{	
 			Coord homeloc = getCheckInLocation(vrm);
-			neighborhood.put(vrm.getFrom(), 
+			putNeighbor(vrm.getFrom(), 
 					new NeighborEntry(homeloc, vrm.getCreationTime()));
 			
 			if(isHostInMsgVR(getHost(), vrm))
 			{
-				for(Message m : this.getMessageCollection())
+				for(Message m : this.getMessagesFor(vrm.getFrom()))
 				{
-					if(!isCheckInMessage(m) && m.getTo() == vrm.getFrom())
+					if(!isCheckInMessage(m))
 					{
 						doLook(m, homeloc, vrm.getCreationTime());
 					}
@@ -421,12 +459,11 @@ public class VRRouter extends ActiveRouter
 	
 	protected boolean removeOldCheckInMsgs(Message newCheckin)
 	{
-		for(Message m : getMessageCollection())
+		for(Message m : getMessagesFor(newCheckin.getTo()))
 		{
 			// delete any older checkIn messages (or this message if it's older)
 			if(m != newCheckin && 
-				isCheckInMessage(m) && 
-				m.getTo() == newCheckin.getTo())
+				isCheckInMessage(m))
 			{
 				if(getCheckInSequenceNumber(newCheckin) > getCheckInSequenceNumber(m))
 				{
@@ -460,19 +497,21 @@ public class VRRouter extends ActiveRouter
 	
 	protected boolean isLooking(Message m)
 	{
-		return ((Boolean)m.getProperty(MESSAGE_LOOK_P)).booleanValue();
+		return m.getInt(LOOK_SLOT) != 0;
 	}
 	
 	protected long getCheckInSequenceNumber(Message m)
 	{
-		return ((Long) m.getProperty(MESSAGE_CHECKIN_SEQNUM_P)).longValue();
+		return m.getLong(CHECKIN_SEQNUM_SLOT);
 	}
 	
 	protected void doLook(Message m, Coord toLoc, double locationTime)
 	{
-		m.updateProperty(MESSAGE_LOOK_P, true);
+		m.setInt(LOOK_SLOT, 1);
 		m.updateProperty(MESSAGE_FOCUS_P, toLoc);
-		m.updateProperty(MESSAGE_LOOK_TIMEOUT_P, 2*SimClock.getTime()-locationTime+600);
+		m.setDouble(LOOK_TIMEOUT_SLOT, 2*SimClock.getTime()-locationTime+600);
+		if(getMessage(m.getId()) == m)
+			scheduleLookTimeout(m);
 //		System.out.println("Starting look: " + m.getId() + ' '+toLoc);
 	}
 	
@@ -480,14 +519,48 @@ public class VRRouter extends ActiveRouter
 	{
 		if(!isLooking(m))return;
 		
-		double timeout = ((Double)m.getProperty(VRRouter.MESSAGE_LOOK_TIMEOUT_P)).doubleValue();
+		double timeout = m.getDouble(LOOK_TIMEOUT_SLOT);
 		if(timeout < timeNow)
 		{
-			m.updateProperty(MESSAGE_LOOK_P, false);
+			m.setInt(LOOK_SLOT, 0);
 			m.updateProperty(MESSAGE_FOCUS_P, hash(m.getTo()));
 		}
 	}
 	
+	/**
+	 * (Re)schedules the look timeout of a buffered message
+	 * @param m The message
+	 */
+	private void scheduleLookTimeout(Message m)
+	{
+		cancelLookTimeout(m.getId());
+		lookTimersById.put(m.getId(), 
+				lookTimers.schedule(m, m.getDouble(LOOK_TIMEOUT_SLOT)));
+	}
+	
+	private void cancelLookTimeout(String id)
+	{
+		TimerWheel.Timer<Message> timer = lookTimersById.remove(id);
+		if(timer != null)
+			lookTimers.cancel(timer);
+	}
+	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage)
+	{
+		cancelLookTimeout(m.getId()); // in case an old copy is replaced
+		super.addToMessages(m, newMessage);
+		if(isLooking(m))
+			scheduleLookTimeout(m);
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id)
+	{
+		cancelLookTimeout(id);
+		return super.removeFromMessages(id);
+	}
+	
 	@Override
 	public void update()
 	{
@@ -684,23 +757,46 @@ public class VRRouter extends ActiveRouter
 		//for(Connection conn : getConnections())
 		{
 			DTNHost otherHost = conn.getOtherNode(getHost());
-			neighborhood.put(otherHost, new NeighborEntry(otherHost.getLocation(), time));
+			putNeighbor(otherHost, new NeighborEntry(otherHost.getLocation(), time));
 		}
 		
-		for(Iterator<Map.Entry<DTNHost, NeighborEntry>> i =
-						neighborhood.entrySet().iterator(); i.hasNext();)
+		// the entries whose expiration time has passed (is before now) expire
+		for(DTNHost host : neighborTimers.advance(Math.nextDown(time)))
 		{
-			Map.Entry<DTNHost, NeighborEntry> e = i.next();
-			if(e.getValue().isExpired(time)) {
-				i.remove();
+			NeighborEntry entry = neighborhood.get(host);
+			if(entry.isExpired(time))
+				neighborhood.remove(host);
+			else // refreshed
+				entry.timer = neighborTimers.schedule(host, entry.expirationTime);
+		}
+	}
+	
+	/**
+	 * Stores the entry of a neighbor and (re)schedules the expiry of the entry
+	 * @param host The neighbor
+	 * @param entry The new entry of the neighbor
+	 */
+	protected void putNeighbor(DTNHost host, NeighborEntry entry)
+	{
+		NeighborEntry old = neighborhood.put(host, entry);
+		if(old != null)
+		{
+			if(old.expirationTime == entry.expirationTime)
+			{
+				entry.timer = old.timer;
+				return;
 			}
+			neighborTimers.cancel(old.timer);
 		}
+		entry.timer = neighborTimers.schedule(host, entry.expirationTime);
 	}
 	
 	private void updateMessageCollection(double time)
 	{
-		for(Message m : this.getMessageCollection())
+		// the looks whose timeout has passed (is before now) expire
+		for(Message m : lookTimers.advance(Math.nextDown(time)))
 		{
+			lookTimersById.remove(m.getId());
 			expireLook(m, time);
 		}
 	}
@@ -723,6 +819,7 @@ public class VRRouter extends ActiveRouter
 		private Coord knownLocation;
 		private double locationTimestamp; //time at which the neighbor was at knownlocation
 		private int expirationTime;
+		private TimerWheel.Timer<DTNHost> timer;
 		
 		NeighborEntry(Coord location, double timestampOfLocation)
 		{
@@ -27,7 +27,11 @@ import core.*;
  * </p>
  * 
  * <p>This computation is done at regular intervals instead of every time the 
- * global and local centrality measures are requested.</p> 
+ * global and local centrality measures are requested. The epochs are 
+ * consecutive intervals of the simulation time and the unique encounters of 
+ * the most recent epochs are counted as the contacts end (see 
+ * {@link ContactEpochs}), so the computation doesn't go through the contact 
+ * history.</p> 
  * 
  * <p>This class looks for three settings:
  * <ul>
@@ -87,6 +91,9 @@ public class CWindowCentrality implements Centrality
 	/** timestamp of last local centrality computation */ 
 	protected int lastLocalComputationTime;
 	
+	/** unique encounters in the most recent epochs */
+	protected ContactEpochs epochs;
+	
 	public CWindowCentrality(Settings s) 
 	{
 		if(s.contains(CENTRALITY_WINDOW_SETTING))
@@ -105,55 +112,18 @@ public class CWindowCentrality implements Centrality
 		// start of the sim
 		this.lastGlobalComputationTime = this.lastLocalComputationTime = 
 			-COMPUTE_INTERVAL;
+		this.epochs = new ContactEpochs(CENTRALITY_TIME_WINDOW, EPOCH_COUNT);
 	}
 	
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	public double getGlobalCentrality(Map<DTNHost, ContactHistory> connHistory)
 	{
 		if(SimClock.getIntTime() - this.lastGlobalComputationTime < COMPUTE_INTERVAL)
 			return globalCentrality;
 		
-		// initialize
-		int[] centralities = new int[EPOCH_COUNT];
-		int epoch, timeNow = SimClock.getIntTime();
-		Map<Integer, Set<DTNHost>> nodesCountedInEpoch = 
-			new HashMap<Integer, Set<DTNHost>>();
-		
-		for(int i = 0; i < EPOCH_COUNT; i++)
-			nodesCountedInEpoch.put(i, new HashSet<DTNHost>());
-		
-		/*
-		 * For each node, loop through connection history until we crossed all
-		 * the epochs we need to cover
-		 */
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
-		{
-			DTNHost h = entry.getKey();
-			for(Duration d : entry.getValue())
-			{
-				int timePassed = (int)(timeNow - d.end);
-				
-				// if we reached the end of the last epoch, we're done with this node
-				if(timePassed > CENTRALITY_TIME_WINDOW * EPOCH_COUNT)
-					break;
-				
-				// compute the epoch this contact belongs to
-				epoch = timePassed / CENTRALITY_TIME_WINDOW;
-				
-				// Only consider each node once per epoch
-				Set<DTNHost> nodesAlreadyCounted = nodesCountedInEpoch.get(epoch);
-				if(nodesAlreadyCounted.contains(h))
-					continue;
-				
-				// increment the degree for the given epoch
-				centralities[epoch]++;
-				nodesAlreadyCounted.add(h);
-			}
-		}
-		
 		// compute and return average node degree
-		int sum = 0;
+		int sum = 0, currentEpoch = this.epochs.getEpoch(SimClock.getTime());
 		for(int i = 0; i < EPOCH_COUNT; i++) 
-			sum += centralities[i];
+			sum += this.epochs.getCount(currentEpoch - i);
 		this.globalCentrality = ((double)sum) / EPOCH_COUNT;
 		
 		this.lastGlobalComputationTime = SimClock.getIntTime();
@@ -161,68 +131,30 @@ public class CWindowCentrality implements Centrality
 		return this.globalCentrality;
 	}
 
-	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory,
+	public double getLocalCentrality(Map<DTNHost, ContactHistory> connHistory,
 			CommunityDetection cd)
 	{
 		if(SimClock.getIntTime() - this.lastLocalComputationTime < COMPUTE_INTERVAL)
 			return localCentrality;
 		
-		// centralities will hold the count of unique encounters in each epoch
-		int[] centralities = new int[EPOCH_COUNT];
-		int epoch, timeNow = SimClock.getIntTime();
-		Map<Integer, Set<DTNHost>> nodesCountedInEpoch = 
-			new HashMap<Integer, Set<DTNHost>>();
-		
-		for(int i = 0; i < EPOCH_COUNT; i++)
-			nodesCountedInEpoch.put(i, new HashSet<DTNHost>());
-		
 		// local centrality only considers nodes in the local community
 		Set<DTNHost> community = cd.getLocalCommunity();
 		
-		/*
-		 * For each node, loop through connection history until we crossed all
-		 * the epochs we need to cover
-		 */
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
-		{
-			DTNHost h = entry.getKey();
-			
-			// if the host isn't in the local community, we don't consider it
-			if(!community.contains(h))
-				continue;
-			
-			for(Duration d : entry.getValue())
-			{
-				int timePassed = (int)(timeNow - d.end);
-				
-				// if we reached the end of the last epoch, we're done with this node
-				if(timePassed > CENTRALITY_TIME_WINDOW * EPOCH_COUNT)
-					break;
-				
-				// compute the epoch this contact belongs to
-				epoch = timePassed / CENTRALITY_TIME_WINDOW;
-				
-				// Only consider each node once per epoch
-				Set<DTNHost> nodesAlreadyCounted = nodesCountedInEpoch.get(epoch);
-				if(nodesAlreadyCounted.contains(h))
-					continue;
-				
-				// increment the degree for the given epoch
-				centralities[epoch]++;
-				nodesAlreadyCounted.add(h);
-			}
-		}
-		
 		// compute and return average node degree
-		int sum = 0;
+		int sum = 0, currentEpoch = this.epochs.getEpoch(SimClock.getTime());
 		for(int i = 0; i < EPOCH_COUNT; i++) 
-			sum += centralities[i];
+			sum += this.epochs.getCount(currentEpoch - i, community);
 		this.localCentrality = ((double)sum) / EPOCH_COUNT; 
 		
 		this.lastLocalComputationTime = SimClock.getIntTime();
 		
 		return this.localCentrality;
 	}
+	
+	public void connectionLost(DTNHost peer, ContactHistory history)
+	{
+		this.epochs.addContact(peer, history.getLastEnd());
+	}
 
 	public Centrality replicate()
 	{
@@ -41,7 +41,7 @@ public interface Centrality
 	 * @param connHistory Contact History on which to compute centrality
 	 * @return Value corresponding to the global centrality
 	 */
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory);
+	public double getGlobalCentrality(Map<DTNHost, ContactHistory> connHistory);
 	
 	/**
 	 * Returns the computed local centrality based on the connection history and
@@ -51,9 +51,20 @@ public interface Centrality
 	 * @param cd CommunityDetection object that knows the local community
 	 * @return Value corresponding to the local centrality
 	 */
-	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory, 
+	public double getLocalCentrality(Map<DTNHost, ContactHistory> connHistory, 
 			CommunityDetection cd);
 	
+	/**
+	 * Informs the object that a contact with a peer ended and was added to the
+	 * end of the contact history. Centralities that are computed over time windows
+	 * can count the contacts incrementally here instead of going through the
+	 * whole connection history on every computation.
+	 * 
+	 * @param peer Host that is now disconnected from this host
+	 * @param history Contact history with the peer
+	 */
+	public void connectionLost(DTNHost peer, ContactHistory history);
+	
 	/**
 	 * Duplicates a Centrality object. This is a convention of the ONE to easily
 	 * create multiple instances of objects based on defined settings. 
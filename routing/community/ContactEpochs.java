@@ -0,0 +1,228 @@
+/*
+ * @(#)ContactEpochs.java
+ *
+ * Copyright 2010 by University of Pittsburgh, released under GPLv3.
+ *
+ */
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>Counts the unique contacts of a node in consecutive time intervals
+ * (epochs) of equal length. Epoch <code>e</code> covers the simulation times
+ * <code>[e * epochLength, (e+1) * epochLength)</code> and a contact belongs to
+ * the epoch in which it ended. The hosts met in each epoch are stored in a
+ * {@link HostSet}, so the window based centrality algorithms can read the
+ * degree of the node in an epoch (within the whole network or within the local
+ * community) without going through the contact history.</p>
+ *
+ * <p>Only the most recent epochs are kept in a ring buffer (or all epochs if
+ * the number of epochs is unlimited).</p>
+ *
+ * @author PJ Dillon, University of Pittsburgh
+ * @see Centrality
+ */
+public class ContactEpochs
+{
+	/** Length of each epoch */
+	protected int epochLength;
+	/** Number of epochs to keep (0 = all) */
+	protected int nrofEpochs;
+	/** Hosts met in each epoch (ring buffer or all the epochs) */
+	protected List<HostSet> epochs;
+	/** Index of the latest epoch that has a slot in the buffer */
+	protected int latestEpoch;
+	/** Sum of the unique contact counts of all the epochs kept */
+	protected int totalCount;
+
+	/**
+	 * Creates a new, empty, ContactEpochs
+	 *
+	 * @param epochLength Length of each epoch (in seconds)
+	 * @param nrofEpochs Number of most recent epochs to keep or 0 to keep all
+	 */
+	public ContactEpochs(int epochLength, int nrofEpochs)
+	{
+		this.epochLength = Math.max(1, epochLength);
+		this.nrofEpochs = nrofEpochs;
+		this.epochs = new ArrayList<HostSet>();
+		this.latestEpoch = -1;
+		this.totalCount = 0;
+	}
+
+	/**
+	 * Returns the epoch the given time belongs to
+	 *
+	 * @param time The simulation time
+	 * @return Index of the epoch
+	 */
+	public int getEpoch(double time)
+	{
+		return (int)(time / this.epochLength);
+	}
+
+	/**
+	 * Records a contact with the given host that ended at the given time.
+	 * Contacts must be recorded in the order they ended.
+	 *
+	 * @param peer The host that was met
+	 * @param endTime Time when the contact ended
+	 */
+	public void addContact(DTNHost peer, double endTime)
+	{
+		int epoch = getEpoch(endTime);
+		if(epoch < getOldestEpoch())
+			return; // too old to be kept
+
+		advanceTo(epoch);
+		if(getSlot(epoch).add(peer))
+			this.totalCount++;
+	}
+
+	/**
+	 * Makes sure the given epoch (and the ones before it) have a slot in the
+	 * buffer, reusing the slots of the epochs that drop out of the buffer
+	 *
+	 * @param epoch Index of the epoch
+	 */
+	protected void advanceTo(int epoch)
+	{
+		while(this.latestEpoch < epoch)
+		{
+			this.latestEpoch++;
+			if(this.nrofEpochs == 0 || this.epochs.size() < this.nrofEpochs)
+			{
+				this.epochs.add(new HostSet());
+				continue;
+			}
+
+			// reuse the slot of the oldest epoch
+			HostSet slot = getSlot(this.latestEpoch);
+			this.totalCount -= slot.size();
+			slot.clear();
+
+			if(epoch - this.latestEpoch >= this.nrofEpochs)
+			{
+				// the whole buffer is cleared, skip the epochs in between
+				for(HostSet s : this.epochs)
+				{
+					this.totalCount -= s.size();
+					s.clear();
+				}
+				this.latestEpoch = epoch;
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the oldest epoch that is kept in the buffer
+	 *
+	 * @return Index of the oldest epoch
+	 */
+	protected int getOldestEpoch()
+	{
+		if(this.nrofEpochs == 0)
+			return 0;
+		return Math.max(0, this.latestEpoch - this.nrofEpochs + 1);
+	}
+
+	/**
+	 * Returns the hosts met in the given epoch (which must have a slot)
+	 *
+	 * @param epoch Index of the epoch
+	 * @return The set of hosts of the epoch
+	 */
+	protected HostSet getSlot(int epoch)
+	{
+		if(this.nrofEpochs == 0)
+			return this.epochs.get(epoch);
+		return this.epochs.get(epoch % this.nrofEpochs);
+	}
+
+	/**
+	 * Returns true if the given epoch is kept in the buffer
+	 *
+	 * @param epoch Index of the epoch
+	 * @return true if the epoch has a slot
+	 */
+	protected boolean hasSlot(int epoch)
+	{
+		return epoch >= getOldestEpoch() && epoch <= this.latestEpoch;
+	}
+
+	/**
+	 * Returns the number of unique hosts met in the given epoch
+	 *
+	 * @param epoch Index of the epoch
+	 * @return The number of unique contacts in the epoch (0 if the epoch is
+	 * not kept)
+	 */
+	public int getCount(int epoch)
+	{
+		return hasSlot(epoch) ? getSlot(epoch).size() : 0;
+	}
+
+	/**
+	 * Returns the number of unique hosts of the community met in the given
+	 * epoch
+	 *
+	 * @param epoch Index of the epoch
+	 * @param community The hosts to consider
+	 * @return The number of unique contacts with the community in the epoch
+	 */
+	public int getCount(int epoch, Set<DTNHost> community)
+	{
+		return hasSlot(epoch) ? countIn(getSlot(epoch), community) : 0;
+	}
+
+	/**
+	 * Returns the sum of the unique contact counts of all the epochs kept
+	 *
+	 * @return The sum of the unique contact counts
+	 */
+	public int getTotalCount()
+	{
+		return this.totalCount;
+	}
+
+	/**
+	 * Returns the number of unique hosts met in the given range of epochs
+	 * (a host met in several epochs is counted once)
+	 *
+	 * @param fromEpoch Index of the first epoch of the range
+	 * @param toEpoch Index of the last epoch of the range
+	 * @param community The hosts to consider or null to consider all hosts
+	 * @return The number of unique contacts in the epochs
+	 */
+	public int getUnionCount(int fromEpoch, int toEpoch, Set<DTNHost> community)
+	{
+		HostSet union = new HostSet();
+		for(int e = Math.max(fromEpoch, getOldestEpoch());
+				e <= Math.min(toEpoch, this.latestEpoch); e++)
+			union.addAll(getSlot(e));
+
+		return community == null ? union.size() : countIn(union, community);
+	}
+
+	/**
+	 * Counts the hosts of the set that are also in the community
+	 *
+	 * @param hosts The set of hosts
+	 * @param community The community
+	 * @return Size of the intersection of the sets
+	 */
+	protected static int countIn(HostSet hosts, Set<DTNHost> community)
+	{
+		if(community instanceof HostSet)
+			return hosts.intersectionSize((HostSet)community);
+
+		int count = 0;
+		for(DTNHost h : hosts)
+			if(community.contains(h))
+				count++;
+		return count;
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * @(#)ContactHistory.java
+ *
+ * Copyright 2010 by University of Pittsburgh, released under GPLv3.
+ *
+ */
+package routing.community;
+
+import java.util.*;
+
+/**
+ * <p>Compact record of the contacts between a host and one of its peers. The
+ * start and end times of the contacts are stored as pairs in one growable
+ * primitive array, in the order the contacts ended, together with a prefix sum
+ * of the contact durations. The total contact duration (needed by the
+ * familiar set thresholds of the community detection algorithms) is therefore
+ * available in constant time.</p>
+ *
+ * <p>The history also keeps the start time of the currently open contact (if
+ * any), so the decision engines don't need separate maps for the start
+ * times. Old contacts can be trimmed from the history without affecting the
+ * total contact duration.</p>
+ *
+ * @author PJ Dillon, University of Pittsburgh
+ */
+public class ContactHistory
+{
+	/** Initial number of contacts the arrays can hold */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/** Start and end times of the contacts; contact i is at 2*i and 2*i+1 */
+	private double[] times;
+	/** Total duration of the contacts up to and including contact i (and all
+	 * the trimmed contacts) */
+	private double[] cumulative;
+	/** Number of contacts in the history */
+	private int size;
+	/** Total duration of the contacts that have been trimmed */
+	private double trimmedDuration;
+	/** Start time of the open contact or NaN if there is no open contact */
+	private double openStart;
+	/** True if a contact has ended (even if it wasn't recorded) */
+	private boolean hasEnded;
+
+	/**
+	 * Creates a new, empty, contact history
+	 */
+	public ContactHistory()
+	{
+		this.times = new double[2 * INITIAL_CAPACITY];
+		this.cumulative = new double[INITIAL_CAPACITY];
+		this.size = 0;
+		this.trimmedDuration = 0;
+		this.openStart = Double.NaN;
+		this.hasEnded = false;
+	}
+
+	/**
+	 * Marks the start of a new (open) contact
+	 *
+	 * @param time Time the contact started
+	 */
+	public void connectionStarted(double time)
+	{
+		this.openStart = time;
+	}
+
+	/**
+	 * Returns true if the history has an open contact
+	 *
+	 * @return true if a contact has started but not ended
+	 */
+	public boolean isConnected()
+	{
+		return !Double.isNaN(this.openStart);
+	}
+
+	/**
+	 * Ends the open contact. The contact is added to the history if it has a
+	 * positive duration (see {@link #hasEndedContacts()}).
+	 *
+	 * @param time Time the contact ended
+	 * @return true if a contact was added to the history
+	 */
+	public boolean connectionEnded(double time)
+	{
+		double start = this.openStart;
+		this.openStart = Double.NaN;
+		if(Double.isNaN(start))
+			return false;
+
+		this.hasEnded = true;
+		if(time - start <= 0)
+			return false;
+
+		addContact(start, time);
+		return true;
+	}
+
+	/**
+	 * Adds a contact to the end of the history
+	 *
+	 * @param start Start time of the contact
+	 * @param end End time of the contact
+	 */
+	public void addContact(double start, double end)
+	{
+		if(this.size == this.cumulative.length)
+		{
+			this.times = Arrays.copyOf(this.times, 4 * this.size);
+			this.cumulative = Arrays.copyOf(this.cumulative, 2 * this.size);
+		}
+
+		this.times[2 * this.size] = start;
+		this.times[2 * this.size + 1] = end;
+		this.cumulative[this.size] = getTotalDuration() + (end - start);
+		this.size++;
+		this.hasEnded = true;
+	}
+
+	/**
+	 * Returns true if any contact with the peer has ended. Unlike 
+	 * <code>size() > 0</code>, this includes the zero-length contacts that
+	 * were not added to the history.
+	 *
+	 * @return true if a contact has ended
+	 */
+	public boolean hasEndedContacts()
+	{
+		return this.hasEnded;
+	}
+
+	/**
+	 * Returns the number of contacts in the history
+	 *
+	 * @return the number of contacts
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns the start time of a contact
+	 *
+	 * @param i Index of the contact (0...size()-1, oldest first)
+	 * @return the start time of the contact
+	 */
+	public double getStart(int i)
+	{
+		return this.times[2 * i];
+	}
+
+	/**
+	 * Returns the end time of a contact
+	 *
+	 * @param i Index of the contact (0...size()-1, oldest first)
+	 * @return the end time of the contact
+	 */
+	public double getEnd(int i)
+	{
+		return this.times[2 * i + 1];
+	}
+
+	/**
+	 * Returns the end time of the latest contact
+	 *
+	 * @return the end time of the latest contact or NaN if the history is
+	 * empty
+	 */
+	public double getLastEnd()
+	{
+		return this.size > 0 ? getEnd(this.size - 1) : Double.NaN;
+	}
+
+	/**
+	 * Returns the total duration of all the contacts (including the trimmed
+	 * ones)
+	 *
+	 * @return the total contact duration
+	 */
+	public double getTotalDuration()
+	{
+		return this.size > 0 ? this.cumulative[this.size - 1] :
+			this.trimmedDuration;
+	}
+
+	/**
+	 * Returns the total duration of the contacts that ended after the given
+	 * time. Contacts that have been trimmed are not included.
+	 *
+	 * @param time The time
+	 * @return the total duration of the contacts that ended after the time
+	 */
+	public double getDurationSince(double time)
+	{
+		int first = firstEndingAfter(time);
+		double before = first > 0 ? this.cumulative[first - 1] :
+			this.trimmedDuration;
+		return getTotalDuration() - before;
+	}
+
+	/**
+	 * Returns the index of the first contact that ended after the given time
+	 *
+	 * @param time The time
+	 * @return Index of the contact or size() if there are no such contacts
+	 */
+	private int firstEndingAfter(double time)
+	{
+		int low = 0, high = this.size;
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if(getEnd(mid) > time)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Removes the contacts that ended at or before the given time, except for
+	 * the latest contact. The durations of the removed contacts are still
+	 * included in the total duration.
+	 *
+	 * @param time The time
+	 */
+	public void trim(double time)
+	{
+		int removed = Math.min(firstEndingAfter(time), this.size - 1);
+		if(removed <= 0)
+			return;
+
+		this.trimmedDuration = this.cumulative[removed - 1];
+		this.size -= removed;
+		System.arraycopy(this.times, 2 * removed, this.times, 0, 2 * this.size);
+		System.arraycopy(this.cumulative, removed, this.cumulative, 0,
+				this.size);
+	}
+
+	public String toString()
+	{
+		return "ContactHistory with " + this.size + " contacts, total " +
+			getTotalDuration();
+	}
+}
@@ -50,22 +50,31 @@ public class DegreeCentrality implements Centrality
 	public DegreeCentrality(Settings s){}
 	public DegreeCentrality(DegreeCentrality proto){}
 	
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	public double getGlobalCentrality(Map<DTNHost, ContactHistory> connHistory)
 	{
-		return connHistory.size();
+		int centrality = 0;
+		for(ContactHistory history : connHistory.values())
+		{
+			if(history.hasEndedContacts()) // skip peers of the first, open, contact
+				centrality++;
+		}
+		return centrality;
 	}
 
-	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory,
+	public double getLocalCentrality(Map<DTNHost, ContactHistory> connHistory,
 			CommunityDetection cd)
 	{
 		int centrality = 0;
-		for(DTNHost h : connHistory.keySet())
+		for(Map.Entry<DTNHost, ContactHistory> entry : connHistory.entrySet())
 		{
-			if(cd.isHostInCommunity(h))
+			if(entry.getValue().hasEndedContacts() && 
+					cd.isHostInCommunity(entry.getKey()))
 				centrality++;
 		}
 		return centrality;
 	}
+	
+	public void connectionLost(DTNHost peer, ContactHistory history) {}
 
 	public Centrality replicate()
 	{
@@ -35,6 +35,14 @@ import routing.RoutingDecisionEngine;
  * community and propagated towards more locally central nodes or the 
  * destination until delivered.<p>
  * 
+ * <p>The connection history of each peer is a {@link ContactHistory} that 
+ * only keeps the contacts that ended within the last 
+ * {@link #HISTORY_WINDOW_SETTING} seconds. The total duration of the older 
+ * contacts is still kept, so the community detection algorithms see the 
+ * cumulative contact duration. The centrality algorithms count the contacts
+ * as they end (see 
+ * {@link Centrality#connectionLost(DTNHost, ContactHistory)}).</p>
+ * 
  * <pre>
  * \@inproceedings{1374652,
  *	Address = {New York, NY, USA},
@@ -62,13 +70,17 @@ public class DistributedBubbleRap
 	public static final String COMMUNITY_ALG_SETTING = "communityDetectAlg";
 	/** Centrality Computation Algorithm to employ -setting id {@value} */
 	public static final String CENTRALITY_ALG_SETTING = "centralityAlg";
+	/** How long (in seconds) contacts are kept as separate entries in the 
+	 * connection history -setting id {@value}. Default: 6 hours */
+	public static final String HISTORY_WINDOW_SETTING = "historyWindow";
 	
-	protected Map<DTNHost, Double> startTimestamps;
-	protected Map<DTNHost, List<Duration>> connHistory;
+	protected Map<DTNHost, ContactHistory> connHistory;
 	
 	protected CommunityDetection community;
 	protected Centrality centrality;
 	
+	protected double historyWindow = 21600;
+	
 	/**
 	 * Constructs a DistributedBubbleRap Decision Engine based upon the settings
 	 * defined in the Settings object parameter. The class looks for the class
@@ -90,6 +102,9 @@ public class DistributedBubbleRap
 				s.createIntializedObject(s.getSetting(CENTRALITY_ALG_SETTING));
 		else
 			this.centrality = new SWindowCentrality(s);
+		
+		if(s.contains(HISTORY_WINDOW_SETTING))
+			this.historyWindow = s.getDouble(HISTORY_WINDOW_SETTING);
 	}
 	
 	/**
@@ -102,8 +117,8 @@ public class DistributedBubbleRap
 	{
 		this.community = proto.community.replicate();
 		this.centrality = proto.centrality.replicate();
-		startTimestamps = new HashMap<DTNHost, Double>();
-		connHistory = new HashMap<DTNHost, List<Duration>>();
+		this.historyWindow = proto.historyWindow;
+		connHistory = new HashMap<DTNHost, ContactHistory>();
 	}
 
 	public void connectionUp(DTNHost thisHost, DTNHost peer){}
@@ -119,38 +134,47 @@ public class DistributedBubbleRap
 		DTNHost myHost = con.getOtherNode(peer);
 		DistributedBubbleRap de = this.getOtherDecisionEngine(peer);
 		
-		this.startTimestamps.put(peer, SimClock.getTime());
-		de.startTimestamps.put(myHost, SimClock.getTime());
+		this.getHistory(peer).connectionStarted(SimClock.getTime());
+		de.getHistory(myHost).connectionStarted(SimClock.getTime());
 		
 		this.community.newConnection(myHost, peer, de.community);
 	}
 	
 	public void connectionDown(DTNHost thisHost, DTNHost peer)
 	{
-		double time = startTimestamps.get(peer);
 		double etime = SimClock.getTime();
+		ContactHistory history = getHistory(peer);
 		
-		// Find or create the connection history list
-		List<Duration> history;
-		if(!connHistory.containsKey(peer))
+		// add this connection to the history
+		if(history.connectionEnded(etime))
 		{
-			history = new LinkedList<Duration>();
-			connHistory.put(peer, history);
+			centrality.connectionLost(peer, history);
+			history.trim(etime - historyWindow);
 		}
-		else
-			history = connHistory.get(peer);
-		
-		// add this connection to the list
-		if(etime - time > 0)
-			history.add(new Duration(time, etime));
 		
 		CommunityDetection peerCD = this.getOtherDecisionEngine(peer).community;
 		
 		// inform the community detection object that a connection was lost.
 		// The object might need the whole connection history at this point.
 		community.connectionLost(thisHost, peer, peerCD, history);
-		
-		startTimestamps.remove(peer);
+	}
+	
+	/**
+	 * Returns the connection history of a peer (creates a new history if this
+	 * is the first connection with the peer)
+	 * 
+	 * @param peer The peer
+	 * @return The connection history of the peer
+	 */
+	protected ContactHistory getHistory(DTNHost peer)
+	{
+		ContactHistory history = connHistory.get(peer);
+		if(history == null)
+		{
+			history = new ContactHistory();
+			connHistory.put(peer, history);
+		}
+		return history;
 	}
 
 	public boolean newMessage(Message m)
@@ -0,0 +1,271 @@
+/*
+ * @(#)HostSet.java
+ *
+ * Copyright 2010 by University of Pittsburgh, released under GPLv3.
+ *
+ */
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>A Set of hosts stored as a bit set indexed by host address. The community
+ * detection algorithms repeatedly compute the sizes of intersections and
+ * unions of familiar sets and local communities. With the bit representation
+ * these are computed a word (64 hosts) at a time using population counts, and
+ * merging two sets is a bitwise OR of their words.</p>
+ *
+ * <p>The hosts of all the sets are looked up from a shared table indexed by
+ * host address, so a set only stores its bits. The hosts are iterated in the
+ * order of their addresses.</p>
+ */
+public class HostSet extends AbstractSet<DTNHost>
+{
+	/** Number of address bits in one word */
+	private static final int WORD_BITS = 64;
+
+	/** Hosts that have been added to any set, indexed by address */
+	private static DTNHost[] hostsByAddress;
+
+	/** The bits of the set; bit (address % 64) of word (address / 64) */
+	private long[] words;
+	/** Number of hosts in the set */
+	private int size;
+
+	static
+	{
+		DTNSim.registerForReset(HostSet.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Creates a new, empty, HostSet
+	 */
+	public HostSet()
+	{
+		this.words = new long[1];
+		this.size = 0;
+	}
+
+	/**
+	 * Creates a new HostSet containing the same hosts as the given set
+	 *
+	 * @param other The set whose hosts are copied
+	 */
+	public HostSet(HostSet other)
+	{
+		this.words = other.words.clone();
+		this.size = other.size;
+	}
+
+	/**
+	 * Resets the shared host table
+	 */
+	public static void reset()
+	{
+		hostsByAddress = new DTNHost[WORD_BITS];
+	}
+
+	/**
+	 * Makes sure the words array can hold the given address
+	 *
+	 * @param address The address
+	 */
+	private void ensureCapacity(int address)
+	{
+		int wordIndex = address / WORD_BITS;
+		if(wordIndex >= this.words.length)
+			this.words = Arrays.copyOf(this.words,
+					Math.max(wordIndex + 1, this.words.length * 2));
+	}
+
+	@Override
+	public boolean add(DTNHost h)
+	{
+		int address = h.getAddress();
+		if(address >= hostsByAddress.length)
+			hostsByAddress = Arrays.copyOf(hostsByAddress,
+					Math.max(address + 1, hostsByAddress.length * 2));
+		hostsByAddress[address] = h;
+
+		ensureCapacity(address);
+		long bit = 1L << (address % WORD_BITS);
+		int wordIndex = address / WORD_BITS;
+		if((this.words[wordIndex] & bit) != 0)
+			return false;
+
+		this.words[wordIndex] |= bit;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Returns true if the set contains a host with the given address
+	 *
+	 * @param address Address of the host
+	 * @return true if the host is in the set
+	 */
+	private boolean containsAddress(int address)
+	{
+		int wordIndex = address / WORD_BITS;
+		return wordIndex < this.words.length &&
+			(this.words[wordIndex] & (1L << (address % WORD_BITS))) != 0;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		if(!(o instanceof DTNHost))
+			return false;
+		return containsAddress(((DTNHost)o).getAddress());
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		if(!contains(o))
+			return false;
+
+		removeAddress(((DTNHost)o).getAddress());
+		return true;
+	}
+
+	/**
+	 * Removes the host with the given address (that must be in the set)
+	 *
+	 * @param address Address of the host
+	 */
+	private void removeAddress(int address)
+	{
+		this.words[address / WORD_BITS] &= ~(1L << (address % WORD_BITS));
+		this.size--;
+	}
+
+	/**
+	 * Adds all the hosts of the given collection to this set. If the
+	 * collection is a HostSet, the sets are merged a word at a time.
+	 */
+	@Override
+	public boolean addAll(Collection<? extends DTNHost> c)
+	{
+		if(!(c instanceof HostSet))
+			return super.addAll(c);
+
+		HostSet other = (HostSet)c;
+		if(other.words.length > this.words.length)
+			this.words = Arrays.copyOf(this.words, other.words.length);
+
+		int oldSize = this.size;
+		this.size = 0;
+		for(int i = 0; i < this.words.length; i++)
+		{
+			if(i < other.words.length)
+				this.words[i] |= other.words[i];
+			this.size += Long.bitCount(this.words[i]);
+		}
+		return this.size != oldSize;
+	}
+
+	/**
+	 * Computes the number of hosts that are in both this and the given set
+	 *
+	 * @param other The other set
+	 * @return Size of the intersection of the sets
+	 */
+	public int intersectionSize(HostSet other)
+	{
+		int count = 0;
+		int n = Math.min(this.words.length, other.words.length);
+		for(int i = 0; i < n; i++)
+			count += Long.bitCount(this.words[i] & other.words[i]);
+		return count;
+	}
+
+	/**
+	 * Computes the number of hosts that are in either this or the given set
+	 *
+	 * @param other The other set
+	 * @return Size of the union of the sets
+	 */
+	public int unionSize(HostSet other)
+	{
+		return this.size + other.size - intersectionSize(other);
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill(this.words, 0);
+		this.size = 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Returns an iterator over the hosts in the order of their addresses
+	 */
+	@Override
+	public Iterator<DTNHost> iterator()
+	{
+		return new Iterator<DTNHost>()
+		{
+			/** Address of the next host (or -1 if there are no more hosts) */
+			private int next = nextAddress(0);
+			/** Address of the host returned last (or -1) */
+			private int last = -1;
+
+			public boolean hasNext()
+			{
+				return next >= 0;
+			}
+
+			public DTNHost next()
+			{
+				if(next < 0)
+					throw new NoSuchElementException();
+				last = next;
+				next = nextAddress(next + 1);
+				return hostsByAddress[last];
+			}
+
+			public void remove()
+			{
+				if(last < 0)
+					throw new IllegalStateException();
+				if(containsAddress(last))
+					removeAddress(last);
+				last = -1;
+			}
+		};
+	}
+
+	/**
+	 * Returns the smallest address in the set that is equal to or larger than
+	 * the given address
+	 *
+	 * @param from The address to start from
+	 * @return The address or -1 if there are no such addresses
+	 */
+	private int nextAddress(int from)
+	{
+		int wordIndex = from / WORD_BITS;
+		if(wordIndex >= this.words.length)
+			return -1;
+
+		long word = this.words[wordIndex] & (-1L << (from % WORD_BITS));
+		while(true)
+		{
+			if(word != 0)
+				return wordIndex * WORD_BITS + Long.numberOfTrailingZeros(word);
+			if(++wordIndex == this.words.length)
+				return -1;
+			word = this.words[wordIndex];
+		}
+	}
+}
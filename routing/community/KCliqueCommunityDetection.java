@@ -35,6 +35,9 @@ import core.*;
  * nodes that also share K nodes in common with the local community, which then
  * should be added to it as well. 
  * </p>
+ * <p>The sets are stored as {@link HostSet}s, so the size of an intersection is
+ * computed a word (64 hosts) at a time.
+ * </p>
  * <pre>
  * \@inproceedings{1366929,
  * Address = {New York, NY, USA},
@@ -58,9 +61,9 @@ public class KCliqueCommunityDetection implements CommunityDetection
 	public static final String K_SETTING = "K";
 	public static final String FAMILIAR_SETTING = "familiarThreshold";
 	
-	protected Set<DTNHost> familiarSet;
-	protected Set<DTNHost> localCommunity;
-	protected Map<DTNHost, Set<DTNHost>> familiarsOfMyCommunity;
+	protected HostSet familiarSet;
+	protected HostSet localCommunity;
+	protected Map<DTNHost, HostSet> familiarsOfMyCommunity;
 	
 	protected double k;
 	protected double familiarThreshold;
@@ -75,9 +78,9 @@ public class KCliqueCommunityDetection implements CommunityDetection
 	{
 		this.k = proto.k;
 		this.familiarThreshold = proto.familiarThreshold;
-		familiarSet = new HashSet<DTNHost>();
-		localCommunity = new HashSet<DTNHost>();
-		this.familiarsOfMyCommunity = new HashMap<DTNHost, Set<DTNHost>>();
+		familiarSet = new HostSet();
+		localCommunity = new HostSet();
+		this.familiarsOfMyCommunity = new HashMap<DTNHost, HostSet>();
 	}
 	
 	public void newConnection(DTNHost myHost, DTNHost peer, 
@@ -115,10 +118,7 @@ public class KCliqueCommunityDetection implements CommunityDetection
 			 */
 			
 			// compute the intersection size
-			int count=0;
-			for(DTNHost h : scd.familiarSet)
-				if(this.localCommunity.contains(h))
-					count++;
+			int count = scd.familiarSet.intersectionSize(this.localCommunity);
 			
 			// if peer familiar has K nodes in common with this host's local community
 			if(count >= this.k - 1)
@@ -133,10 +133,8 @@ public class KCliqueCommunityDetection implements CommunityDetection
 					if(h == myHost || h == peer) continue;
 					
 					// compute intersection size
-					count = 0;
-					for(DTNHost i : scd.familiarsOfMyCommunity.get(h))
-						if(this.localCommunity.contains(i))
-							count++;
+					count = scd.familiarsOfMyCommunity.get(h).intersectionSize(
+							this.localCommunity);
 					
 					// add nodes if there are K in common with this local community
 					if(count >= this.k - 1)
@@ -152,10 +150,7 @@ public class KCliqueCommunityDetection implements CommunityDetection
 		// Repeat process from peer's perspective
 		if(!scd.localCommunity.contains(myHost))
 		{
-			int count = 0;
-			for(DTNHost h : this.familiarSet)
-				if(scd.localCommunity.contains(h))
-					count++;
+			int count = this.familiarSet.intersectionSize(scd.localCommunity);
 			if(count >= scd.k - 1)
 			{
 				scd.localCommunity.add(myHost);
@@ -164,10 +159,8 @@ public class KCliqueCommunityDetection implements CommunityDetection
 				for(DTNHost h : this.localCommunity)
 				{
 					if(h == myHost || h == peer) continue;
-					count = 0;
-					for(DTNHost i : this.familiarsOfMyCommunity.get(h))
-						if(scd.localCommunity.contains(i))
-							count++;
+					count = this.familiarsOfMyCommunity.get(h).intersectionSize(
+							scd.localCommunity);
 					if(count >= scd.k - 1)
 					{
 						scd.localCommunity.add(h);
@@ -180,18 +173,12 @@ public class KCliqueCommunityDetection implements CommunityDetection
 	}
 	
 	public void connectionLost(DTNHost myHost, DTNHost peer, 
-			CommunityDetection peerCD, List<Duration> history)
+			CommunityDetection peerCD, ContactHistory history)
 	{
 		if(this.familiarSet.contains(peer)) return;
 		
-		// Compute cummulative contact duration with this peer
-		Iterator<Duration> i = history.iterator();
-		double time = 0;
-		while(i.hasNext())
-		{
-			Duration d = i.next();
-			time += d.end - d.start;
-		}
+		// Cummulative contact duration with this peer
+		double time = history.getTotalDuration();
 		
 		// If cummulative duration is greater than threshold, add
 		if(time > this.familiarThreshold)
@@ -50,18 +50,14 @@ public class LABELDecisionEngine
 	
 	protected CommunityDetection community;
 	
-	/** 
-	 * Records the times at which each open connection started. Used to compute
-	 * the duration of each connection (needed by the community detection algs).
-	 */
-	protected Map<DTNHost, Double> startTimestamps;
-	
 	/**
 	 * A record of the entire connection history of this node for the whole 
 	 * simulation. As each connection goes down, a new entry is added into the 
-	 * list for the peer that just disconnected. 
+	 * history of the peer that just disconnected. The history also records the
+	 * time at which the open connection started (used to compute the duration 
+	 * of each connection, needed by the community detection algs). 
 	 */
-	protected Map<DTNHost, List<Duration>> connHistory;
+	protected Map<DTNHost, ContactHistory> connHistory;
 	
 	/**
 	 * Initializes the decision engine using the given Settings object, extracting
@@ -91,8 +87,7 @@ public class LABELDecisionEngine
 	{
 		this.community = proto.community.replicate();
 		
-		startTimestamps = new HashMap<DTNHost, Double>();
-		connHistory = new HashMap<DTNHost, List<Duration>>();
+		connHistory = new HashMap<DTNHost, ContactHistory>();
 	}
 
 	public void connectionUp(DTNHost thisHost, DTNHost peer){}
@@ -103,28 +98,32 @@ public class LABELDecisionEngine
 	 */
 	public void connectionDown(DTNHost thisHost, DTNHost peer)
 	{
-		double time = startTimestamps.get(peer);
-		double etime = SimClock.getTime();
-		
-		// Find or create the connection history list
-		List<Duration> history;
-		if(!connHistory.containsKey(peer))
-		{
-			history = new LinkedList<Duration>();
-			connHistory.put(peer, history);
-		}
-		else
-			history = connHistory.get(peer);
+		ContactHistory history = getHistory(peer);
 		
 		// add the new connection to the history
-		if(etime - time > 0)
-			history.add(new Duration(time, etime));
+		history.connectionEnded(SimClock.getTime());
 		
 		// Inform the community detection object
 		CommunityDetection peerCD = this.getOtherDecisionEngine(peer).community;
 		community.connectionLost(thisHost, peer, peerCD, history);
-		
-		startTimestamps.remove(peer);
+	}
+	
+	/**
+	 * Returns the connection history of a peer (creates a new history if this
+	 * is the first connection with the peer)
+	 * 
+	 * @param peer The peer
+	 * @return The connection history of the peer
+	 */
+	protected ContactHistory getHistory(DTNHost peer)
+	{
+		ContactHistory history = connHistory.get(peer);
+		if(history == null)
+		{
+			history = new ContactHistory();
+			connHistory.put(peer, history);
+		}
+		return history;
 	}
 
 	/**
@@ -138,8 +137,8 @@ public class LABELDecisionEngine
 		
 		this.community.newConnection(myHost, peer, de.community);
 
-		this.startTimestamps.put(peer, SimClock.getTime());
-		de.startTimestamps.put(myHost, SimClock.getTime());
+		this.getHistory(peer).connectionStarted(SimClock.getTime());
+		de.getHistory(myHost).connectionStarted(SimClock.getTime());
 	}
 
 	public boolean newMessage(Message m) {return true;}
@@ -12,9 +12,9 @@ public class ModularityCommunityDetection implements CommunityDetection
 	public static final String GAMMA_SETTING = "gamma";
 	public static final String FAMILIAR_SETTING = "familiarThreshold";
 	
-	protected Set<DTNHost> familiarSet;
-	protected Set<DTNHost> localCommunity;
-	protected Map<DTNHost, Set<DTNHost>> familiarsOfMyCommunity;
+	protected HostSet familiarSet;
+	protected HostSet localCommunity;
+	protected Map<DTNHost, HostSet> familiarsOfMyCommunity;
 	
 	protected double k;
 	//protected double gamma;
@@ -32,9 +32,9 @@ public class ModularityCommunityDetection implements CommunityDetection
 		//this.lambda = proto.lambda;
 //		this.gamma = proto.gamma;
 		this.familiarThreshold = proto.familiarThreshold;
-		familiarSet = new HashSet<DTNHost>();
-		localCommunity = new HashSet<DTNHost>();
-		this.familiarsOfMyCommunity = new HashMap<DTNHost, Set<DTNHost>>();
+		familiarSet = new HostSet();
+		localCommunity = new HostSet();
+		this.familiarsOfMyCommunity = new HashMap<DTNHost, HostSet>();
 	}
 	
 	public void newConnection(DTNHost myHost, DTNHost peer, CommunityDetection peerCD)
@@ -46,10 +46,10 @@ public class ModularityCommunityDetection implements CommunityDetection
 		scd.localCommunity.add(peer);
 		
 		// Update local approximation of the familiar sets of my community from peer info
-		for(Map.Entry<DTNHost, Set<DTNHost>> entry : this.familiarsOfMyCommunity.entrySet())
+		for(Map.Entry<DTNHost, HostSet> entry : this.familiarsOfMyCommunity.entrySet())
 		{
 			DTNHost hostInMyCommunity = entry.getKey();
-			Set<DTNHost> approxFamiliarSet = entry.getValue();
+			HostSet approxFamiliarSet = entry.getValue();
 			if(scd.familiarsOfMyCommunity.containsKey(hostInMyCommunity))
 				approxFamiliarSet.addAll(scd.familiarsOfMyCommunity.get(hostInMyCommunity));
 		}
@@ -60,10 +60,7 @@ public class ModularityCommunityDetection implements CommunityDetection
 			/*
 			 * 
 			 */
-			int count=0;
-			for(DTNHost h : scd.familiarSet)
-				if(this.localCommunity.contains(h))
-					count++;
+			int count = scd.familiarSet.intersectionSize(this.localCommunity);
 			//if(count > 0)
 				//System.out.println(myHost.toString() + " count: " + count + " peerSize: " + peerFsize);
 			if(count >= this.k - 1)
@@ -73,10 +70,8 @@ public class ModularityCommunityDetection implements CommunityDetection
 				
 				for(DTNHost h : scd.localCommunity)
 				{
-					count = 0;
-					for(DTNHost i : scd.familiarsOfMyCommunity.get(h))
-						if(this.localCommunity.contains(i))
-							count++;
+					count = scd.familiarsOfMyCommunity.get(h).intersectionSize(
+							this.localCommunity);
 					if(count >= this.k - 1)
 					{
 						this.localCommunity.add(h);
@@ -88,10 +83,7 @@ public class ModularityCommunityDetection implements CommunityDetection
 		
 		if(!scd.localCommunity.contains(myHost))
 		{
-			int count = 0;
-			for(DTNHost h : this.familiarSet)
-				if(scd.localCommunity.contains(h))
-					count++;
+			int count = this.familiarSet.intersectionSize(scd.localCommunity);
 			if(count >= scd.k - 1)
 			{
 				//System.out.println(peer.toString() + " adding " + myHost + " to Local Community");
@@ -99,10 +91,8 @@ public class ModularityCommunityDetection implements CommunityDetection
 				
 				for(DTNHost h : this.localCommunity)
 				{
-					count = 0;
-					for(DTNHost i : this.familiarsOfMyCommunity.get(h))
-						if(scd.localCommunity.contains(i))
-							count++;
+					count = this.familiarsOfMyCommunity.get(h).intersectionSize(
+							scd.localCommunity);
 					if(count >= scd.k - 1)
 					{
 						scd.localCommunity.add(h);
@@ -114,17 +104,11 @@ public class ModularityCommunityDetection implements CommunityDetection
 	}
 	
 	public void connectionLost(DTNHost myHost, DTNHost peer, 
-			CommunityDetection peerCD, List<Duration> history)
+			CommunityDetection peerCD, ContactHistory history)
 	{
 		if(this.familiarSet.contains(peer)) return;
 		
-		Iterator<Duration> i = history.iterator();
-		double time = 0;
-		while(i.hasNext())
-		{
-			Duration d = i.next();
-			time += d.end - d.start;
-		}
+		double time = history.getTotalDuration();
 		
 		if(time > this.familiarThreshold)
 		{
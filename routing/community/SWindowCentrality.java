@@ -6,7 +6,6 @@
  */
 package routing.community;
 
-import java.util.List;
 import java.util.Map;
 
 import core.*;
@@ -24,6 +23,12 @@ import core.*;
  * is set to be the default interal but can be configured in the settings file.
  * </p>
  * 
+ * <p>The time window is divided into {@link #SLOTS_PER_WINDOW} sub-windows 
+ * and the unique encounters of each sub-window are counted as the contacts end
+ * (see {@link ContactEpochs}). The degree is the number of unique hosts met in
+ * the sub-windows that overlap the time window, so contacts that ended at most
+ * one sub-window before the start of the window may also be counted.</p>
+ * 
  * <p>This class looks for two settings:
  * <ul>
  * <li><strong>timeWindow</strong> &ndash; the duration of the time interval 
@@ -65,6 +70,8 @@ public class SWindowCentrality implements Centrality
 	protected static int COMPUTE_INTERVAL = 600; // seconds, i.e. 10 minutes
 	/** Width of each time interval in which to count the node's degree */
 	protected static int CENTRALITY_TIME_WINDOW = 21600; // 6 hours
+	/** Number of sub-windows the time window is divided into */
+	public static final int SLOTS_PER_WINDOW = 6;
 	
 	/** Saved global centrality from last computation */
 	protected double globalCentrality;
@@ -76,6 +83,9 @@ public class SWindowCentrality implements Centrality
 	/** timestamp of last local centrality computation */ 
 	protected int lastLocalComputationTime;
 	
+	/** unique encounters in the most recent sub-windows */
+	protected ContactEpochs epochs;
+	
 	public SWindowCentrality(Settings s)
 	{
 		if(s.contains(CENTRALITY_WINDOW_SETTING))
@@ -88,52 +98,46 @@ public class SWindowCentrality implements Centrality
 		// start of the sim
 		this.lastGlobalComputationTime = this.lastLocalComputationTime = 
 				-COMPUTE_INTERVAL;
+		this.epochs = new ContactEpochs(CENTRALITY_TIME_WINDOW / SLOTS_PER_WINDOW,
+				SLOTS_PER_WINDOW + 1);
 	}
 	
-	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	public double getGlobalCentrality(Map<DTNHost, ContactHistory> connHistory)
 	{
 		if(SimClock.getIntTime() - this.lastGlobalComputationTime <COMPUTE_INTERVAL)
 			return globalCentrality;
 		
-		int centrality = 0;
-		int timeNow = SimClock.getIntTime();
-		
-		// For each host, check whether its last contact time was within window
-		// no need to loop through the entire contact history
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
-		{
-			List<Duration> l = entry.getValue();
-			if(timeNow - l.get(l.size()-1).end < CENTRALITY_TIME_WINDOW)
-				centrality++;
-		}
+		// count the unique hosts met in the sub-windows covering the window
+		double timeNow = SimClock.getTime();
+		int centrality = this.epochs.getUnionCount(
+				this.epochs.getEpoch(timeNow - CENTRALITY_TIME_WINDOW), 
+				this.epochs.getEpoch(timeNow), null);
 		
 		this.lastGlobalComputationTime = SimClock.getIntTime();
 		return this.globalCentrality = centrality;
 	}
 
-	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory, 
+	public double getLocalCentrality(Map<DTNHost, ContactHistory> connHistory, 
 			CommunityDetection cd)
 	{
 		if(SimClock.getIntTime() - this.lastLocalComputationTime < COMPUTE_INTERVAL)
 			return localCentrality;
 		
-		int centrality = 0;
-		int timeNow = SimClock.getIntTime();
-		
-		// same check as for global centrality, but must ensure host is in local
-		// community too
-		for(Map.Entry<DTNHost, List<Duration>> entry : connHistory.entrySet())
-		{
-			List<Duration> l = entry.getValue();
-			if(timeNow - l.get(l.size() - 1).end > CENTRALITY_TIME_WINDOW)
-				break;
-			if(cd.isHostInCommunity(entry.getKey()))
-				centrality++;
-		}
+		// same count as for global centrality, but only for the hosts in the 
+		// local community
+		double timeNow = SimClock.getTime();
+		int centrality = this.epochs.getUnionCount(
+				this.epochs.getEpoch(timeNow - CENTRALITY_TIME_WINDOW), 
+				this.epochs.getEpoch(timeNow), cd.getLocalCommunity());
 		
 		this.lastLocalComputationTime = SimClock.getIntTime();
 		return this.localCentrality = centrality;
 	}
+	
+	public void connectionLost(DTNHost peer, ContactHistory history)
+	{
+		this.epochs.addContact(peer, history.getLastEnd());
+	}
 
 	public Centrality replicate()
 	{
@@ -26,6 +26,10 @@ import core.*;
  * should be part of the same local community. 
  * </p>
  * 
+ * <p>The familiar set and the local community are stored as {@link HostSet}s
+ * so the set intersections and unions are computed with bitwise operations.
+ * </p>
+ * 
  * <pre>
  * \@inproceedings{1366929,
  * Address = {New York, NY, USA},
@@ -61,8 +65,8 @@ public class SimpleCommunityDetection implements CommunityDetection
 	 */
 	public static final String FAMILIAR_SETTING = "familiarThreshold";
 	
-	protected Set<DTNHost> familiarSet;
-	protected Set<DTNHost> localCommunity;
+	protected HostSet familiarSet;
+	protected HostSet localCommunity;
 	
 	protected double lambda;
 	protected double gamma;
@@ -86,8 +90,8 @@ public class SimpleCommunityDetection implements CommunityDetection
 		this.lambda = proto.lambda;
 		this.gamma = proto.gamma;
 		this.familiarThreshold = proto.familiarThreshold;
-		familiarSet = new HashSet<DTNHost>();
-		localCommunity = new HashSet<DTNHost>();
+		familiarSet = new HostSet();
+		localCommunity = new HostSet();
 	}
 	
 	public void newConnection(DTNHost myHost, DTNHost peer, 
@@ -109,10 +113,8 @@ public class SimpleCommunityDetection implements CommunityDetection
 			 */
 			
 			// compute set intersection
-			int count=0, peerFsize = scd.familiarSet.size();
-			for(DTNHost h : scd.familiarSet)
-				if(this.localCommunity.contains(h))
-					count++;
+			int count = scd.familiarSet.intersectionSize(this.localCommunity);
+			int peerFsize = scd.familiarSet.size();
 			
 			// add peer to local community if enough nodes in common
 			if(addPeerToMyLocal = ((double)count)/peerFsize > this.lambda)
@@ -127,10 +129,8 @@ public class SimpleCommunityDetection implements CommunityDetection
 		if(!scd.localCommunity.contains(myHost))
 		{
 			// compute set intersection
-			int count = 0, myFsize = this.familiarSet.size();
-			for(DTNHost h : this.familiarSet)
-				if(scd.localCommunity.contains(h))
-					count++;
+			int count = this.familiarSet.intersectionSize(scd.localCommunity);
+			int myFsize = this.familiarSet.size();
 			
 			// add this host to local community of peer if enough nodes in common
 			if(addMeToPeerLocal = ((double)count)/myFsize > scd.lambda)
@@ -142,25 +142,17 @@ public class SimpleCommunityDetection implements CommunityDetection
 		// Test for conditions when the local communities should be merged
 		if(addPeerToMyLocal || addMeToPeerLocal)
 		{
-			// Compute set union
-			Set<DTNHost> commUnion = new HashSet<DTNHost>(this.localCommunity.size() +
-					scd.localCommunity.size() + 2);
-			commUnion.addAll(this.localCommunity);
-			commUnion.addAll(scd.localCommunity);
-			
-			// compute intersection of the two local communities
+			// compute intersection and union of the two local communities
 			// (the result is the same from both node's perspective)
-			int count = 0;
-			for(DTNHost h : this.localCommunity)
-				if(scd.localCommunity.contains(h))
-					count++;
+			int count = this.localCommunity.intersectionSize(scd.localCommunity);
+			int unionSize = this.localCommunity.unionSize(scd.localCommunity);
 			
 			// merge communities if enough nodes are common
-			if(addPeerToMyLocal && count > this.gamma * commUnion.size())
+			if(addPeerToMyLocal && count > this.gamma * unionSize)
 			{
 				this.localCommunity.addAll(scd.localCommunity);
 			}
-			if(addMeToPeerLocal && count > scd.gamma * commUnion.size())
+			if(addMeToPeerLocal && count > scd.gamma * unionSize)
 			{
 				scd.localCommunity.addAll(this.localCommunity);
 			}
@@ -168,7 +160,7 @@ public class SimpleCommunityDetection implements CommunityDetection
 	}
 	
 	public void connectionLost(DTNHost myHost, DTNHost peer, 
-			CommunityDetection peerCD, List<Duration> history)
+			CommunityDetection peerCD, ContactHistory history)
 	{
 		if(this.familiarSet.contains(peer)) return;
 		
@@ -177,14 +169,8 @@ public class SimpleCommunityDetection implements CommunityDetection
 		 * contact duration exceeds the familiarThreshold
 		 */
 		
-		// Compute total contact duration
-		Iterator<Duration> i = history.iterator();
-		double time = 0;
-		while(i.hasNext())
-		{
-			Duration d = i.next();
-			time += d.end - d.start;
-		}
+		// Total contact duration
+		double time = history.getTotalDuration();
 		
 		// Add peer to familiar set if needed (and by extension to the local comm.)
 		if(time > this.familiarThreshold)
@@ -0,0 +1,171 @@
+package routing.contentpubsub;
+
+import java.util.*;
+
+import routing.pubsub.PublicationTable;
+import core.*;
+
+/**
+ * <p>Set of content filters indexed by the publication they match. Filters
+ * that match a single publication name ({@link NameContentFilter}s) are
+ * stored in per publication lists, indexed by the interned publication
+ * index, so finding the filters matching a message is a single lookup
+ * instead of calling {@link ContentFilter#match(Message)} for every filter.
+ * Other kinds of filters are kept in a separate list and still have to be
+ * matched one by one.</p>
+ */
+public class FilterIndex extends AbstractSet<ContentFilter>
+{
+	/** All the filters of the set */
+	private Set<ContentFilter> filters;
+	/** Name filters by the index of their publication (null if none) */
+	private List<List<ContentFilter>> byPublication;
+	/** Filters that are not name filters */
+	private List<ContentFilter> otherFilters;
+
+	/**
+	 * Creates a new, empty, FilterIndex
+	 */
+	public FilterIndex()
+	{
+		this.filters = new HashSet<ContentFilter>();
+		this.byPublication = new ArrayList<List<ContentFilter>>();
+		this.otherFilters = new ArrayList<ContentFilter>();
+	}
+
+	@Override
+	public boolean add(ContentFilter filter)
+	{
+		if(!this.filters.add(filter))
+			return false;
+
+		if(filter instanceof NameContentFilter)
+		{
+			int pub = ((NameContentFilter)filter).getPublication();
+			while(this.byPublication.size() <= pub)
+				this.byPublication.add(null);
+			List<ContentFilter> list = this.byPublication.get(pub);
+			if(list == null)
+			{
+				list = new ArrayList<ContentFilter>(1);
+				this.byPublication.set(pub, list);
+			}
+			list.add(filter);
+		}
+		else
+			this.otherFilters.add(filter);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		if(!this.filters.remove(o))
+			return false;
+		removeFromIndex((ContentFilter)o);
+		return true;
+	}
+
+	/**
+	 * Removes a filter from the publication lists
+	 *
+	 * @param filter The filter to remove
+	 */
+	private void removeFromIndex(ContentFilter filter)
+	{
+		if(filter instanceof NameContentFilter)
+			this.byPublication.get(
+					((NameContentFilter)filter).getPublication()).remove(filter);
+		else
+			this.otherFilters.remove(filter);
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return this.filters.contains(o);
+	}
+
+	@Override
+	public int size()
+	{
+		return this.filters.size();
+	}
+
+	@Override
+	public void clear()
+	{
+		this.filters.clear();
+		this.byPublication.clear();
+		this.otherFilters.clear();
+	}
+
+	@Override
+	public Iterator<ContentFilter> iterator()
+	{
+		final Iterator<ContentFilter> i = this.filters.iterator();
+		return new Iterator<ContentFilter>()
+		{
+			private ContentFilter last;
+
+			public boolean hasNext()
+			{
+				return i.hasNext();
+			}
+
+			public ContentFilter next()
+			{
+				this.last = i.next();
+				return this.last;
+			}
+
+			public void remove()
+			{
+				i.remove();
+				removeFromIndex(this.last);
+			}
+		};
+	}
+
+	/**
+	 * Returns the name filters of a publication. The returned list must not
+	 * be modified.
+	 *
+	 * @param pub Index of the publication
+	 * @return The name filters of the publication (possibly an empty list)
+	 */
+	public List<ContentFilter> getFilters(int pub)
+	{
+		if(pub < 0 || pub >= this.byPublication.size() ||
+				this.byPublication.get(pub) == null)
+			return Collections.emptyList();
+		return this.byPublication.get(pub);
+	}
+
+	/**
+	 * Returns the filters that are not name filters (and which must be
+	 * matched one by one). The returned list must not be modified.
+	 *
+	 * @return The filters that aren't indexed by publication
+	 */
+	public List<ContentFilter> getOtherFilters()
+	{
+		return this.otherFilters;
+	}
+
+	/**
+	 * Returns true if any of the filters matches the message
+	 *
+	 * @param m The message
+	 * @return true if the message matches a filter
+	 */
+	public boolean matches(Message m)
+	{
+		if(!getFilters(PublicationTable.getIndex(m)).isEmpty())
+			return true;
+		for(ContentFilter f : this.otherFilters)
+			if(f.match(m))
+				return true;
+		return false;
+	}
+}
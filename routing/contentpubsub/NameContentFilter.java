@@ -1,5 +1,6 @@
 package routing.contentpubsub;
 
+import routing.pubsub.PublicationTable;
 import core.Message;
 
 public class NameContentFilter implements ContentFilter
@@ -7,10 +8,13 @@ public class NameContentFilter implements ContentFilter
 	public static final String PUBNAME_PROP = "PubSub-pubname";
 	
 	private String nameToMatch;
+	/** Interned index of the name (see {@link PublicationTable}) */
+	private int publication;
 	
 	public NameContentFilter(String name)
 	{
 		nameToMatch = name;
+		publication = PublicationTable.getIndex(name);
 	}
 	
 	public boolean match(Message m)
@@ -19,5 +23,23 @@ public class NameContentFilter implements ContentFilter
 		
 		return nameToMatch.equals(msgName);
 	}
+	
+	/**
+	 * Returns the publication name this filter matches
+	 * @return the publication name
+	 */
+	public String getName()
+	{
+		return nameToMatch;
+	}
+	
+	/**
+	 * Returns the interned index of the publication name this filter matches
+	 * @return the publication index
+	 */
+	public int getPublication()
+	{
+		return publication;
+	}
 
 }
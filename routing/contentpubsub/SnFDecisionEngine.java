@@ -3,6 +3,7 @@ package routing.contentpubsub;
 import java.util.*;
 
 import routing.*;
+import routing.pubsub.PublicationTable;
 import core.*;
 
 public class SnFDecisionEngine implements RoutingDecisionEngine
@@ -29,21 +30,25 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 	protected int initialNrofCopies;
 	protected double transitivityTimerThreshold;
 	protected Map<ContentFilter, Double> forwardingDecisionTable;
+	/** The filters of the forwarding table, indexed by publication */
+	protected FilterIndex forwardingFilters;
 	
-	protected Set<ContentFilter> mySubscriptions;
+	protected FilterIndex mySubscriptions;
 	
 	public SnFDecisionEngine(Settings s)
 	{
 		this.initialNrofCopies = s.getInt(NROF_COPIES_S);
 		
 		forwardingDecisionTable = new HashMap<ContentFilter, Double>();
-		mySubscriptions = new HashSet<ContentFilter>(2);
+		forwardingFilters = new FilterIndex();
+		mySubscriptions = new FilterIndex();
 	}
 	
 	public SnFDecisionEngine(SnFDecisionEngine snf)
 	{
 		this.forwardingDecisionTable = new HashMap<ContentFilter, Double>();
-		this.mySubscriptions = new HashSet<ContentFilter>(2);
+		this.forwardingFilters = new FilterIndex();
+		this.mySubscriptions = new FilterIndex();
 	}
 	
 	public RoutingDecisionEngine replicate()
@@ -79,7 +84,7 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 				System.out.println("Host: " + thisHost.getAddress() + " adding transitive value " +
 						(neighborvalue - timediff) + " from host " + peer.getAddress() + " with value: " +
 						neighborvalue);
-				this.forwardingDecisionTable.put(filter, neighborvalue - timediff);
+				this.setValueForFilter(filter, neighborvalue - timediff);
 			}
 		}
 		
@@ -112,7 +117,7 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 			{
 				ContentFilter filter = (ContentFilter) m.getProperty(FILTER_PROP);
 				mySubscriptions.add(filter);
-				forwardingDecisionTable.put(filter, SimClock.getTime());
+				setValueForFilter(filter, SimClock.getTime());
 				return false;
 			}
 			
@@ -140,15 +145,17 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 		
 		//double maxValue = 0.0;
 		
-		for(Map.Entry<ContentFilter, Double> entry : de.forwardingDecisionTable.entrySet())
+		// the name filters of the message's publication match by definition
+		for(ContentFilter filter : 
+			de.forwardingFilters.getFilters(PublicationTable.getIndex(m)))
 		{
-			ContentFilter filter = entry.getKey();
-			double	neighborValue = de.getValueForFilter(filter),
-							myValue = this.getValueForFilter(filter);
-			if(filter.match(m) &&  neighborValue - transitivityTimerThreshold > myValue)
-			{
+			if(shouldForwardFor(filter, de))
+				return true;
+		}
+		for(ContentFilter filter : de.forwardingFilters.getOtherFilters())
+		{
+			if(filter.match(m) && shouldForwardFor(filter, de))
 				return true;
-			}
 		}
 		return false;
 		// If the other host has never seen the publication, don't send
@@ -212,10 +219,17 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 	
 	public boolean isFinalDest(Message m, DTNHost aHost)
 	{
-		for(ContentFilter f : mySubscriptions)
-			if(f.match(m))
-				return true;
-		return false;
+		return mySubscriptions.matches(m);
+	}
+	
+	/**
+	 * Returns true if the peer's timer value for the filter is enough above 
+	 * ours to forward a message matching the filter to it
+	 */
+	private boolean shouldForwardFor(ContentFilter filter, SnFDecisionEngine de)
+	{
+		return de.getValueForFilter(filter) - transitivityTimerThreshold > 
+			this.getValueForFilter(filter);
 	}
 	
 	private SnFDecisionEngine getOtherCSnFDecisionEngine(DTNHost h)
@@ -236,6 +250,12 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 			return 0.0;
 	}
 	
+	private void setValueForFilter(ContentFilter filter, double value)
+	{
+		forwardingDecisionTable.put(filter, value);
+		forwardingFilters.add(filter);
+	}
+	
 	/*private boolean isSubscriber(ContentFilter f)
 	{
 		return mySubscriptions.contains(f);
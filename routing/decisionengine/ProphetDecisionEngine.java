@@ -1,14 +1,13 @@
 package routing.decisionengine;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 import core.*;
 import routing.DecisionEngineRouter;
 import routing.MessageRouter;
 import routing.RoutingDecisionEngine;
+import routing.prophet.DeliveryPredictabilities;
 
 public class ProphetDecisionEngine implements RoutingDecisionEngine
 {
@@ -23,11 +22,10 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 	
 	protected double beta;
 	protected double pinit;
-	protected double lastAgeUpdate; 
 	protected int 	 secondsInTimeUnit;
 	
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private DeliveryPredictabilities preds;
 	
 	public ProphetDecisionEngine(Settings s)
 	{
@@ -46,8 +44,7 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 		else
 			secondsInTimeUnit = DEFAULT_UNIT;
 		
-		preds = new HashMap<DTNHost, Double>();
-		this.lastAgeUpdate = 0.0;
+		preds = new DeliveryPredictabilities(GAMMA, secondsInTimeUnit);
 	}
 	
 	public ProphetDecisionEngine(ProphetDecisionEngine de)
@@ -55,8 +52,7 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 		beta = de.beta;
 		pinit = de.pinit;
 		secondsInTimeUnit = de.secondsInTimeUnit;
-		preds = new HashMap<DTNHost, Double>();
-		this.lastAgeUpdate = de.lastAgeUpdate;
+		preds = new DeliveryPredictabilities(GAMMA, secondsInTimeUnit);
 	}
 	
 	public RoutingDecisionEngine replicate()
@@ -72,35 +68,32 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 	{
 		DTNHost myHost = con.getOtherNode(peer);
 		ProphetDecisionEngine de = getOtherProphetDecisionEngine(peer);
-		Set<DTNHost> hostSet = new HashSet<DTNHost>(this.preds.size() 
+		List<DTNHost> hosts = new ArrayList<DTNHost>(this.preds.size() 
 				+ de.preds.size());
-		hostSet.addAll(this.preds.keySet());
-		hostSet.addAll(de.preds.keySet());
-		
-		this.agePreds();
-		de.agePreds();
+		for(int i = 0; i < this.preds.size(); i++)
+			hosts.add(this.preds.getHost(i));
+		for(int i = 0; i < de.preds.size(); i++)
+			if(!this.preds.contains(de.preds.getHost(i)))
+				hosts.add(de.preds.getHost(i));
 		
 		// Update preds for this connection
 		double myOldValue = this.getPredFor(peer),
 					peerOldValue = de.getPredFor(myHost),
 					myPforHost = myOldValue + (1 - myOldValue) * pinit,
 					peerPforMe = peerOldValue + (1 - peerOldValue) * de.pinit;
-		preds.put(peer, myPforHost);
-		de.preds.put(myHost, peerPforMe);
+		preds.set(peer, myPforHost);
+		de.preds.set(myHost, peerPforMe);
 		
 		// Update transistivities
-		for(DTNHost h : hostSet)
+		for(DTNHost h : hosts)
 		{
-			myOldValue = 0.0;
-			peerOldValue = 0.0;
-			
-			if(preds.containsKey(h)) myOldValue = preds.get(h);
-			if(de.preds.containsKey(h)) peerOldValue = de.preds.get(h);
+			myOldValue = preds.get(h);
+			peerOldValue = de.preds.get(h);
 			
 			if(h != myHost)
-				preds.put(h, myOldValue + ( 1 - myOldValue) * myPforHost * peerOldValue * beta);
+				preds.set(h, myOldValue + ( 1 - myOldValue) * myPforHost * peerOldValue * beta);
 			if(h != peer)
-				de.preds.put(h, peerOldValue + ( 1 - peerOldValue) * peerPforMe * myOldValue * beta);
+				de.preds.set(h, peerOldValue + ( 1 - peerOldValue) * peerPforMe * myOldValue * beta);
 		}
 	}
 
@@ -140,24 +133,6 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 		return (ProphetDecisionEngine) ((DecisionEngineRouter)otherRouter).getDecisionEngine();
 	}
 	
-	private void agePreds()
-	{
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-		secondsInTimeUnit;
-	
-		if (timeDiff == 0) {
-			return;
-		}
-	
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet())
-		{
-			e.setValue(e.getValue()*mult);
-		}
-	
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-	
 	/**
 	 * Returns the current prediction (P) value for a host or 0 if entry for
 	 * the host doesn't exist.
@@ -165,12 +140,6 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 	 * @return the current P value
 	 */
 	private double getPredFor(DTNHost host) {
-		agePreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host); // the table ages the value before getting
 	}
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.maxprop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.DTNSim;
+
+/**
+ * Set of the IDs of the messages that are known to have reached their final
+ * destination (acknowledged messages) for the MaxProp router module.
+ * The IDs are mapped to global integer indexes and stored in a bit set.
+ * Every set also keeps a log of the indexes in the order they were added and
+ * remembers how much of the other sets' logs it has already merged, so when
+ * two sets are merged again, only the acknowledgements added after the
+ * previous merge need to be checked.
+ */
+public class AckedMessages {
+	/** Initial size of the log */
+	private static final int INIT_LOG_SIZE = 16;
+
+	/** Global indexes of the acknowledged message IDs */
+	private static Map<String, Integer> indexes;
+	/** Acknowledged message IDs by their global index */
+	private static List<String> ids;
+
+	/** Indexes of the acknowledged messages */
+	private BitSet acked;
+	/** Indexes of the acknowledged messages in the order they were added */
+	private int[] log;
+	/** Number of entries in the log */
+	private int logSize;
+	/** Sizes of the other sets' logs at the time they were last merged to
+	 * this set (i.e., version vector of the merged sets) */
+	private Map<AckedMessages, Integer> mergedVersions;
+
+	static {
+		DTNSim.registerForReset(AckedMessages.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Creates a new empty set of acknowledged messages
+	 */
+	public AckedMessages() {
+		this.acked = new BitSet();
+		this.log = new int[INIT_LOG_SIZE];
+		this.logSize = 0;
+		this.mergedVersions = new HashMap<AckedMessages, Integer>();
+	}
+
+	/**
+	 * Returns the global index of a message ID (assigns a new index for new
+	 * IDs)
+	 * @param id The message ID
+	 * @return The index of the ID
+	 */
+	private static int getIndex(String id) {
+		Integer index = indexes.get(id);
+		if (index == null) {
+			index = ids.size();
+			indexes.put(id, index);
+			ids.add(id);
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a message ID to the set
+	 * @param id The ID of the acknowledged message
+	 * @return True if the ID was not in the set already, false if it was
+	 */
+	public boolean add(String id) {
+		return add(getIndex(id));
+	}
+
+	/**
+	 * Adds a message index to the set
+	 * @param index The global index of the acknowledged message
+	 * @return True if the index was not in the set already, false if it was
+	 */
+	private boolean add(int index) {
+		if (this.acked.get(index)) {
+			return false;
+		}
+
+		this.acked.set(index);
+		if (this.logSize == this.log.length) {
+			this.log = Arrays.copyOf(this.log, this.logSize * 2);
+		}
+		this.log[this.logSize++] = index;
+		return true;
+	}
+
+	/**
+	 * Returns true if the message ID is in the set
+	 * @param id The message ID
+	 * @return True if the message is known to be acknowledged
+	 */
+	public boolean contains(String id) {
+		Integer index = indexes.get(id);
+		return index != null && this.acked.get(index);
+	}
+
+	/**
+	 * Adds all the IDs of another set to this set. Only the IDs that were
+	 * added to the other set after it was last merged to this set are
+	 * checked.
+	 * @param other The other set
+	 * @return IDs of the messages that were not in this set before
+	 */
+	public List<String> addAllFrom(AckedMessages other) {
+		List<String> newIds = new ArrayList<String>();
+		Integer merged = this.mergedVersions.get(other);
+		int start = (merged == null ? 0 : merged);
+		int end = other.logSize;
+
+		for (int i=start; i<end; i++) {
+			int index = other.log[i];
+			if (add(index)) {
+				newIds.add(ids.get(index));
+			}
+		}
+
+		this.mergedVersions.put(other, end);
+		return newIds;
+	}
+
+	/**
+	 * Returns the number of IDs in the set
+	 * @return the number of IDs in the set
+	 */
+	public int size() {
+		return this.logSize;
+	}
+
+	/**
+	 * Resets the global message ID indexes
+	 */
+	public static void reset() {
+		indexes = new HashMap<String, Integer>();
+		ids = new ArrayList<String>();
+	}
+
+	public String toString() {
+		return "AckedMessages with " + this.logSize + " IDs";
+	}
+}
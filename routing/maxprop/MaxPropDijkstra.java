@@ -4,36 +4,52 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * Node distances are stored in arrays indexed by the node addresses and the
+ * unvisited nodes are kept in an indexed binary heap (that supports
+ * decreasing the key of a node). Full cost trees can be cached and reused
+ * until the meeting probabilities change.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the node arrays */
+	private static final int INIT_SIZE = 16;
+	/** Heap index value for nodes that are not in the heap */
+	private static final int NOT_IN_HEAP = -1;
+	/** Heap index value for visited nodes */
+	private static final int VISITED = -2;
+
+	/** Node distances from the source node (valid only for nodes whose
+	 * search number is the current search's number) */
+	private double[] distances;
+	/** Heap indexes of the nodes (or {@link #NOT_IN_HEAP}/{@link #VISITED}) */
+	private int[] heapIndexes;
+	/** Number of the search where the node was last discovered */
+	private int[] searchNumbers;
+	/** Number of the current search */
+	private int searchNumber;
+	/** Binary min-heap of unvisited nodes discovered so far */
+	private int[] heap;
+	/** Number of nodes in the heap */
+	private int heapSize;
+	/** Nodes visited in the current search in the order they were visited */
+	private int[] visitedNodes;
+	/** Number of visited nodes in the current search */
+	private int nrofVisited;
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
-	
+	/** Cached cost trees (distances to all nodes) mapped by source node */
+	private Map<Integer, double[]> costTrees;
+	/** Version of the probabilities the cached cost trees were built with */
+	private int costTreeVersion;
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,28 +57,32 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.distances = new double[INIT_SIZE];
+		this.heapIndexes = new int[INIT_SIZE];
+		this.searchNumbers = new int[INIT_SIZE];
+		this.heap = new int[INIT_SIZE];
+		this.visitedNodes = new int[INIT_SIZE];
+		this.searchNumber = 0;
+		this.costTrees = new HashMap<Integer, double[]>();
 	}
 
 	/**
 	 * Initializes a new search with the first hop router node
 	 * @param firstHop The first hop router node
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-		
+	private void initWith(int firstHop) {
+		this.searchNumber++;
+		this.heapSize = 0;
+		this.nrofVisited = 0;
+
 		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		setDistance(firstHop, 0);
 	}
-	
+
 	/**
-	 * Calculates total costs to the given set of target nodes. The cost to 
+	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes. 
+	 * come up as the next contact of the nodes.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
@@ -70,155 +90,259 @@ public class MaxPropDijkstra {
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
 		int nrofNodesToFind = to.size();
-		
+
 		initWith(from);
-		Integer node = null;
-		
+
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
+		while (this.heapSize > 0) {
+			int node = poll();
 			if (to.contains(node)) {
 				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
+				distMap.put(node, this.distances[node]);
 				nrofNodesToFind--;
 				if (nrofNodesToFind == 0) {
 					break; // all requested nodes found
 				}
-			} 
-			
-			visited.add(node); // mark the node as visited
+			}
+
 			relax(node);       // add/update neighbor nodes' distances
 		}
-			
+
 		return distMap;
 	}
-	
+
+	/**
+	 * Returns the total cost from a node to another node (see
+	 * {@link #getCosts(Integer, Set)}). The costs from the source node to all
+	 * nodes are calculated at once and cached until the version of the
+	 * probabilities changes.
+	 * @param from The index (address) of the start node
+	 * @param to The index (address) of the destination node
+	 * @param version Version of the meeting probabilities; must be changed
+	 * every time any of the meeting probabilities change
+	 * @return The cost to the destination or Double.MAX_VALUE if there is
+	 * no known path to the destination
+	 */
+	public double getCost(int from, int to, int version) {
+		if (version != this.costTreeVersion) {
+			this.costTrees.clear(); // probabilities changed -> recalculate
+			this.costTreeVersion = version;
+		}
+
+		double[] tree = this.costTrees.get(from);
+		if (tree == null) {
+			tree = calcCostTree(from);
+			this.costTrees.put(from, tree);
+		}
+
+		if (to < tree.length) {
+			return tree[to];
+		}
+		else {
+			return INFINITY;
+		}
+	}
+
+	/**
+	 * Calculates the costs from a node to all the nodes reachable from it
+	 * @param from The index (address) of the start node
+	 * @return The costs indexed by the node addresses
+	 * ({@link #INFINITY} for nodes that can't be reached)
+	 */
+	private double[] calcCostTree(int from) {
+		initWith(from);
+		int maxNode = 0;
+
+		while (this.heapSize > 0) {
+			int node = poll();
+			maxNode = Math.max(maxNode, node);
+			relax(node);
+		}
+
+		double[] tree = new double[maxNode + 1];
+		Arrays.fill(tree, INFINITY);
+		for (int i=0; i<this.nrofVisited; i++) {
+			int node = this.visitedNodes[i];
+			tree[node] = this.distances[node];
+		}
+
+		return tree;
+	}
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-		
-		if (!this.probs.containsKey(node)) {
+	private void relax(int node) {
+		double nodeDist = this.distances[node];
+		MeetingProbabilitySet nodeProbs = this.probs.get(node);
+
+		if (nodeProbs == null) {
 			return; // node's neighbors are not known
 		}
-		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+
+		for (int i=0, size=nodeProbs.size(); i<size; i++) {
+			int n = nodeProbs.getNodeAt(i);
+			if (isVisited(n)) {
 				continue; // skip visited nodes
 			}
-						
+
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distancesFromStart.get(n) > nDist) { 
+			double nDist = nodeDist + (1 - nodeProbs.getProbAt(i));
+
+			if (getDistance(n) > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
 				setDistance(n, nDist);
 			}
 		}
 	}
-	
+
 	/**
-	 * Sets the distance from source node to a node
+	 * Returns true if the node has been visited in the current search
+	 * (i.e., the shortest path to it is known)
+	 * @param n The node
+	 * @return True if the node has been visited
+	 */
+	private boolean isVisited(int n) {
+		return n < this.searchNumbers.length &&
+			this.searchNumbers[n] == this.searchNumber &&
+			this.heapIndexes[n] == VISITED;
+	}
+
+	/**
+	 * Returns the distance from the source node to a node in the current
+	 * search, or {@link #INFINITY} if the node hasn't been discovered yet
+	 * @param n The node
+	 * @return The distance of the node
+	 */
+	private double getDistance(int n) {
+		if (n >= this.searchNumbers.length ||
+				this.searchNumbers[n] != this.searchNumber) {
+			return INFINITY;
+		}
+		return this.distances[n];
+	}
+
+	/**
+	 * Sets the distance from source node to a node and updates the node's
+	 * place in the queue (or adds the node to the queue)
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private void setDistance(int n, double distance) {
+		ensureCapacity(n);
+		if (this.searchNumbers[n] != this.searchNumber) {
+			/* first time this node is seen in this search */
+			this.searchNumbers[n] = this.searchNumber;
+			this.heapIndexes[n] = NOT_IN_HEAP;
+		}
+
+		this.distances[n] = distance; // update distance
+		if (this.heapIndexes[n] == NOT_IN_HEAP) {
+			this.heap[this.heapSize] = n;
+			this.heapIndexes[n] = this.heapSize;
+			this.heapSize++;
+		}
+		siftUp(this.heapIndexes[n]); // distance can only decrease
+	}
+
+	/**
+	 * Removes the node with the smallest distance from the queue and marks
+	 * it visited
+	 * @return The node with the smallest distance
+	 */
+	private int poll() {
+		int node = this.heap[0];
+		this.heapSize--;
+		if (this.heapSize > 0) {
+			this.heap[0] = this.heap[this.heapSize];
+			this.heapIndexes[this.heap[0]] = 0;
+			siftDown(0);
+		}
+
+		this.heapIndexes[node] = VISITED;
+		this.visitedNodes[this.nrofVisited++] = node;
+		return node;
 	}
-	
+
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Moves a node up in the heap until its parent is not bigger
+	 * @param index Heap index of the node
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private void siftUp(int index) {
+		int node = this.heap[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (compare(this.heap[parent], node) <= 0) {
+				break;
+			}
+			this.heap[index] = this.heap[parent];
+			this.heapIndexes[this.heap[index]] = index;
+			index = parent;
+		}
+		this.heap[index] = node;
+		this.heapIndexes[node] = index;
 	}
-	
+
 	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
+	 * Moves a node down in the heap until its children are not smaller
+	 * @param index Heap index of the node
 	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+	private void siftDown(int index) {
+		int node = this.heap[index];
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= this.heapSize) {
+				break;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			if (child + 1 < this.heapSize &&
+					compare(this.heap[child + 1], this.heap[child]) < 0) {
+				child++; // the smaller child
 			}
-			else {
-				return node1.compareTo(node2);
+			if (compare(this.heap[child], node) >= 0) {
+				break;
 			}
+			this.heap[index] = this.heap[child];
+			this.heapIndexes[this.heap[index]] = index;
+			index = child;
 		}
+		this.heap[index] = node;
+		this.heapIndexes[node] = index;
 	}
-	
+
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Compares two nodes by their distance from the source node
+	 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
+	 * bigger than node2's distance (the node addresses break ties)
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
-			}
+	private int compare(int node1, int node2) {
+		double dist1 = this.distances[node1];
+		double dist2 = this.distances[node2];
+
+		if (dist1 > dist2) {
+			return 1;
+		}
+		else if (dist1 < dist2) {
+			return -1;
+		}
+		else {
+			return node1 - node2;
 		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
+	}
+
+	/**
+	 * Makes sure the node arrays are big enough for the given node
+	 * @param n The node
+	 */
+	private void ensureCapacity(int n) {
+		if (n < this.distances.length) {
+			return;
 		}
+		int size = Math.max(n + 1, this.distances.length * 2);
+		this.distances = Arrays.copyOf(this.distances, size);
+		this.heapIndexes = Arrays.copyOf(this.heapIndexes, size);
+		this.searchNumbers = Arrays.copyOf(this.searchNumbers, size);
+		this.heap = Arrays.copyOf(this.heap, size);
+		this.visitedNodes = Arrays.copyOf(this.visitedNodes, size);
 	}
 }
\ No newline at end of file
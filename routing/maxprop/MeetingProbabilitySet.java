@@ -4,26 +4,46 @@
  */
 package routing.maxprop;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import core.SimClock;
+import core.SimError;
 
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * router module. The probabilities are stored in primitive arrays sorted by
+ * the node index. Copies of a set share the arrays until either of the sets
+ * is modified (copy-on-write), so snapshots of the set can be exchanged
+ * between routers without copying the probabilities.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** Initial size of the probability arrays */
+	private static final int INIT_SIZE = 8;
+	/** indexes of the nodes with a probability (in ascending order) */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * of the nodes in the nodes array */
+	private double[] probs;
+	/** number of nodes with a probability */
+	private int size;
+	/** true if the arrays are shared with another set (copy before
+	 * modifying) */
+	private boolean shared;
+	/** true if this set is an unmodifiable snapshot */
+	private boolean frozen;
+	/** snapshot of the current state of this set (or null if not taken) */
+	private MeetingProbabilitySet snapshot;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
-	
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping.
@@ -32,17 +52,18 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-        	this.probs = new HashMap<Integer, Double>();
         	this.maxSetSize = INFINITE_SET_SIZE;
+        	this.nodes = new int[INIT_SIZE];
+        	this.probs = new double[INIT_SIZE];
         } else {
-        	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
+            this.nodes = new int[Math.min(maxSetSize, INIT_SIZE)];
+            this.probs = new double[this.nodes.length];
         }
 		this.lastUpdateTime = 0;
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping and infinite set size
@@ -50,86 +71,175 @@ public class MeetingProbabilitySet {
 	public MeetingProbabilitySet() {
 		this(INFINITE_SET_SIZE, 1);
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with equal probability for
 	 * all the given node indexes.
 	 */
-	public MeetingProbabilitySet(double alpha, 
+	public MeetingProbabilitySet(double alpha,
 				List<Integer> initiallyKnownNodes) {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			setProbFor(i, prob);
 		}
 	}
-	
+
 	/**
 	 * Updates meeting probability for the given node index.
 	 * <PRE> P(b) = P(b)_old + alpha
-	 * Normalize{P}</PRE> 
+	 * Normalize{P}</PRE>
 	 * I.e., The probability of the given node index is increased by one and
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
+        int smallestIndex = -1;
         double smallestValue = Double.MAX_VALUE;
 
+		prepareModification();
 		this.lastUpdateTime = SimClock.getTime();
-		
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+
+		if (this.size == 0) { // first entry
+			setProbFor(index, 1.0);
 			return;
 		}
-		
+
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		setProbFor(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
-		 * normalize to one by dividing all the entries by 1+alpha */ 
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
+		 * normalize to one by dividing all the entries by 1+alpha */
+		for (int i=0; i<this.size; i++) {
+			this.probs[i] = this.probs[i] / (1+alpha);
+            if (this.probs[i] < smallestValue) {
+                smallestIndex = i;
+                smallestValue = this.probs[i];
             }
-
 		}
 
-        if (probs.size() >= maxSetSize) {
-            core.Debug.p("Probsize: " + probs.size() + " dropping " + 
-                    probs.remove(smallestEntry.getKey()));
+        if (this.size >= maxSetSize) {
+            core.Debug.p("Probsize: " + this.size + " dropping " +
+                    removeAt(smallestIndex));
         }
 	}
-	
+
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		prepareModification();
+		setProbFor(index, iet);
 	}
-	
+
 	/**
-	 * Returns the current delivery probability value for the given node index 
+	 * Returns the current delivery probability value for the given node index
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int i = Arrays.binarySearch(this.nodes, 0, this.size, index);
+		if (i >= 0) {
+			return this.probs[i];
 		}
 		else {
 			/* the node with the given index has not been met */
 			return 0.0;
 		}
 	}
-	
+
+	/**
+	 * Sets the probability for a node index. The set must be prepared for
+	 * modification.
+	 * @param index The node index
+	 * @param value The new probability
+	 */
+	private void setProbFor(int index, double value) {
+		int i = Arrays.binarySearch(this.nodes, 0, this.size, index);
+		if (i < 0) {
+			i = -(i + 1); // insertion point
+			if (this.size == this.nodes.length) {
+				int newSize = this.nodes.length * 2;
+				this.nodes = Arrays.copyOf(this.nodes, newSize);
+				this.probs = Arrays.copyOf(this.probs, newSize);
+			}
+			System.arraycopy(this.nodes, i, this.nodes, i + 1, this.size - i);
+			System.arraycopy(this.probs, i, this.probs, i + 1, this.size - i);
+			this.nodes[i] = index;
+			this.size++;
+		}
+		this.probs[i] = value;
+	}
+
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Removes the probability at the given position of the arrays. The set
+	 * must be prepared for modification.
+	 * @param i The position
+	 * @return The removed probability
+	 */
+	private double removeAt(int i) {
+		double value = this.probs[i];
+		System.arraycopy(this.nodes, i + 1, this.nodes, i, this.size - i - 1);
+		System.arraycopy(this.probs, i + 1, this.probs, i, this.size - i - 1);
+		this.size--;
+		return value;
+	}
+
+	/**
+	 * Makes sure this set can be modified without affecting the other sets
+	 * that share the same probability arrays
+	 * @throws SimError if this set is a snapshot
+	 */
+	private void prepareModification() {
+		if (this.frozen) {
+			throw new SimError("Can't modify a snapshot of meeting " +
+					"probabilities");
+		}
+		if (this.shared) {
+			this.nodes = this.nodes.clone();
+			this.probs = this.probs.clone();
+			this.shared = false;
+		}
+		this.snapshot = null; // the old snapshot is no longer up to date
+	}
+
+	/**
+	 * Returns the number of nodes with a meeting probability
+	 * @return the number of nodes with a meeting probability
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the node index at the given position of the set. The nodes
+	 * are in the ascending order of their indexes.
+	 * @param i The position (0...size()-1)
+	 * @return The node index at the position
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns the meeting probability at the given position of the set
+	 * @param i The position (0...size()-1)
+	 * @return The probability of the node at the position
+	 */
+	public double getProbAt(int i) {
+		return this.probs[i];
+	}
+
+	/**
+	 * Returns a map of the probabilities of this probability set. The map
+	 * is created on every call and can't be modified.
+	 * @return a map of the probabilities of this probability set
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> map = new LinkedHashMap<Integer, Double>();
+		for (int i=0; i<this.size; i++) {
+			map.put(this.nodes[i], this.probs[i]);
+		}
+		return Collections.unmodifiableMap(map);
 	}
-	
+
 	/**
 	 * Returns the time when this probability set was last updated
 	 * @return the time when this probability set was last updated
@@ -137,37 +247,57 @@ public class MeetingProbabilitySet {
 	public double getLastUpdateTime() {
 		return this.lastUpdateTime;
 	}
-	
+
 	/**
 	 * Enables changing the alpha parameter dynamically
 	 */
 	public void setAlpha(double alpha) {
 		this.alpha = alpha;
 	}
-	
+
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the
+	 * probabilities with this set until either of them is modified.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
-		
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
-		
+
+		replica.nodes = this.nodes;
+		replica.probs = this.probs;
+		replica.size = this.size;
+		replica.shared = true;
+		this.shared = true;
+
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
-	
+
+	/**
+	 * Returns an unmodifiable snapshot of the current state of this set.
+	 * The same snapshot is returned until this set is modified and a
+	 * snapshot of a snapshot is the snapshot itself, so snapshots can be
+	 * shared between routers by reference.
+	 * @return an unmodifiable snapshot of this set
+	 */
+	public MeetingProbabilitySet snapshot() {
+		if (this.frozen) {
+			return this;
+		}
+		if (this.snapshot == null) {
+			this.snapshot = replicate();
+			this.snapshot.frozen = true;
+		}
+		return this.snapshot;
+	}
+
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
 }
\ No newline at end of file
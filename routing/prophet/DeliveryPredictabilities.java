@@ -0,0 +1,376 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.prophet;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Table of PRoPHET delivery predictabilities. The predictabilities are
+ * stored in primitive arrays indexed by host address. Aging is lazy: all
+ * the values share a common scale factor, so aging the whole table only
+ * multiplies the scale (instead of every entry).<BR>
+ * The table can optionally be bounded: only the largest predictabilities
+ * (up to a maximum number) are kept and predictabilities below a minimum
+ * value are pruned. In the bounded mode the entries are kept in a binary
+ * min-heap so the smallest entry can be found in constant time.
+ */
+public class DeliveryPredictabilities {
+	/** Scale value below which the stored values are rescaled */
+	private static final double MIN_SCALE = 1e-100;
+	/** Initial size of the tables */
+	private static final int INITIAL_SIZE = 16;
+
+	/** Predictabilities divided by the scale, indexed by host address */
+	private double[] values;
+	/** Hosts that have an entry in the table, indexed by host address */
+	private DTNHost[] hosts;
+	/**
+	 * Addresses of the hosts with an entry, in the order they were added
+	 * (or in min-heap order if the table is bounded)
+	 */
+	private int[] known;
+	/** Indexes of the entries in the known array (only if bounded) */
+	private int[] positions;
+	/** Number of hosts with an entry */
+	private int nrofKnown;
+	/** Common multiplier of all the stored values */
+	private double scale;
+	/** Aging constant */
+	private double gamma;
+	/** How many seconds one aging time unit is */
+	private double secondsInTimeUnit;
+	/** Last time the table was aged */
+	private double lastAgeUpdate;
+	/** Maximum number of entries (0 = unlimited) */
+	private int maxSize;
+	/** Predictabilities below this value are pruned */
+	private double minValue;
+	/** Is the size of the table limited by maximum size or minimum value */
+	private boolean bounded;
+
+	/**
+	 * Creates a new, empty, predictability table.
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit Number of seconds in one aging time unit
+	 */
+	public DeliveryPredictabilities(double gamma, double secondsInTimeUnit) {
+		this(gamma, secondsInTimeUnit, 0, 0);
+	}
+
+	/**
+	 * Creates a new, empty, bounded predictability table.
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit Number of seconds in one aging time unit
+	 * @param maxSize Maximum number of entries in the table (0 = unlimited)
+	 * @param minValue Predictabilities below this value are pruned
+	 */
+	public DeliveryPredictabilities(double gamma, double secondsInTimeUnit,
+			int maxSize, double minValue) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.values = new double[INITIAL_SIZE];
+		this.hosts = new DTNHost[INITIAL_SIZE];
+		this.known = new int[INITIAL_SIZE];
+		this.nrofKnown = 0;
+		this.scale = 1;
+		this.lastAgeUpdate = 0;
+		this.maxSize = maxSize;
+		this.minValue = minValue;
+		this.bounded = maxSize > 0 || minValue > 0;
+		if (this.bounded) {
+			this.positions = new int[INITIAL_SIZE];
+		}
+	}
+
+	/**
+	 * Sets the aging constant. The new value is used starting from the
+	 * next aging (also for the time elapsed since the previous aging).
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Ages all entries in the table.
+	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
+	 * time units that have elapsed since the last time the table was aged.
+	 * Takes constant time (apart from occasional rescaling).
+	 */
+	public void age() {
+		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) /
+			this.secondsInTimeUnit;
+
+		if (timeDiff == 0) {
+			return;
+		}
+
+		this.scale *= Math.pow(this.gamma, timeDiff);
+		this.lastAgeUpdate = SimClock.getTime();
+
+		if (this.scale < MIN_SCALE) {
+			/* move the scale to the values before it underflows */
+			for (int i=0; i<this.nrofKnown; i++) {
+				this.values[this.known[i]] *= this.scale;
+			}
+			this.scale = 1;
+		}
+	}
+
+	/**
+	 * Returns the current predictability for a host or 0 if the table has
+	 * no entry for the host
+	 * @param host The host to look the predictability for
+	 * @return The current predictability
+	 */
+	public double get(DTNHost host) {
+		age(); // make sure the value is aged before getting it
+		int address = host.getAddress();
+		if (address >= this.hosts.length || this.hosts[address] == null) {
+			return 0;
+		}
+		return this.values[address] * this.scale;
+	}
+
+	/**
+	 * Sets the predictability for a host. If the table is bounded, values
+	 * below the minimum value are not stored and a new entry replaces the
+	 * smallest entry of a full table only if the new value is larger.
+	 * @param host The host
+	 * @param value The new (current) predictability
+	 */
+	public void set(DTNHost host, double value) {
+		age(); // the value is stored relative to the current scale
+		int address = host.getAddress();
+		boolean exists = contains(host);
+		double stored = value / this.scale;
+
+		if (this.bounded) {
+			if (value < this.minValue) {
+				if (exists) {
+					removeAt(this.positions[address]);
+				}
+				return;
+			}
+			if (!exists && this.maxSize > 0 &&
+					this.nrofKnown == this.maxSize) {
+				if (stored <= this.values[this.known[0]]) {
+					return; // not larger than the smallest entry
+				}
+				removeAt(0);
+			}
+		}
+
+		if (!exists) {
+			addEntry(host);
+		}
+		this.values[address] = stored;
+
+		if (this.bounded) {
+			int index = siftUp(this.positions[address]);
+			siftDown(index);
+		}
+	}
+
+	/**
+	 * Returns true if the table has an entry for the host
+	 * @param host The host
+	 * @return true if the host has an entry
+	 */
+	public boolean contains(DTNHost host) {
+		int address = host.getAddress();
+		return address < this.hosts.length && this.hosts[address] != null;
+	}
+
+	/**
+	 * Adds an (empty) entry for a host
+	 * @param host The host
+	 */
+	private void addEntry(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= this.hosts.length) {
+			int size = Math.max(address + 1, this.hosts.length * 2);
+			DTNHost[] newHosts = new DTNHost[size];
+			double[] newValues = new double[size];
+			System.arraycopy(this.hosts, 0, newHosts, 0, this.hosts.length);
+			System.arraycopy(this.values, 0, newValues, 0,
+					this.values.length);
+			if (this.bounded) {
+				int[] newPositions = new int[size];
+				System.arraycopy(this.positions, 0, newPositions, 0,
+						this.positions.length);
+				this.positions = newPositions;
+			}
+			this.hosts = newHosts;
+			this.values = newValues;
+		}
+		if (this.nrofKnown == this.known.length) {
+			int[] newKnown = new int[this.known.length * 2];
+			System.arraycopy(this.known, 0, newKnown, 0, this.nrofKnown);
+			this.known = newKnown;
+		}
+
+		this.hosts[address] = host;
+		this.values[address] = 0;
+		if (this.bounded) {
+			this.positions[address] = this.nrofKnown;
+		}
+		this.known[this.nrofKnown++] = address;
+	}
+
+	/**
+	 * Removes an entry from a bounded table
+	 * @param index Index of the entry in the known (heap) array
+	 */
+	private void removeAt(int index) {
+		this.hosts[this.known[index]] = null;
+		this.nrofKnown--;
+
+		if (index < this.nrofKnown) {
+			/* move the last entry to the removed entry's place */
+			int last = this.known[this.nrofKnown];
+			this.known[index] = last;
+			this.positions[last] = index;
+			siftDown(siftUp(index));
+		}
+	}
+
+	/**
+	 * Moves an entry of the heap up until its parent is not larger
+	 * @param index Index of the entry
+	 * @return The new index of the entry
+	 */
+	private int siftUp(int index) {
+		int address = this.known[index];
+		double value = this.values[address];
+
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			int parentAddress = this.known[parent];
+			if (this.values[parentAddress] <= value) {
+				break;
+			}
+			this.known[index] = parentAddress;
+			this.positions[parentAddress] = index;
+			index = parent;
+		}
+
+		this.known[index] = address;
+		this.positions[address] = index;
+		return index;
+	}
+
+	/**
+	 * Moves an entry of the heap down until its children are not smaller
+	 * @param index Index of the entry
+	 */
+	private void siftDown(int index) {
+		int address = this.known[index];
+		double value = this.values[address];
+
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= this.nrofKnown) {
+				break;
+			}
+			if (child + 1 < this.nrofKnown && this.values[this.known[child+1]]
+					< this.values[this.known[child]]) {
+				child++; // the smaller child
+			}
+			int childAddress = this.known[child];
+			if (this.values[childAddress] >= value) {
+				break;
+			}
+			this.known[index] = childAddress;
+			this.positions[childAddress] = index;
+			index = child;
+		}
+
+		this.known[index] = address;
+		this.positions[address] = index;
+	}
+
+	/**
+	 * Removes the entries whose (aged) predictability has dropped below
+	 * the minimum value. Does nothing if the table doesn't have a minimum.
+	 */
+	public void prune() {
+		if (this.minValue <= 0) {
+			return;
+		}
+		age();
+		while (this.nrofKnown > 0 &&
+				this.values[this.known[0]] * this.scale < this.minValue) {
+			removeAt(0);
+		}
+	}
+
+	/**
+	 * Updates the predictability for a host that was just met.
+	 * <CODE>P(a,b) = P(a,b)_old + (1 - P(a,b)_old) * P_INIT</CODE>
+	 * @param host The host that was met
+	 * @param pInit The initialization constant
+	 */
+	public void updateEncounter(DTNHost host, double pInit) {
+		double oldValue = get(host);
+		set(host, oldValue + (1 - oldValue) * pInit);
+		prune();
+	}
+
+	/**
+	 * Updates transitive (A->B->C) predictabilities for all the hosts (C)
+	 * that host B has a predictability for. Takes time proportional to the
+	 * size of B's table (times the log of this table's size if bounded).
+	 * <CODE>P(a,c) = P(a,c)_old + (1 - P(a,c)_old) * P(a,b) * P(b,c) * BETA
+	 * </CODE>
+	 * @param self The host A (that is not added to its own table)
+	 * @param host The host B that was met
+	 * @param hostPreds Predictabilities of the host B
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitive(DTNHost self, DTNHost host,
+			DeliveryPredictabilities hostPreds, double beta) {
+		double pForHost = get(host); // P(a,b)
+		hostPreds.age();
+
+		for (int i=0, n=hostPreds.nrofKnown; i<n; i++) {
+			int address = hostPreds.known[i];
+			DTNHost c = hostPreds.hosts[address];
+			if (c == self) {
+				continue; // don't add yourself
+			}
+
+			double pOld = get(c); // P(a,c)_old
+			double pNew = pOld + (1 - pOld) * pForHost *
+				hostPreds.values[address] * hostPreds.scale * beta;
+			set(c, pNew);
+		}
+		prune();
+	}
+
+	/**
+	 * Returns the number of hosts with an entry in the table
+	 * @return the number of hosts with an entry
+	 */
+	public int size() {
+		return this.nrofKnown;
+	}
+
+	/**
+	 * Returns the host of an entry. The entries are indexed in the order
+	 * they were added to the table (or in heap order if the table is
+	 * bounded, i.e., setting a value may change the indexes).
+	 * @param index Index of the entry (0...size()-1)
+	 * @return The host of the entry
+	 */
+	public DTNHost getHost(int index) {
+		return this.hosts[this.known[index]];
+	}
+
+	public String toString() {
+		return "DeliveryPredictabilities with " + this.nrofKnown + " entries";
+	}
+}
@@ -19,14 +19,13 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 	public static final String MSGTYPE_PROP = "PubSub-msgType";
 	
 	/** 
-	 * Maps each name to a forwarding decision value.
+	 * Maps each publication to a forwarding decision value and holds the
+	 * subscriptions of this host.
 	 * The hope here is to create this class in such a way that the actual 
 	 * decision can we made by another class.
 	 *
 	 */
-	protected Map<String, Double> forwardingDecisionTable;
-	
-	protected Set<String> mySubscriptions;
+	protected PublicationTable forwardingDecisionTable;
 	
 	protected static final double P_SUBSCRIBER = 1.00;
 	protected static final double DEFAULT_P_INIT = 0.75;
@@ -57,8 +56,7 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 		else
 			secondsInTimeUnit = DEFAULT_UNIT;
 		
-		this.forwardingDecisionTable = new HashMap<String, Double>();
-		mySubscriptions = new HashSet<String>(2);
+		this.forwardingDecisionTable = new PublicationTable();
 		this.lastAgeUpdate = 0.0;
 	}
 	
@@ -67,8 +65,7 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 		beta = de.beta;
 		pinit = de.pinit;
 		secondsInTimeUnit = de.secondsInTimeUnit;
-		this.forwardingDecisionTable = new HashMap<String, Double>();
-		this.mySubscriptions = new HashSet<String>(2);
+		this.forwardingDecisionTable = new PublicationTable();
 		this.lastAgeUpdate = de.lastAgeUpdate;
 	}
 	
@@ -118,48 +115,50 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 	public void doExchangeForNewConnection(Connection con, DTNHost peer)
 	{
 		ProphetDecisionEngine de = getOtherProphetDecisionEngine(peer);
-		Set<String> pubSet = new HashSet<String>(this.forwardingDecisionTable.size() 
-				+ de.forwardingDecisionTable.size());
-		pubSet.addAll(this.forwardingDecisionTable.keySet());
-		pubSet.addAll(de.forwardingDecisionTable.keySet());
+		int myNrofPubs = this.forwardingDecisionTable.size(),
+				peerNrofPubs = de.forwardingDecisionTable.size();
 		
 		this.ageValues();
 		de.ageValues();
 		
-		for(String pub : pubSet)
+		/* 
+		 * Exchange over the union of the publications: all of ours, then the 
+		 * ones only the peer knew. Publications are only appended to the 
+		 * tables, so the sizes taken above cover the original entries.
+		 */
+		for(int i = 0; i < myNrofPubs; i++)
+			exchangeValues(de, this.forwardingDecisionTable.getPublication(i));
+		for(int i = 0; i < peerNrofPubs; i++)
 		{
-			double myOldValue = 0.0, peerOldValue = 0.0;
-			
-			if(this.forwardingDecisionTable.containsKey(pub))
-				myOldValue = this.forwardingDecisionTable.get(pub);
-			if(de.forwardingDecisionTable.containsKey(pub))
-				peerOldValue = de.forwardingDecisionTable.get(pub);
-			
-			if(myOldValue != P_SUBSCRIBER)
-			{
-				double newValue;
-				if(peerOldValue == P_SUBSCRIBER && myOldValue == 0.0)
-					newValue = pinit;
-				else
-					newValue = myOldValue + (1 - myOldValue) * peerOldValue * beta;
-				this.forwardingDecisionTable.put(pub, newValue);
-				System.out.println("Host: " + con.getOtherNode(peer).getAddress() + 
-						" setting value: " + newValue + " for pub: " + pub + " old value: "
-						+ myOldValue);
-			}
-			
-			if(peerOldValue != P_SUBSCRIBER)
-			{
-				double newValue;
-				if(myOldValue == P_SUBSCRIBER && peerOldValue == 0.0)
-					newValue = pinit;
-				else
-					newValue = peerOldValue + (1 - peerOldValue) * myOldValue * beta;
-				de.forwardingDecisionTable.put(pub, newValue);
-				System.out.println("Host: " + peer.getAddress() + 
-						" setting value: " + newValue + " for pub: " + pub + " old value: "
-						+ peerOldValue);
-			}
+			int pub = de.forwardingDecisionTable.getPublication(i);
+			if(!this.forwardingDecisionTable.contains(pub))
+				exchangeValues(de, pub);
+		}
+	}
+	
+	private void exchangeValues(ProphetDecisionEngine de, int pub)
+	{
+		double myOldValue = this.forwardingDecisionTable.get(pub, 0.0), 
+			peerOldValue = de.forwardingDecisionTable.get(pub, 0.0);
+		
+		if(myOldValue != P_SUBSCRIBER)
+		{
+			double newValue;
+			if(peerOldValue == P_SUBSCRIBER && myOldValue == 0.0)
+				newValue = pinit;
+			else
+				newValue = myOldValue + (1 - myOldValue) * peerOldValue * beta;
+			this.forwardingDecisionTable.put(pub, newValue);
+		}
+		
+		if(peerOldValue != P_SUBSCRIBER)
+		{
+			double newValue;
+			if(myOldValue == P_SUBSCRIBER && peerOldValue == 0.0)
+				newValue = pinit;
+			else
+				newValue = peerOldValue + (1 - peerOldValue) * myOldValue * beta;
+			de.forwardingDecisionTable.put(pub, newValue);
 		}
 	}
 
@@ -167,7 +166,7 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 	
 	public boolean newMessage(Message m)
 	{
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
+		int pub = PublicationTable.getIndex(m);
 		int type = (Integer) m.getProperty(MSGTYPE_PROP);
 		
 		switch(type)
@@ -179,14 +178,14 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 			}
 			case UNSUBSCRIBE_MSG:
 			{
-				mySubscriptions.remove(pubname);
-				forwardingDecisionTable.put(pubname, 0.00);
+				forwardingDecisionTable.unsubscribe(pub);
+				forwardingDecisionTable.put(pub, 0.00);
 				return false;
 			}
 			case SUBSCRIBE_MSG:
 			{
-				mySubscriptions.add(pubname);
-				forwardingDecisionTable.put(pubname, P_SUBSCRIBER);
+				forwardingDecisionTable.subscribe(pub);
+				forwardingDecisionTable.put(pub, P_SUBSCRIBER);
 				return false;
 			}
 			
@@ -204,17 +203,17 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 	public boolean shouldSendMessageToHost(Message m, DTNHost otherHost)
 	{
 		ProphetDecisionEngine de = getOtherProphetDecisionEngine(otherHost);
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
-		assert pubname != null;
+		int pub = PublicationTable.getIndex(m);
+		assert pub >= 0;
 		
 		ageValues();
 		de.ageValues();
 		
-		if(!de.forwardingDecisionTable.containsKey(pubname)) return false;
-		if(!forwardingDecisionTable.containsKey(pubname)) return true;
+		if(!de.forwardingDecisionTable.contains(pub)) return false;
+		if(!forwardingDecisionTable.contains(pub)) return true;
 		
-		double myValue = forwardingDecisionTable.get(pubname),
-					peerValue = de.forwardingDecisionTable.get(pubname); 
+		double myValue = forwardingDecisionTable.get(pub, 0.0),
+					peerValue = de.forwardingDecisionTable.get(pub, 0.0); 
 		
 		/*if(myValue > peerValue)
 			System.out.print("Not sending msg: ");
@@ -228,16 +227,16 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 	
 	public boolean shouldSaveReceivedMessage(Message m, DTNHost thisHost)
 	{
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
-		assert pubname != null;
-		return !isSubscriber(pubname);
+		int pub = PublicationTable.getIndex(m);
+		assert pub >= 0;
+		return !isSubscriber(pub);
 	}
 	
 	public boolean isFinalDest(Message m, DTNHost aHost)
 	{
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
-		assert pubname != null;
-		return isSubscriber(pubname);
+		int pub = PublicationTable.getIndex(m);
+		assert pub >= 0;
+		return isSubscriber(pub);
 	}
 
 	public boolean shouldDeleteSentMessage(Message m, DTNHost otherHost)
@@ -247,12 +246,12 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 
 	public boolean shouldDeleteOldMessage(Message m, DTNHost hostReportingOld)
 	{
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
-		assert pubname != null;
+		int pub = PublicationTable.getIndex(m);
+		assert pub >= 0;
 		
 		ProphetDecisionEngine de = this.getOtherProphetDecisionEngine(hostReportingOld);
 		
-		return de.isSubscriber(pubname);
+		return de.isSubscriber(pub);
 	}
 	
 	private ProphetDecisionEngine getOtherProphetDecisionEngine(DTNHost host)
@@ -274,20 +273,22 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine
 		}
 	
 		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<String, Double> e : forwardingDecisionTable.entrySet())
+		for (int i = 0; i < forwardingDecisionTable.size(); i++)
 		{
-			if(e.getValue() == P_SUBSCRIBER) continue;
+			int pub = forwardingDecisionTable.getPublication(i);
+			double value = forwardingDecisionTable.get(pub, 0.0);
+			if(value == P_SUBSCRIBER) continue;
 			/*System.out.println("Host: " + myHost.getAddress() + " aging pub: " +
-					e.getKey() + " old value: " + e.getValue() + " mult: " + mult +
-					" new val: " + (e.getValue()*mult));*/
-			e.setValue(e.getValue()*mult);
+					PublicationTable.getName(pub) + " old value: " + value + 
+					" mult: " + mult + " new val: " + (value*mult));*/
+			forwardingDecisionTable.put(pub, value*mult);
 		}
 	
 		this.lastAgeUpdate = SimClock.getTime();
 	}
-	private boolean isSubscriber(String pubname)
+	private boolean isSubscriber(int pub)
 	{
-		return mySubscriptions.contains(pubname);
+		return forwardingDecisionTable.isSubscribed(pub);
 	}
 
 }
@@ -0,0 +1,220 @@
+package routing.pubsub;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>Forwarding table of the pub/sub decision engines, indexed by publication.
+ * The publication names are interned to small integers shared by all the
+ * tables, so the value of a publication is an array access instead of a
+ * String keyed map lookup (and a boxed Double). The publication of a message
+ * is looked up only once and then cached to a message slot.</p>
+ *
+ * <p>Each table stores a value for the publications it knows (in the order
+ * they were first added) and the set of publications the local host has
+ * subscribed to.</p>
+ */
+public class PublicationTable
+{
+	/** Message property key for the publication name */
+	public static final String PUBNAME_PROP = "PubSub-pubname";
+	/** Message slot caching the interned index of the publication name */
+	public static final MessageSlot PUBLICATION_SLOT = 
+		MessageSlot.register("PubSub-publication");
+
+	/** Index of each interned publication name */
+	private static Map<String, Integer> indexes;
+	/** Interned publication names by index */
+	private static List<String> names;
+
+	/** Values of the publications by index, NaN for unknown publications */
+	private double[] values;
+	/** Indexes of the known publications, in the order they were added */
+	private int[] known;
+	/** Number of known publications */
+	private int nrofKnown;
+	/** Publications the local host has subscribed to */
+	private BitSet subscriptions;
+
+	static
+	{
+		DTNSim.registerForReset(PublicationTable.class.getCanonicalName());
+		reset();
+	}
+
+	/**
+	 * Creates a new, empty, PublicationTable
+	 */
+	public PublicationTable()
+	{
+		this.values = new double[0];
+		this.known = new int[2];
+		this.nrofKnown = 0;
+		this.subscriptions = new BitSet();
+	}
+
+	/**
+	 * Resets the interned publication names
+	 */
+	public static void reset()
+	{
+		indexes = new HashMap<String, Integer>();
+		names = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the index of a publication name, interning the name if it
+	 * hasn't been seen before
+	 *
+	 * @param name The publication name
+	 * @return Index of the publication or -1 if the name is null
+	 */
+	public static int getIndex(String name)
+	{
+		if(name == null)
+			return -1;
+
+		Integer index = indexes.get(name);
+		if(index == null)
+		{
+			index = names.size();
+			indexes.put(name, index);
+			names.add(name);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of the publication of a message. The index is cached
+	 * to a slot of the message (and its replicates), so the publication name 
+	 * of a message must not change once it has been looked up.
+	 *
+	 * @param m The message
+	 * @return Index of the message's publication or -1 if the message has no
+	 * publication name
+	 */
+	public static int getIndex(Message m)
+	{
+		if(m.hasSlot(PUBLICATION_SLOT))
+			return m.getInt(PUBLICATION_SLOT);
+		
+		int index = getIndex((String)m.getProperty(PUBNAME_PROP));
+		if(index >= 0)
+			m.setInt(PUBLICATION_SLOT, index);
+		return index;
+	}
+
+	/**
+	 * Returns the name of an interned publication
+	 *
+	 * @param pub Index of the publication
+	 * @return The publication name
+	 */
+	public static String getName(int pub)
+	{
+		return names.get(pub);
+	}
+
+	/**
+	 * Returns true if the table has a value for the publication
+	 *
+	 * @param pub Index of the publication
+	 * @return true if the publication is known
+	 */
+	public boolean contains(int pub)
+	{
+		return pub >= 0 && pub < this.values.length &&
+			!Double.isNaN(this.values[pub]);
+	}
+
+	/**
+	 * Returns the value of a publication
+	 *
+	 * @param pub Index of the publication
+	 * @param defaultValue Value to return if the publication is not known
+	 * @return The value of the publication or the default value
+	 */
+	public double get(int pub, double defaultValue)
+	{
+		return contains(pub) ? this.values[pub] : defaultValue;
+	}
+
+	/**
+	 * Sets the value of a publication
+	 *
+	 * @param pub Index of the publication
+	 * @param value The new value
+	 */
+	public void put(int pub, double value)
+	{
+		if(pub >= this.values.length)
+		{
+			int oldLength = this.values.length;
+			this.values = Arrays.copyOf(this.values,
+					Math.max(pub + 1, 2 * oldLength));
+			Arrays.fill(this.values, oldLength, this.values.length, Double.NaN);
+		}
+
+		if(Double.isNaN(this.values[pub]))
+		{
+			if(this.nrofKnown == this.known.length)
+				this.known = Arrays.copyOf(this.known, 2 * this.nrofKnown);
+			this.known[this.nrofKnown++] = pub;
+		}
+		this.values[pub] = value;
+	}
+
+	/**
+	 * Returns the number of publications the table has a value for
+	 *
+	 * @return the number of known publications
+	 */
+	public int size()
+	{
+		return this.nrofKnown;
+	}
+
+	/**
+	 * Returns the index of the i-th known publication
+	 *
+	 * @param i Position of the publication (0...size()-1, in the order the
+	 * publications were added)
+	 * @return Index of the publication
+	 */
+	public int getPublication(int i)
+	{
+		return this.known[i];
+	}
+
+	/**
+	 * Marks the local host subscribed to a publication
+	 *
+	 * @param pub Index of the publication
+	 */
+	public void subscribe(int pub)
+	{
+		this.subscriptions.set(pub);
+	}
+
+	/**
+	 * Removes the subscription of the local host to a publication
+	 *
+	 * @param pub Index of the publication
+	 */
+	public void unsubscribe(int pub)
+	{
+		this.subscriptions.clear(pub);
+	}
+
+	/**
+	 * Returns true if the local host has subscribed to the publication
+	 *
+	 * @param pub Index of the publication
+	 * @return true if the host is a subscriber
+	 */
+	public boolean isSubscribed(int pub)
+	{
+		return pub >= 0 && this.subscriptions.get(pub);
+	}
+}
@@ -1,10 +1,5 @@
 package routing.pubsub;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-
 import routing.*;
 import core.*;
 
@@ -30,9 +25,8 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 	
 	protected int initialNrofCopies;
 	protected double transitivityTimerThreshold;
-	protected Map<String, Double> forwardingDecisionTable;
-	
-	protected Set<String> mySubscriptions;
+	/** Timer values of the publications and the subscriptions of this host */
+	protected PublicationTable forwardingDecisionTable;
 	
 	public SnFDecisionEngine(Settings s)
 	{
@@ -43,16 +37,14 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 		else
 			transitivityTimerThreshold = defaultTransitivityThreshold;
 		
-		forwardingDecisionTable = new HashMap<String, Double>();
-		mySubscriptions = new HashSet<String>(2);
+		forwardingDecisionTable = new PublicationTable();
 	}
 	
 	public SnFDecisionEngine(SnFDecisionEngine snf)
 	{
 		this.initialNrofCopies = snf.initialNrofCopies;
 		this.transitivityTimerThreshold = snf.transitivityTimerThreshold;
-		forwardingDecisionTable = new HashMap<String, Double>();
-		mySubscriptions = new HashSet<String>(2);
+		forwardingDecisionTable = new PublicationTable();
 	}
 	
 	public RoutingDecisionEngine replicate()
@@ -74,20 +66,20 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 		else
 			timediff = distTo/speed;
 		
-		for(Map.Entry<String, Double> entry : de.forwardingDecisionTable.entrySet())
+		for(int i = 0; i < de.forwardingDecisionTable.size(); i++)
 		{
-			String pub = entry.getKey();
+			int pub = de.forwardingDecisionTable.getPublication(i);
 			double neighborvalue = de.getValueForPublication(pub),
 						 myValue = 0.0;
 			
-			if(this.forwardingDecisionTable.containsKey(pub))
+			if(this.forwardingDecisionTable.contains(pub))
 				myValue = this.getValueForPublication(pub);
 			
 			if(myValue + timediff < neighborvalue)
 			{
 				System.out.println("Host: " + thisHost.getAddress() + " adding transitive value " +
 						(neighborvalue - timediff) + " from host " + peer.getAddress() + " with value: " +
-						neighborvalue + " for pub: " + pub);
+						neighborvalue + " for pub: " + PublicationTable.getName(pub));
 				this.forwardingDecisionTable.put(pub, neighborvalue - timediff);
 			}
 		}
@@ -120,10 +112,10 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 
 	public boolean newMessage(Message m)
 	{
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
+		int pub = PublicationTable.getIndex(m);
 		int type = (Integer) m.getProperty(MSGTYPE_PROP);
 		
-		if(pubname == null)
+		if(pub < 0)
 			throw new SimError("No Publication Name specified in new Message");
 		
 		switch(type)
@@ -135,13 +127,13 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 			}
 			case UNSUBSCRIBE_MSG:
 			{
-				mySubscriptions.remove(pubname);
+				forwardingDecisionTable.unsubscribe(pub);
 				return false;
 			}
 			case SUBSCRIBE_MSG:
 			{
-				mySubscriptions.add(pubname);
-				forwardingDecisionTable.put(pubname, SimClock.getTime());
+				forwardingDecisionTable.subscribe(pub);
+				forwardingDecisionTable.put(pub, SimClock.getTime());
 				return false;
 			}
 			
@@ -162,13 +154,13 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 		int nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROP);
 		if(nrofCopies > 1) return true;
 		
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
-		assert pubname != null;
+		int pub = PublicationTable.getIndex(m);
+		assert pub >= 0;
 		
 		SnFDecisionEngine de = this.getOtherSnFDecisionEngine(otherHost);
 		
 		// If the other host has never seen the publication, don't send
-		if(!de.forwardingDecisionTable.containsKey(pubname))
+		if(!de.forwardingDecisionTable.contains(pub))
 		{
 			/*System.out.println("Neighbor: " + otherHost.getAddress() + " of Host: " +
 					"has no info on pub " + pubname);*/
@@ -176,7 +168,7 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 		}
 
 		// We get here when the other host has seen the pub, if we haven't, send
-		if(!this.forwardingDecisionTable.containsKey(pubname)) 
+		if(!this.forwardingDecisionTable.contains(pub)) 
 		{
 			/*System.out.println("Neighbor: " + otherHost.getAddress() + " of Host: " + 
 				 " knows pub " + pubname);*/
@@ -192,8 +184,8 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 			System.out.println("sending");
 		else
 			System.out.println();*/
-		return getValueForPublication(pubname) < 
-			de.getValueForPublication(pubname) - transitivityTimerThreshold;
+		return getValueForPublication(pub) < 
+			de.getValueForPublication(pub) - transitivityTimerThreshold;
 	}
 	
 	public boolean isFinalDest(Message m, DTNHost aHost)
@@ -202,17 +194,17 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 		nrofCopies = (int)Math.ceil(nrofCopies/2.0);
 		m.updateProperty(MSG_COUNT_PROP, nrofCopies);
 		
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
-		assert pubname != null;
-		return isSubscriber(pubname);
+		int pub = PublicationTable.getIndex(m);
+		assert pub >= 0;
+		return isSubscriber(pub);
 	}
 
 	public boolean shouldSaveReceivedMessage(Message m, DTNHost thisHost)
 	{
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
-		assert pubname != null;
+		int pub = PublicationTable.getIndex(m);
+		assert pub >= 0;
 		
-		return !isSubscriber(pubname);
+		return !isSubscriber(pub);
 	}
 
 	public boolean shouldDeleteSentMessage(Message m, DTNHost otherHost)
@@ -232,12 +224,12 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 	
 	public boolean shouldDeleteOldMessage(Message m, DTNHost hostReportingOld)
 	{
-		String pubname = (String) m.getProperty(PUBNAME_PROP);
-		assert pubname != null;
+		int pub = PublicationTable.getIndex(m);
+		assert pub >= 0;
 		
 		SnFDecisionEngine de = this.getOtherSnFDecisionEngine(hostReportingOld);
 		
-		return de.isSubscriber(pubname);
+		return de.isSubscriber(pub);
 	}
 
 	private SnFDecisionEngine getOtherSnFDecisionEngine(DTNHost h)
@@ -249,14 +241,14 @@ public class SnFDecisionEngine implements RoutingDecisionEngine
 		return (SnFDecisionEngine) ((DecisionEngineRouter)otherRouter).getDecisionEngine();
 	}
 	
-	private double getValueForPublication(String pubname)
+	private double getValueForPublication(int pub)
 	{
-		if(mySubscriptions.contains(pubname)) return SimClock.getTime();
-		else return forwardingDecisionTable.get(pubname);
+		if(forwardingDecisionTable.isSubscribed(pub)) return SimClock.getTime();
+		else return forwardingDecisionTable.get(pub, 0.0);
 	}
 	
-	private boolean isSubscriber(String pubname)
+	private boolean isSubscriber(int pub)
 	{
-		return mySubscriptions.contains(pubname);
+		return forwardingDecisionTable.isSubscribed(pub);
 	}
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.schedule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Read-only, array based, form of the schedules of a {@link ScheduleOracle}.
+ * The nodes are given dense indexes and the entries of each node are stored
+ * in primitive arrays sorted by their start time, so the entries starting
+ * after a given time are found with a binary search.
+ */
+class CompiledSchedule {
+	/** Dense index of each node ID */
+	private HashMap<Integer, Integer> indexes;
+	/** Node IDs by dense index */
+	private int[] nodeIds;
+	/** Index of the first entry of each node (and the end of the last) */
+	private int[] firstEntries;
+	/** Start times of the entries */
+	private double[] startTimes;
+	/** Times when the entries arrive at their destinations */
+	private double[] arrivalTimes;
+	/** Dense indexes of the destinations of the entries */
+	private int[] destinations;
+	/** The entries */
+	private ScheduleEntry[] entries;
+
+	/**
+	 * Compiles schedules
+	 * @param schedules The schedule entries of each (source) node
+	 */
+	CompiledSchedule(Map<Integer, List<ScheduleEntry>> schedules) {
+		TreeSet<Integer> ids = new TreeSet<Integer>();
+		int nrofEntries = 0;
+		for (List<ScheduleEntry> list : schedules.values()) {
+			for (ScheduleEntry se : list) {
+				ids.add(se.getFrom());
+				ids.add(se.getTo());
+			}
+			nrofEntries += list.size();
+		}
+
+		this.indexes = new HashMap<Integer, Integer>();
+		this.nodeIds = new int[ids.size()];
+		for (int id : ids) {
+			this.nodeIds[this.indexes.size()] = id;
+			this.indexes.put(id, this.indexes.size());
+		}
+
+		this.firstEntries = new int[this.nodeIds.length + 1];
+		this.startTimes = new double[nrofEntries];
+		this.arrivalTimes = new double[nrofEntries];
+		this.destinations = new int[nrofEntries];
+		this.entries = new ScheduleEntry[nrofEntries];
+
+		int next = 0;
+		for (int i = 0; i < this.nodeIds.length; i++) {
+			this.firstEntries[i] = next;
+			List<ScheduleEntry> list = schedules.get(this.nodeIds[i]);
+			if (list == null) {
+				continue; // only a destination
+			}
+
+			/* stable sort; entries with equal times stay in insertion order */
+			list = new ArrayList<ScheduleEntry>(list);
+			Collections.sort(list, new Comparator<ScheduleEntry>() {
+				public int compare(ScheduleEntry e1, ScheduleEntry e2) {
+					return Double.compare(e1.getTime(), e2.getTime());
+				}
+			});
+			for (ScheduleEntry se : list) {
+				this.startTimes[next] = se.getTime();
+				this.arrivalTimes[next] = se.getDestinationTime();
+				this.destinations[next] = this.indexes.get(se.getTo());
+				this.entries[next] = se;
+				next++;
+			}
+		}
+		this.firstEntries[this.nodeIds.length] = next;
+	}
+
+	/**
+	 * Returns the number of nodes in the schedules
+	 * @return the number of nodes
+	 */
+	int getNrofNodes() {
+		return this.nodeIds.length;
+	}
+
+	/**
+	 * Returns the dense index of a node
+	 * @param nodeId ID of the node
+	 * @return The index of the node or -1 if the node is not in the schedules
+	 */
+	int getIndex(int nodeId) {
+		Integer index = this.indexes.get(nodeId);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Returns the index of the first entry of a node that starts at or after
+	 * the given time
+	 * @param node Dense index of the node
+	 * @param time The time
+	 * @return Index of the first entry starting at or after the time or
+	 * {@link #getEndEntry(int)} if there are no such entries
+	 */
+	int getFirstEntry(int node, double time) {
+		int low = this.firstEntries[node];
+		int high = this.firstEntries[node + 1];
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.startTimes[mid] < time) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index after the last entry of a node
+	 * @param node Dense index of the node
+	 * @return The end index of the node's entries
+	 */
+	int getEndEntry(int node) {
+		return this.firstEntries[node + 1];
+	}
+
+	/**
+	 * Returns the start time of an entry
+	 * @param entry Index of the entry
+	 * @return The start time
+	 */
+	double getStartTime(int entry) {
+		return this.startTimes[entry];
+	}
+
+	/**
+	 * Returns the time when an entry arrives at its destination
+	 * @param entry Index of the entry
+	 * @return The arrival time
+	 */
+	double getArrivalTime(int entry) {
+		return this.arrivalTimes[entry];
+	}
+
+	/**
+	 * Returns the dense index of the destination of an entry
+	 * @param entry Index of the entry
+	 * @return The destination node
+	 */
+	int getDestination(int entry) {
+		return this.destinations[entry];
+	}
+
+	/**
+	 * Returns an entry
+	 * @param entry Index of the entry
+	 * @return The entry
+	 */
+	ScheduleEntry getEntry(int entry) {
+		return this.entries[entry];
+	}
+}
@@ -6,36 +6,43 @@
 package routing.schedule;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
 
 /**
- * Dijkstra's shortest path implementation for schedule data
+ * Dijkstra's shortest path implementation for schedule data. Finds the
+ * earliest arrival path over the time-dependent schedule entries: a node's
+ * entries that start before one can be at the node are skipped with a binary
+ * search on the compiled schedules (see {@link CompiledSchedule}) and the
+ * unvisited nodes are kept in an indexed binary heap keyed by their arrival
+ * times. The search state is kept in arrays that are reused between searches.
  */
 /* TODO: combine this with movement.map.DijkstraPathFinder? */
 public class ScheduleDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of the times when one could be at certain node */
-	private TimeMap times;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous schedule on the shortest path(s) */
-	private Map<Integer, ScheduleEntry> prevHops;
+	private static final double INFINITY = Double.MAX_VALUE;
+
 	/** Oracle that know all schedules */
 	private ScheduleOracle oracle;
-	
+	/** The compiled schedules the search arrays are for */
+	private CompiledSchedule schedule;
+	/** The times when one could be at certain node (if reached) */
+	private double[] times;
+	/** Previous schedule entries on the shortest path(s) (if reached) */
+	private ScheduleEntry[] prevHops;
+	/** ID of the search in which each node was reached */
+	private int[] reachedIn;
+	/** ID of the search in which each node was visited (the shortest path
+	 * to the node is known) */
+	private int[] visitedIn;
+	/** ID of the current search */
+	private int searchId;
+	/** Binary heap of the unvisited nodes discovered so far */
+	private int[] heap;
+	/** Positions of the nodes in the heap (-1 if not in the heap) */
+	private int[] heapPositions;
+	/** Number of nodes in the heap */
+	private int heapSize;
+
 	/**
 	 * Constructor.
 	 * @param oracle The schedule oracle
@@ -50,17 +57,25 @@ public class ScheduleDijkstra {
 	 * @param node The path's source node
 	 * @param time The time when the path starts
 	 */
-	private void initWith(Integer node, double time) {	
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DurationComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevHops = new HashMap<Integer, ScheduleEntry>();
-		this.times = new TimeMap();
-		
-		this.times.put(node, time);
-		this.unvisited.add(node);
+	private void initWith(int node, double time) {
+		CompiledSchedule cs = oracle.getCompiledSchedule();
+		if (cs != this.schedule) {
+			int nrofNodes = cs.getNrofNodes();
+			this.schedule = cs;
+			this.times = new double[nrofNodes];
+			this.prevHops = new ScheduleEntry[nrofNodes];
+			this.reachedIn = new int[nrofNodes];
+			this.visitedIn = new int[nrofNodes];
+			this.heap = new int[nrofNodes];
+			this.heapPositions = new int[nrofNodes];
+			this.searchId = 0;
+		}
+
+		this.searchId++;
+		this.heapSize = 0;
+		setTime(node, time);
 	}
-	
+
 	/**
 	 * Finds and returns the fastest path between two destinations
 	 * @param from The source of the path
@@ -69,143 +84,168 @@ public class ScheduleDijkstra {
 	 * @return a shortest path between the source and destination nodes in
 	 * a list of Integers or an empty list if such path is not available
 	 */
-	public List<ScheduleEntry> getShortestPath(Integer from, Integer to, 
+	public List<ScheduleEntry> getShortestPath(Integer from, Integer to,
 			double time){
-		List<ScheduleEntry> path = new ArrayList<ScheduleEntry>();		
+		List<ScheduleEntry> path = new ArrayList<ScheduleEntry>();
 		assert time >= 0.0 : "Can't use negative start time";
-		
-		if (from.compareTo(to) == 0) { 
+
+		if (from.compareTo(to) == 0) {
 			return path;
 		}
-		
-		initWith(from, time);
-		Integer node = null;
-		
-		while ((node = unvisited.poll()) != null) {
-			if (node.equals(to)) {
-				break; 
+
+		CompiledSchedule cs = oracle.getCompiledSchedule();
+		int source = cs.getIndex(from);
+		int destination = cs.getIndex(to);
+		if (source < 0 || destination < 0) {
+			return path; // no schedules for the source or destination
+		}
+
+		initWith(source, time);
+		int node = -1;
+
+		while ((node = poll()) >= 0) {
+			if (node == destination) {
+				break;
 			}
-			
-			visited.add(node); 
-			relax(node); 
-		}		
-
-		if (node != null) { // found a path
-			ScheduleEntry prev = prevHops.get(to); 
-			while (prev.getFrom() != from) { 
+
+			visitedIn[node] = searchId;
+			relax(node, destination);
+		}
+
+		if (node >= 0) { // found a path
+			ScheduleEntry prev = prevHops[destination];
+			while (prev.getFrom() != from) {
 				path.add(0, prev);
-				prev = prevHops.get(prev.getFrom());
+				prev = prevHops[cs.getIndex(prev.getFrom())];
 			}
-			
+
 			path.add(0, prev);
 		}
-		
+
 		return path;
 	}
-	
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
+	 * Entries starting only after the destination has been reached can't
+	 * lead to a faster path, so the (start time ordered) entries are
+	 * relaxed only up to the current time of the destination.
 	 * @param node The node whose neighbors are relaxed
+	 * @param destination The destination of the search
 	 */
-	private void relax(Integer node) {
-		double timeNow = times.get(node);
+	private void relax(int node, int destination) {
+		double timeNow = times[node];
+		CompiledSchedule cs = this.schedule;
 		int to;
 		double timeTo;
-		
-		for (ScheduleEntry se : oracle.getConnected(node, timeNow)) {
-			to = se.getTo();
-			if (visited.contains(to)) {
+
+		for (int i = cs.getFirstEntry(node, timeNow), end = cs.getEndEntry(node);
+				i < end; i++) {
+			if (cs.getStartTime(i) >= getTime(destination)) {
+				break;
+			}
+
+			to = cs.getDestination(i);
+			if (visitedIn[to] == searchId) {
 				continue; // skip visited nodes
 			}
-			
-			timeTo = se.getTime() +  se.getDuration();
-			
-			if (timeTo < times.get(to)) {
-				prevHops.put(to, se);
+
+			timeTo = cs.getArrivalTime(i);
+
+			if (timeTo < getTime(to)) {
+				prevHops[to] = cs.getEntry(i);
 				setTime(to, timeTo);
 			}
 		}
 	}
-	
+
+	/**
+	 * Returns the time when at a node
+	 * @param n The node
+	 * @return The time or {@link #INFINITY} if the node hasn't been reached
+	 */
+	private double getTime(int n) {
+		return reachedIn[n] == searchId ? times[n] : INFINITY;
+	}
+
 	/**
-	 * Sets the time when at a node
+	 * Sets the time when at a node (the time must be smaller than the
+	 * node's current time)
 	 * @param n The node whose time is set
 	 * @param time The time when at given node
 	 */
-	private void setTime(Integer n, double time) {
-		unvisited.remove(n);
-		times.put(n, time); 
-		unvisited.add(n);
+	private void setTime(int n, double time) {
+		if (reachedIn[n] != searchId) {
+			reachedIn[n] = searchId;
+			heapPositions[n] = heapSize;
+			heap[heapSize++] = n;
+		}
+		times[n] = time;
+		siftUp(heapPositions[n]);
 	}
-	
+
 	/**
-	 * Comparator that compares two nodes by their journey duration
+	 * Removes and returns the unvisited node with the smallest time
+	 * @return The node or -1 if there are no unvisited nodes
 	 */
-	private class DurationComparator implements Comparator<Integer> {
-		
-		/**
-		 * Compares two nodes by their time to get there 
-		 * @return -1, 0 or 1 if node1's time is smaller, equal to, or
-		 * bigger than node2's
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double time1 = times.get(node1);
-			double time2 = times.get(node2);
-			
-			if (time1 > time2) {
-				return 1;
-			}
-			else if (time1 < time2) {
-				return -1;
-			}
-			else {
-				return 0;
-			}
+	private int poll() {
+		if (heapSize == 0) {
+			return -1;
+		}
+
+		int first = heap[0];
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
 		}
+		return first;
 	}
-	
-	private class TimeMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty map
-		 */
-		public TimeMap() {
-			this.map = new HashMap<Integer, Double>(); 
+
+	/**
+	 * Moves a node up in the heap until its parent's time is not bigger
+	 * @param pos Position of the node in the heap
+	 */
+	private void siftUp(int pos) {
+		int n = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >> 1;
+			if (times[heap[parent]] <= times[n]) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			heapPositions[heap[pos]] = pos;
+			pos = parent;
 		}
-		
-		/**
-		 * Returns the currently known smallest time one has a path for to the
-		 * given node. If no time value is found, returns 
-		 * {@link ScheduleDijkstra#INFINITY} as the value.
-		 * @param node The node whose time is requested
-		 * @return The time when one could be at that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+		heap[pos] = n;
+		heapPositions[n] = pos;
+	}
+
+	/**
+	 * Moves a node down in the heap until its children's times are not
+	 * smaller
+	 * @param pos Position of the node in the heap
+	 */
+	private void siftDown(int pos) {
+		int n = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= heapSize) {
+				break;
 			}
-			else {
-				return INFINITY;
+			if (child + 1 < heapSize &&
+					times[heap[child + 1]] < times[heap[child]]) {
+				child++;
 			}
+			if (times[n] <= times[heap[child]]) {
+				break;
+			}
+			heap[pos] = heap[child];
+			heapPositions[heap[pos]] = pos;
+			pos = child;
 		}
-		
-		/**
-		 * Puts a new time value for a node
-		 * @param node The node
-		 * @param time Time at that node
-		 */
-		public void put(Integer node, double time) {
-			map.put(node, time);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
+		heap[pos] = n;
+		heapPositions[n] = pos;
 	}
 }
\ No newline at end of file
@@ -8,6 +8,9 @@ import java.io.Serializable;
 
 public class ScheduleEntry implements Serializable {
 	private static final long serialVersionUID = 42L;
+	/** Number of times the delta of any entry has changed (compiled 
+	 * schedules are rebuilt when the start times change) */
+	private static int nrofDeltaChanges = 0;
 	
 	private double time;
 	private int from;
@@ -89,6 +92,15 @@ public class ScheduleEntry implements Serializable {
 	 */
 	public void setDelta(double delta) {
 		this.delta = delta;
+		nrofDeltaChanges++;
+	}
+	
+	/**
+	 * Returns the number of times the delta of any entry has changed
+	 * @return the number of delta changes
+	 */
+	static int getNrofDeltaChanges() {
+		return nrofDeltaChanges;
 	}
 
 	/**
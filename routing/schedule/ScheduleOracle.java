@@ -10,10 +10,19 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Oracle that knows the schedules of all the nodes. For queries, the
+ * schedules are compiled to a sorted, array based, form (see 
+ * {@link CompiledSchedule}) that is rebuilt when the schedules change.
+ */
 public class ScheduleOracle implements Serializable{
 	private static final long serialVersionUID = 42L;
 	
 	Map<Integer, List<ScheduleEntry>> schedules;
+	/** Compiled form of the schedules or null if not compiled yet */
+	private transient CompiledSchedule compiled;
+	/** Number of entry delta changes when the schedules were compiled */
+	private transient int compiledDeltaChanges;
 	
 	public ScheduleOracle() {
 		this.schedules = new HashMap<Integer, List<ScheduleEntry>>();
@@ -37,6 +46,7 @@ public class ScheduleOracle implements Serializable{
 		}
 
 		list.add(new ScheduleEntry(start, from, via, to, duration));
+		this.compiled = null;
 	}
 
 	/**
@@ -55,25 +65,40 @@ public class ScheduleOracle implements Serializable{
 	 * from the given node
 	 * @param from The source node
 	 * @param time Time to start
-	 * @return List of reachable nodes 
+	 * @return List of reachable nodes (in the order of the entries' start
+	 * times)
 	 */
 	public List<ScheduleEntry> getConnected(int from, double time) {
 		List<ScheduleEntry> connected = new ArrayList<ScheduleEntry>();
-		List<ScheduleEntry> all = schedules.get(from);
+		CompiledSchedule cs = getCompiledSchedule();
+		int node = cs.getIndex(from);
 
-		if (all == null) {
+		if (node < 0) {
 			return connected;
 		}
 		
-		for (ScheduleEntry s : all) {
-			if (s.getTime() >= time) {
-				connected.add(s);
-			}
+		for (int i = cs.getFirstEntry(node, time), end = cs.getEndEntry(node);
+				i < end; i++) {
+			connected.add(cs.getEntry(i));
 		}
 		
 		return connected;
 	}
 	
+	/**
+	 * Returns the compiled form of the schedules, compiling the schedules
+	 * if they have changed since the last compilation
+	 * @return The compiled schedules
+	 */
+	CompiledSchedule getCompiledSchedule() {
+		if (this.compiled == null || 
+				this.compiledDeltaChanges != ScheduleEntry.getNrofDeltaChanges()) {
+			this.compiledDeltaChanges = ScheduleEntry.getNrofDeltaChanges();
+			this.compiled = new CompiledSchedule(this.schedules);
+		}
+		return this.compiled;
+	}
+	
 	/**
 	 * Returns all schedule entries
 	 * @return all schedule entries
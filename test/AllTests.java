@@ -40,6 +40,7 @@ public class AllTests {
 		suite.addTestSuite(TotalContactTimeReportTest.class);
 		suite.addTestSuite(EpidemicRouterTest.class);
 		suite.addTestSuite(ProphetRouterTest.class);
+		suite.addTestSuite(IdleRouterTest.class);
 		suite.addTestSuite(SettingsTest.class);
 		suite.addTestSuite(DijkstraPathFinderTest.class);
 		suite.addTestSuite(PointsOfInterestTest.class);
@@ -49,6 +50,15 @@ public class AllTests {
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(SendQueueTest.class);
+		suite.addTestSuite(OutgoingQueueTest.class);
+		suite.addTestSuite(HostSetTest.class);
+		suite.addTestSuite(ContactEpochsTest.class);
+		suite.addTestSuite(ContactHistoryTest.class);
+		suite.addTestSuite(PublicationTableTest.class);
+		suite.addTestSuite(TimerWheelTest.class);
+		suite.addTestSuite(EncounterTableTest.class);
+		suite.addTestSuite(EnergyModelTest.class);
 		//$JUnit-END$
 		return suite;
 	}
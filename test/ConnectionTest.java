@@ -9,6 +9,7 @@ import java.util.List;
 
 import junit.framework.TestCase;
 import core.CBRConnection;
+import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.NetworkInterface;
@@ -166,6 +167,65 @@ public class ConnectionTest extends TestCase {
 		assertTrue(c[0].isReadyForTransfer());
 	}
 
+	public void testConcurrentTransfers() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting("ctInterface." + NetworkInterface.TRANSMIT_RANGE_S, "1");
+		ts.putSetting("ctInterface." + NetworkInterface.TRANSMIT_SPEED_S, 
+				"100");
+		ts.putSetting("ctInterface." + 
+				NetworkInterface.CONCURRENT_TRANSFERS_S, "2");
+		
+		/* read the settings before creating the hosts (that reset them) */
+		NetworkInterface proto = 
+			new TestInterface(new TestSettings("ctInterface"));
+		NetworkInterface ni[] = new NetworkInterface[4];
+		for (int i=0; i<ni.length; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(proto);
+			TestDTNHost host = new TestDTNHost(li, 
+					new ModuleCommunicationBus());
+			ni[i] = host.getInterfaces().get(0);
+		}
+		assertEquals(2, ni[0].getConcurrentTransfers());
+		
+		for (int i=1; i<ni.length; i++) {
+			ni[0].connect(ni[i]);
+		}
+		List<Connection> cons = ni[0].getConnections();
+		DTNHost from = ni[0].getHost();
+		
+		cons.get(0).startTransfer(from, new Message(from, 
+				ni[1].getHost(), "c0", 100));
+		assertEquals(100.0, cons.get(0).getSpeed());
+		clock.advance(0.5);
+		assertEquals(50, cons.get(0).getRemainingByteCount());
+		
+		/* second transfer gets half of the speed from the first one */
+		cons.get(1).startTransfer(from, new Message(from, 
+				ni[2].getHost(), "c1", 100));
+		assertEquals(50.0, cons.get(0).getSpeed());
+		assertEquals(50.0, cons.get(1).getSpeed());
+		assertEquals(50, cons.get(0).getRemainingByteCount());
+		assertEquals(100, cons.get(1).getRemainingByteCount());
+		assertEquals(2, ni[0].getNrofBusyConnections());
+		
+		/* limit of concurrent transfers is reached */
+		assertTrue(ni[0].isTransferLimitReached());
+		assertFalse(cons.get(2).isReadyForTransfer());
+		
+		clock.advance(1.0);
+		assertTrue(cons.get(0).isMessageTransferred());
+		assertEquals(50, cons.get(1).getRemainingByteCount());
+		cons.get(0).finalizeTransfer();
+		
+		/* the remaining transfer gets all of the speed */
+		assertEquals(100.0, cons.get(1).getSpeed());
+		assertEquals(50, cons.get(1).getRemainingByteCount());
+		assertTrue(cons.get(2).isReadyForTransfer());
+		clock.advance(0.5);
+		assertTrue(cons.get(1).isMessageTransferred());
+	}
+
 	public void testGetTotalBytesTransferred() {
 		int count = 0;
 		
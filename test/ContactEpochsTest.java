@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.community.ContactEpochs;
+import routing.community.HostSet;
+import core.DTNHost;
+
+/**
+ * Tests for the epoch based unique contact counters of the centrality
+ * algorithms.
+ */
+public class ContactEpochsTest extends TestCase {
+	private final int NROF_HOSTS = 4;
+	private final int EPOCH = 100;
+	private DTNHost[] hosts;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		HostSet.reset();
+		TestUtils tu = new TestUtils(null, null, new TestSettings());
+		hosts = new DTNHost[NROF_HOSTS];
+		for (int i=0; i<NROF_HOSTS; i++) {
+			hosts[i] = tu.createHost();
+		}
+	}
+
+	public void testRingBuffer() {
+		ContactEpochs ce = new ContactEpochs(EPOCH, 3);
+		ce.addContact(hosts[0], 10);
+		ce.addContact(hosts[0], 20); // same host, same epoch
+		ce.addContact(hosts[1], 50);
+		ce.addContact(hosts[1], 150);
+		ce.addContact(hosts[2], 250);
+
+		assertEquals(2, ce.getCount(0));
+		assertEquals(1, ce.getCount(1));
+		assertEquals(1, ce.getCount(2));
+		assertEquals(4, ce.getTotalCount());
+		assertEquals(3, ce.getUnionCount(0, 2, null));
+
+		HostSet community = new HostSet();
+		community.add(hosts[1]);
+		assertEquals(1, ce.getCount(0, community));
+		assertEquals(0, ce.getCount(2, community));
+		assertEquals(1, ce.getUnionCount(0, 2, community));
+
+		/* epoch 3 reuses the slot of epoch 0 */
+		ce.addContact(hosts[3], 310);
+		assertEquals(0, ce.getCount(0));
+		assertEquals(1, ce.getCount(3));
+		assertEquals(3, ce.getTotalCount());
+		assertEquals(3, ce.getUnionCount(0, 3, null));
+
+		/* a long gap clears the whole buffer */
+		ce.addContact(hosts[0], 1050);
+		assertEquals(0, ce.getCount(3));
+		assertEquals(1, ce.getCount(10));
+		assertEquals(1, ce.getTotalCount());
+		assertEquals(0, ce.getCount(11));
+	}
+
+	public void testUnlimited() {
+		ContactEpochs ce = new ContactEpochs(EPOCH, 0);
+		ce.addContact(hosts[0], 10);
+		ce.addContact(hosts[0], 520);
+		ce.addContact(hosts[1], 530);
+
+		assertEquals(1, ce.getCount(0));
+		assertEquals(0, ce.getCount(3));
+		assertEquals(2, ce.getCount(5));
+		assertEquals(3, ce.getTotalCount());
+		assertEquals(2, ce.getUnionCount(0, 5, null));
+	}
+}
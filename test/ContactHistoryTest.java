@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.community.ContactHistory;
+
+/**
+ * Tests for the primitive contact history of the community routers.
+ */
+public class ContactHistoryTest extends TestCase {
+	private static final double DELTA = 0.000001;
+
+	public void testContacts() {
+		ContactHistory h = new ContactHistory();
+		assertEquals(0, h.size());
+		assertEquals(0, h.getTotalDuration(), DELTA);
+		assertFalse(h.isConnected());
+		assertFalse(h.connectionEnded(10)); // no open contact
+		assertFalse(h.hasEndedContacts());
+
+		h.connectionStarted(10);
+		assertTrue(h.isConnected());
+		assertTrue(h.connectionEnded(15));
+		assertFalse(h.isConnected());
+
+		h.connectionStarted(20);
+		assertFalse(h.connectionEnded(20)); // zero duration, not recorded
+		assertEquals(1, h.size());
+
+		/* a zero-length contact still counts as an ended contact */
+		ContactHistory zero = new ContactHistory();
+		zero.connectionStarted(30);
+		assertFalse(zero.connectionEnded(30));
+		assertEquals(0, zero.size());
+		assertTrue(zero.hasEndedContacts());
+
+		/* enough contacts to grow the arrays */
+		for (int i=0; i<5; i++) {
+			h.addContact(100 * (i+1), 100 * (i+1) + 10);
+		}
+
+		assertEquals(6, h.size());
+		assertEquals(10, h.getStart(0), DELTA);
+		assertEquals(15, h.getEnd(0), DELTA);
+		assertEquals(510, h.getLastEnd(), DELTA);
+		assertEquals(55, h.getTotalDuration(), DELTA);
+		assertEquals(30, h.getDurationSince(300), DELTA);
+		assertEquals(0, h.getDurationSince(510), DELTA);
+	}
+
+	public void testTrim() {
+		ContactHistory h = new ContactHistory();
+		h.addContact(0, 10);
+		h.addContact(20, 25);
+		h.addContact(30, 40);
+
+		h.trim(25);
+		assertEquals(1, h.size());
+		assertEquals(30, h.getStart(0), DELTA);
+		assertEquals(25, h.getTotalDuration(), DELTA);
+		assertEquals(10, h.getDurationSince(0), DELTA);
+
+		/* the latest contact is always kept */
+		h.trim(1000);
+		assertEquals(1, h.size());
+		assertEquals(40, h.getLastEnd(), DELTA);
+
+		h.addContact(50, 52);
+		assertEquals(27, h.getTotalDuration(), DELTA);
+		assertEquals(2, h.getDurationSince(40), DELTA);
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.EncounterTable;
+import core.DTNHost;
+import core.SimError;
+
+/**
+ * Tests for the encounter table of the Spray and Focus router.
+ */
+public class EncounterTableTest extends TestCase {
+	private final int NROF_HOSTS = 10;
+	private DTNHost[] hosts;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		TestUtils tu = new TestUtils(null, null, new TestSettings());
+		hosts = new DTNHost[NROF_HOSTS];
+		for (int i=0; i<NROF_HOSTS; i++) {
+			hosts[i] = tu.createHost();
+		}
+	}
+
+	public void testTimes() {
+		EncounterTable table = new EncounterTable();
+		assertEquals(0, table.size());
+		assertFalse(table.contains(hosts[3]));
+		assertEquals(-1.0, table.getTime(hosts[3], -1.0));
+
+		table.setTime(hosts[3], 10.0);
+		table.setTime(hosts[8], 20.0);
+		table.setTime(hosts[3], 15.0);
+		assertEquals(2, table.size());
+		assertTrue(table.contains(hosts[3]));
+		assertFalse(table.contains(hosts[4]));
+		assertEquals(15.0, table.getTime(hosts[3], -1.0));
+		assertEquals(20.0, table.getTime(8));
+		assertTrue(Double.isNaN(table.getTime(NROF_HOSTS + 100)));
+	}
+
+	public void testSnapshots() {
+		EncounterTable table = new EncounterTable();
+		table.setTime(hosts[1], 1.0);
+		EncounterTable s1 = table.snapshot();
+		EncounterTable s2 = table.snapshot();
+
+		table.setTime(hosts[1], 2.0);
+		table.setTime(hosts[2], 3.0);
+		EncounterTable s3 = table.snapshot();
+		table.setTime(hosts[NROF_HOSTS - 1], 4.0);
+
+		/* the snapshots don't see the later changes */
+		assertEquals(1.0, s1.getTime(hosts[1], -1.0));
+		assertEquals(1.0, s2.getTime(hosts[1], -1.0));
+		assertFalse(s1.contains(hosts[2]));
+		assertEquals(1, s1.size());
+		assertEquals(2.0, s3.getTime(hosts[1], -1.0));
+		assertEquals(2, s3.size());
+		assertFalse(s3.contains(hosts[NROF_HOSTS - 1]));
+		assertEquals(3, table.size());
+
+		try {
+			s3.setTime(hosts[1], 5.0);
+			fail("Snapshot should be read-only");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+}
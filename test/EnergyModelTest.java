@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.EnergyModel;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for the event-scheduled energy model.
+ */
+public class EnergyModelTest extends TestCase {
+	private SimClock clock;
+	private TestSettings ts;
+	private DTNHost host;
+	private ModuleCommunicationBus comBus;
+	private EnergyModel model;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		NetworkInterface.reset();
+		DTNHost.reset();
+		SimClock.reset();
+		EnergyModel.reset();
+		this.clock = SimClock.getInstance();
+
+		ts = new TestSettings();
+		ts.putSetting(EnergyModel.INIT_ENERGY_S, "100");
+		ts.putSetting(EnergyModel.SCAN_ENERGY_S, "1");
+		ts.putSetting(core.SimScenario.SCAN_INTERVAL_S, "10");
+		ts.putSetting(EnergyModel.TRANSMIT_ENERGY_S, "0.4");
+		ts.putSetting(EnergyModel.RECEIVE_ENERGY_S, "0.2");
+
+		host = new TestUtils(null, null, ts).createHost();
+		comBus = host.getComBus();
+		model = new EnergyModel(ts).replicate();
+		model.setHost(host);
+	}
+
+	public void testIntegration() {
+		assertEquals(100.0, comBus.getDouble(EnergyModel.ENERGY_KEY, -1));
+		clock.setTime(100);
+		assertEquals(90.0, model.getEnergy(100), 0.0001);
+
+		model.setState(EnergyModel.SCANNING | EnergyModel.TRANSMITTING, 100);
+		assertEquals(90.0, comBus.getDouble(EnergyModel.ENERGY_KEY, -1),
+				0.0001);
+		clock.setTime(150);
+		double[] levels = EnergyModel.getEnergyLevels(150);
+		assertEquals(65.0, levels[host.getAddress()], 0.0001);
+
+		model.setState(EnergyModel.IDLE, 150);
+		assertEquals(65.0, model.getEnergy(1000), 0.0001);
+	}
+
+	public void testDepletion() {
+		model.setState(EnergyModel.SCANNING | EnergyModel.TRANSMITTING |
+				EnergyModel.RECEIVING, 0);
+
+		/* 100 units at 0.7 units/s last until 142.86 s */
+		EnergyModel.update(142);
+		assertFalse(model.isDepleted());
+		assertEquals(1.0, comBus.getDouble(NetworkInterface.RANGE_KEY, -1));
+
+		EnergyModel.update(143);
+		assertTrue(model.isDepleted());
+		assertEquals(0.0, model.getEnergy(143));
+		assertEquals(0.0, comBus.getDouble(EnergyModel.ENERGY_KEY, -1));
+		assertEquals(0.0, comBus.getDouble(NetworkInterface.RANGE_KEY, -1));
+	}
+
+	public void testContinuousScanning() {
+		/* scanning interval 0: scan energy is used once per update interval
+		 * (0.1 s), i.e., 1 unit per second */
+		ts.putSetting(core.SimScenario.SCAN_INTERVAL_S, "0");
+		ts.putSetting(EnergyModel.SCAN_ENERGY_S, "0.1");
+		DTNHost host2 = new TestUtils(null, null, ts).createHost();
+		EnergyModel model2 = new EnergyModel(ts).replicate();
+		model2.setHost(host2);
+
+		clock.setTime(50);
+		assertEquals(50.0, model2.getEnergy(50), 0.0001);
+		EnergyModel.update(99);
+		assertFalse(model2.isDepleted());
+		EnergyModel.update(100);
+		assertTrue(model2.isDepleted());
+
+		/* no scan energy: the level doesn't change */
+		ts.putSetting(EnergyModel.SCAN_ENERGY_S, "0");
+		DTNHost host3 = new TestUtils(null, null, ts).createHost();
+		EnergyModel model3 = new EnergyModel(ts).replicate();
+		model3.setHost(host3);
+		clock.setTime(200);
+		assertEquals(100.0, model3.getEnergy(200));
+		assertFalse(model3.isDepleted());
+		assertEquals(100.0,
+				EnergyModel.getEnergyLevels(200)[host3.getAddress()]);
+	}
+
+	public void testCharging() {
+		clock.setTime(500);
+		comBus.setDouble(EnergyModel.ENERGY_KEY, 200.0);
+		assertEquals(200.0, model.getEnergy(500));
+
+		/* 200 units at 0.1 units/s last until 2500 s */
+		EnergyModel.update(1100);
+		assertFalse(model.isDepleted());
+		EnergyModel.update(2500);
+		assertTrue(model.isDepleted());
+	}
+}
@@ -6,6 +6,7 @@ package test;
 
 import routing.EpidemicRouter;
 import routing.MessageRouter;
+import routing.SummaryVector;
 import core.DTNHost;
 import core.Message;
 
@@ -619,4 +620,46 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertNotSame(orderedIds, runMessageExchange(true));
 		assertNotSame(orderedIds, runMessageExchange(false));
 	}
+	
+	/**
+	 * Tests that the summary vectors follow the buffers and the delivered
+	 * messages
+	 */
+	public void testSummaryVector() {
+		Message m1 = new Message(h1, h3, msgId1, 1);
+		h1.createNewMessage(m1);
+		Message m2 = new Message(h1, h2, msgId2, 1);
+		h1.createNewMessage(m2);
+		
+		SummaryVector sv1 = h1.getRouter().getSummaryVector();
+		int version = sv1.getVersion();
+		assertEquals(2, sv1.size());
+		assertTrue(sv1.contains(m1));
+		assertFalse(h2.getRouter().getSummaryVector().contains(m1));
+		
+		h1.connect(h2);
+		updateAllNodes();
+		clock.advance(1);
+		updateAllNodes();
+		clock.advance(1);
+		updateAllNodes();
+		
+		// both messages are at h2: m2 delivered, m1 in the buffer
+		SummaryVector sv2 = h2.getRouter().getSummaryVector();
+		assertTrue(sv2.contains(m1));
+		assertTrue(sv2.contains(m2));
+		assertEquals(version, sv1.getVersion()); // h1 didn't change
+		
+		h1.deleteMessage(msgId1, true);
+		assertFalse(sv1.contains(m1));
+		assertTrue(sv1.getVersion() != version);
+		
+		// a delivered message leaving the buffer stays in the vector but
+		// changes its version
+		h2.createNewMessage(new Message(h2, h3, msgId2, 1));
+		version = sv2.getVersion();
+		h2.deleteMessage(msgId2, true);
+		assertTrue(sv2.contains(m2));
+		assertTrue(sv2.getVersion() != version);
+	}
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.community.HostSet;
+import core.DTNHost;
+
+/**
+ * Tests for the bit set based host set of the community detection classes.
+ */
+public class HostSetTest extends TestCase {
+	/* enough hosts to span several words of the bit set */
+	private final int NROF_HOSTS = 150;
+	private DTNHost[] hosts;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		HostSet.reset();
+		TestUtils tu = new TestUtils(null, null, new TestSettings());
+		hosts = new DTNHost[NROF_HOSTS];
+		for (int i=0; i<NROF_HOSTS; i++) {
+			hosts[i] = tu.createHost();
+		}
+	}
+
+	private HostSet createSet(int... indexes) {
+		HostSet set = new HostSet();
+		for (int i : indexes) {
+			set.add(hosts[i]);
+		}
+		return set;
+	}
+
+	public void testAddAndRemove() {
+		HostSet set = createSet(130, 3, 64, 3);
+		assertEquals(3, set.size());
+		assertTrue(set.contains(hosts[64]));
+		assertFalse(set.contains(hosts[63]));
+		assertFalse(set.contains("foo"));
+
+		/* iteration is in the order of the addresses */
+		List<DTNHost> list = new ArrayList<DTNHost>(set);
+		assertEquals(Arrays.asList(hosts[3], hosts[64], hosts[130]), list);
+
+		assertTrue(set.remove(hosts[64]));
+		assertFalse(set.remove(hosts[64]));
+		assertEquals(2, set.size());
+
+		Iterator<DTNHost> i = set.iterator();
+		assertEquals(hosts[3], i.next());
+		i.remove();
+		assertEquals(hosts[130], i.next());
+		assertFalse(i.hasNext());
+		assertEquals(1, set.size());
+		assertFalse(set.contains(hosts[3]));
+	}
+
+	public void testIntersectionAndUnion() {
+		HostSet s1 = createSet(1, 2, 70, 100, 149);
+		HostSet s2 = createSet(2, 5, 100);
+
+		assertEquals(2, s1.intersectionSize(s2));
+		assertEquals(2, s2.intersectionSize(s1));
+		assertEquals(6, s1.unionSize(s2));
+		assertEquals(0, s1.intersectionSize(new HostSet()));
+
+		HostSet copy = new HostSet(s2);
+		assertTrue(copy.addAll(s1));
+		assertFalse(copy.addAll(s2));
+		assertEquals(6, copy.size());
+		assertEquals(3, s2.size()); // original not modified
+
+		/* adding from other kind of collection */
+		assertTrue(s2.addAll(Arrays.asList(hosts[0], hosts[2])));
+		assertEquals(4, s2.size());
+		assertEquals(s2, createSet(0, 2, 5, 100));
+	}
+}
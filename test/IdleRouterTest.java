@@ -0,0 +1,82 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import routing.ActiveRouter;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Message;
+import core.World;
+
+/**
+ * Tests for skipping the updates of idle routers 
+ * (see {@link World#SKIP_IDLE_ROUTERS_S}).
+ */
+public class IdleRouterTest extends AbstractRouterTest {
+	private static final String SKIP_S = World.SETTINGS_NS + "." + 
+		World.SKIP_IDLE_ROUTERS_S;
+	
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(SKIP_S, "true");
+		setRouterProto(new EpidemicRouter(ts));
+		ts.putSetting(SKIP_S, "false"); // don't affect other tests
+		super.setUp();
+	}
+	
+	/**
+	 * Puts the router of a host to sleep by updating it when it has nothing
+	 * to do
+	 * @param r The router
+	 */
+	private void putToSleep(MessageRouter r) {
+		r.update();
+		assertFalse(r.isAwake());
+	}
+	
+	public void testWakeUpTime() {
+		MessageRouter r = h1.getRouter();
+		assertTrue(r.isSkippingIdle());
+		assertTrue(r.isAwake());
+		
+		putToSleep(r);
+		clock.setTime(ActiveRouter.TTL_CHECK_INTERVAL - 1);
+		assertFalse(r.isAwake());
+		clock.setTime(ActiveRouter.TTL_CHECK_INTERVAL);
+		assertTrue(r.isAwake());
+	}
+	
+	public void testNewMessageWakesUp() {
+		MessageRouter r = h1.getRouter();
+		putToSleep(r);
+		
+		h1.createNewMessage(new Message(h1, h2, msgId1, 1));
+		assertTrue(r.isAwake());
+	}
+	
+	public void testConnectionChangeWakesUp() {
+		MessageRouter r1 = h1.getRouter();
+		MessageRouter r2 = h2.getRouter();
+		putToSleep(r1);
+		putToSleep(r2);
+		
+		h1.connect(h2);
+		assertTrue(r1.isAwake());
+		assertTrue(r2.isAwake());
+		
+		putToSleep(r1);
+		putToSleep(r2);
+		disconnect(h1); // updates h1, so check only the peer
+		assertTrue(r2.isAwake());
+	}
+	
+	public void testNoSleepByDefault() {
+		MessageRouter r = new EpidemicRouter(ts).replicate();
+		r.initialize(h0, null);
+		assertFalse(r.isSkippingIdle());
+		r.update();
+		assertTrue(r.isAwake());
+	}
+}
@@ -121,9 +121,54 @@ public class MaxPropDijkstraTest extends TestCase {
 		assertEquals(1-0.0625, result.get(2));
 		assertEquals(1-0.625, result.get(4));
 		assertEquals( (1-0.625)+(1-0.5), result.get(5));
+		
+		/* cost trees give the same results */
+		assertEquals(0.0, mpd.getCost(0, 1, 1));
+		assertEquals(1-0.0625, mpd.getCost(0, 2, 1));
+		assertEquals((1-0.625)+(1-0.5), mpd.getCost(0, 5, 1));
+		assertEquals(Double.MAX_VALUE, mpd.getCost(0, 7, 1));
+		assertEquals(Double.MAX_VALUE, mpd.getCost(5, 0, 1));
+		
+		mapping.get(4).updateMeetingProbFor(5); // h4 meets h5 again
+		/* cached tree is used until the version changes */
+		assertEquals((1-0.625)+(1-0.5), mpd.getCost(0, 5, 1));
+		assertEquals((1-0.625)+(1-0.75), mpd.getCost(0, 5, 2));
+		assertEquals(1-0.75, mpd.getCost(4, 5, 2));
 	}
 	
 	
+	public void testSnapshots() {
+		MeetingProbabilitySet mps = mapping.get(0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		
+		MeetingProbabilitySet snapshot = mps.snapshot();
+		assertSame(snapshot, mps.snapshot()); // not modified -> same snapshot
+		assertSame(snapshot, snapshot.snapshot());
+		assertEquals(0.5, snapshot.getProbFor(2));
+		
+		MeetingProbabilitySet copy = snapshot.replicate();
+		copy.updateMeetingProbFor(3);
+		mps.updateMeetingProbFor(2);
+		
+		/* modifications don't affect the shared snapshot (or copies) */
+		assertEquals(0.5, snapshot.getProbFor(1));
+		assertEquals(0.5, snapshot.getProbFor(2));
+		assertEquals(2, snapshot.size());
+		assertEquals(0.25, copy.getProbFor(2));
+		assertEquals(0.5, copy.getProbFor(3));
+		assertEquals(0.75, mps.getProbFor(2));
+		assertNotSame(snapshot, mps.snapshot());
+		assertEquals(0.75, mps.snapshot().getProbFor(2));
+		
+		try {
+			snapshot.updateMeetingProbFor(1);
+			fail("Snapshot was modified");
+		} catch (core.SimError e) {
+			// expected
+		}
+	}
+	
 	public void testProbabilitySumsToOne() {
 		double total;
 		
@@ -4,8 +4,11 @@
  */
 package test;
 
+import java.util.List;
+
 import routing.MaxPropRouter;
 import routing.MessageRouter;
+import routing.maxprop.AckedMessages;
 import core.DTNHost;
 import core.Message;
 import core.SimScenario;
@@ -181,6 +184,37 @@ public class MaxPropRouterTest extends AbstractRouterTest {
 
 	}
 	
+	public void testAckExchangeDeltas() {
+		AckedMessages a1 = new AckedMessages();
+		AckedMessages a2 = new AckedMessages();
+		
+		assertTrue(a1.add(msgId1));
+		assertFalse(a1.add(msgId1));
+		a1.add(msgId2);
+		a2.add(msgId2);
+		a2.add(msgId3);
+		
+		List<String> newIds = a1.addAllFrom(a2);
+		assertEquals(1, newIds.size());
+		assertEquals(msgId3, newIds.get(0));
+		newIds = a2.addAllFrom(a1);
+		assertEquals(1, newIds.size());
+		assertEquals(msgId1, newIds.get(0));
+		assertTrue(a2.contains(msgId1));
+		assertEquals(3, a1.size());
+		assertEquals(3, a2.size());
+		
+		/* nothing new since the last merge */
+		assertEquals(0, a1.addAllFrom(a2).size());
+		assertEquals(0, a2.addAllFrom(a1).size());
+		
+		a2.add(msgId4);
+		newIds = a1.addAllFrom(a2);
+		assertEquals(1, newIds.size());
+		assertEquals(msgId4, newIds.get(0));
+		assertFalse(a1.contains(msgId5));
+	}
+	
 	public void testRouting() {
 		int msgSize = 10;
 		DTNHost th1 = utils.createHost(c0, "temp1");
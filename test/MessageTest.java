@@ -11,7 +11,9 @@ import org.junit.Test;
 
 import core.DTNHost;
 import core.Message;
+import core.MessageSlot;
 import core.SimClock;
+import core.SimError;
 
 public class MessageTest extends TestCase {
 
@@ -60,5 +62,33 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testSlots() {
+		MessageSlot intSlot = MessageSlot.register("MessageTest.int");
+		MessageSlot doubleSlot = MessageSlot.register("MessageTest.double");
+		assertSame(intSlot, MessageSlot.register("MessageTest.int"));
+		
+		assertFalse(msg.hasSlot(intSlot));
+		msg.setInt(intSlot, 5);
+		msg.setDouble(doubleSlot, 0.25);
+		assertTrue(msg.hasSlot(intSlot));
+		assertEquals(5, msg.getInt(intSlot));
+		assertEquals(0.25, msg.getDouble(doubleSlot));
+		
+		/* replicates get a copy of the values */
+		Message copy = msg.replicate();
+		msg.setInt(intSlot, 6);
+		assertEquals(5, copy.getInt(intSlot));
+		
+		msg.clearSlot(intSlot);
+		assertFalse(msg.hasSlot(intSlot));
+		try {
+			msg.getInt(intSlot);
+			fail("No value should be found for a cleared slot");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+
 
 }
@@ -9,8 +9,11 @@ import junit.framework.TestCase;
 import org.junit.Before;
 import org.junit.Test;
 
+import core.BusKey;
+import core.BusKeyListener;
 import core.ModuleCommunicationBus;
 import core.ModuleCommunicationListener;
+import core.SimError;
 
 public class ModuleCommunicationBusTest extends TestCase {
 
@@ -101,6 +104,99 @@ public class ModuleCommunicationBusTest extends TestCase {
 
 		assertEquals(-16.7, b.updateDouble(key, -30));
 		assertEquals(-16.7, b.getDouble(key, -1.0));
+	}
+
+	@Test
+	public void testTypedKeys() {
+		BusKey<Double> dKey = BusKey.register("typedtst.double", Double.class);
+		BusKey<Integer> iKey = BusKey.register("typedtst.int", Integer.class);
+		BusKey<String> sKey = BusKey.register("typedtst.string", String.class);
+
+		assertSame(dKey, BusKey.register("typedtst.double", Double.class));
+		assertFalse(b.hasProperty(dKey));
+		assertEquals(-1.0, b.getDouble(dKey, -1.0));
+		assertNull(b.getProperty(sKey));
+
+		b.addProperty(dKey, 15.5);
+		b.setInt(iKey, 3);
+		b.addProperty(sKey, TST_VAL);
+		assertTrue(b.hasProperty(dKey));
+		assertEquals(16.5, b.updateDouble(dKey, 1.0));
+		assertEquals(16.5, b.getDouble(dKey, -1.0));
+		assertEquals(16.5, b.getProperty(dKey));
+		assertEquals(3, b.getInt(iKey, -1));
+		assertEquals(TST_VAL, b.getProperty(sKey));
+
+		b.setDouble(dKey, 2.0);
+		assertEquals(2.0, b.getDouble(dKey, -1.0));
+
+		try {
+			b.addProperty(dKey, 1.0);
+			fail("Value was added twice");
+		} catch (SimError e) {
+			// should throw
+		}
+		try {
+			b.updateDouble(iKey, 1.0);
+			fail("Integer value was updated as a Double");
+		} catch (SimError e) {
+			// should throw
+		}
+	}
+
+	@Test
+	public void testTypedAndStringKeys() {
+		/* String key used first */
+		b.addProperty("typedtst.first", 1.5);
+		b.subscribe("typedtst.first", mcl);
+		BusKey<Double> key = BusKey.register("typedtst.first", Double.class);
+		assertEquals(1.5, b.getDouble(key, -1.0));
+		assertEquals(2.5, b.updateDouble(key, 1.0));
+		assertEquals("typedtst.first", notifyKey);
+		assertEquals(2.5, notifyValue);
+
+		/* typed key registered first */
+		BusKey<Integer> key2 = BusKey.register("typedtst.second", Integer.class);
+		b.setInt(key2, 5);
+		assertEquals(5, b.getProperty("typedtst.second"));
+		assertEquals(5, b.getInt("typedtst.second", -1));
+		b.updateProperty("typedtst.second", 6);
+		assertEquals(6, b.getInt(key2, -1));
+
+		try {
+			BusKey.register("typedtst.second", Double.class);
+			fail("Key was registered with another type");
+		} catch (SimError e) {
+			// should throw
+		}
+	}
+
+	@Test
+	public void testTypedSubscribe() {
+		final BusKey<Double> key =
+			BusKey.register("typedtst.sub", Double.class);
+		final double[] notified = {-1.0};
+		BusKeyListener listener = new BusKeyListener() {
+			public void busValueChanged(BusKey<?> k,
+					ModuleCommunicationBus bus) {
+				assertSame(key, k);
+				notified[0] = bus.getDouble(key, 0);
+			}
+		};
+
+		b.setDouble(key, 1.0);
+		b.subscribe(key, listener);
+		b.subscribe("typedtst.sub", mcl);
+		assertEquals(-1.0, notified[0]);
+
+		b.updateDouble(key, 2.0);
+		assertEquals(3.0, notified[0]);
+		assertEquals(3.0, notifyValue);
+
+		b.unsubscribe(key, listener);
+		b.updateProperty("typedtst.sub", 4.0);
+		assertEquals(3.0, notified[0]);
+		assertEquals(4.0, notifyValue);
 	}	
 
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import routing.OutgoingQueue;
+import core.Connection;
+import core.Message;
+import core.Tuple;
+
+/**
+ * Tests for the OutgoingQueue
+ */
+public class OutgoingQueueTest extends AbstractRouterTest {
+	private Message m[];
+	private int nrof = 3;
+	private Connection c1;
+	private Connection c2;
+	private OutgoingQueue q;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		setRouterProto(new EpidemicRouter(ts));
+		super.setUp();
+
+		m = new Message[nrof];
+		for (int i=0; i<nrof; i++) {
+			m[i] = new Message(h0, h3, "M" + i, 1);
+		}
+		h0.connect(h1);
+		h0.connect(h2);
+		c1 = h0.getConnections().get(0);
+		c2 = h0.getConnections().get(1);
+
+		/* M0->c1, M1->c1, M0->c2, M2->c2, M1->c2 */
+		q = new OutgoingQueue();
+		q.add(m[0], c1);
+		q.add(m[1], c1);
+		q.add(m[0], c2);
+		q.add(m[2], c2);
+		q.add(m[1], c2);
+	}
+
+	private void assertQueue(Message[] msgs, Connection[] cons) {
+		List<Tuple<Message, Connection>> list =
+			new ArrayList<Tuple<Message, Connection>>(q);
+		assertEquals(msgs.length, q.size());
+		assertEquals(msgs.length, list.size());
+		for (int i=0; i<msgs.length; i++) {
+			assertEquals(msgs[i], list.get(i).getKey());
+			assertEquals(cons[i], list.get(i).getValue());
+		}
+	}
+
+	public void testOrder() {
+		assertQueue(new Message[] {m[0], m[1], m[0], m[2], m[1]},
+				new Connection[] {c1, c1, c2, c2, c2});
+	}
+
+	public void testRemove() {
+		assertTrue(q.remove("M1", c2));
+		assertFalse(q.remove("M1", c2));
+		assertFalse(q.remove("M2", c1));
+		assertQueue(new Message[] {m[0], m[1], m[0], m[2]},
+				new Connection[] {c1, c1, c2, c2});
+
+		q.removeMessage("M0");
+		assertQueue(new Message[] {m[1], m[2]}, new Connection[] {c1, c2});
+
+		q.removeConnection(c1);
+		assertQueue(new Message[] {m[2]}, new Connection[] {c2});
+
+		q.removeConnection(c2);
+		assertQueue(new Message[0], new Connection[0]);
+		assertTrue(q.isEmpty());
+
+		/* the queue is usable after it has been emptied */
+		q.add(m[1], c1);
+		assertQueue(new Message[] {m[1]}, new Connection[] {c1});
+	}
+
+	public void testRemoveWhileIterating() {
+		Iterator<Tuple<Message, Connection>> i = q.iterator();
+		assertEquals(m[0], i.next().getKey());
+
+		/* remove the next tuples (M1->c1 and M0->c2) */
+		q.removeConnection(c1);
+		q.removeMessage("M0");
+
+		assertTrue(i.hasNext());
+		assertEquals(m[2], i.next().getKey());
+		q.remove("M2", c2); // remove the current tuple
+		assertEquals(m[1], i.next().getKey());
+		assertFalse(i.hasNext());
+
+		assertQueue(new Message[] {m[1]}, new Connection[] {c2});
+	}
+}
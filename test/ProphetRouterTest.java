@@ -6,6 +6,7 @@ package test;
 
 import routing.MessageRouter;
 import routing.ProphetRouter;
+import routing.prophet.DeliveryPredictabilities;
 import core.Message;
 
 /**
@@ -149,5 +150,78 @@ public class ProphetRouterTest extends AbstractRouterTest {
 		assertEquals(newPred, r4.getPredFor(h5));
 		assertEquals(newPred, r5.getPredFor(h4));
 	}
+	
+	public void testLongAging() {
+		ProphetRouter r4 = (ProphetRouter)h4.getRouter();
+		
+		h4.connect(h5);
+		disconnect(h5);
+		h4.connect(h6);
+		disconnect(h6);
+		
+		// long enough time for the aging multiplier to underflow
+		clock.advance(SECONDS_IN_TIME_UNIT * 20000);
+		assertEquals(0.0, r4.getPredFor(h5), 1e-100);
+		assertEquals(0.0, r4.getPredFor(h6), 1e-100);
+		
+		h4.connect(h5);
+		assertEquals(ProphetRouter.P_INIT, r4.getPredFor(h5), 1e-10);
+		assertEquals(0.0, r4.getPredFor(h6), 1e-100);
+		
+		clock.advance(SECONDS_IN_TIME_UNIT);
+		assertEquals(ProphetRouter.P_INIT * ProphetRouter.GAMMA, 
+				r4.getPredFor(h5), 1e-10);
+	}
+	
+	public void testBoundedPredictabilities() {
+		DeliveryPredictabilities preds = new DeliveryPredictabilities(
+				ProphetRouter.GAMMA, SECONDS_IN_TIME_UNIT, 2, 0.1);
+		
+		preds.set(h1, 0.5);
+		preds.set(h2, 0.3);
+		preds.set(h3, 0.05); // below minimum -> not stored
+		assertEquals(2, preds.size());
+		assertFalse(preds.contains(h3));
+		
+		preds.set(h3, 0.2); // smaller than the smallest -> not stored
+		assertFalse(preds.contains(h3));
+		preds.set(h3, 0.4); // replaces the smallest (h2)
+		assertTrue(preds.contains(h3));
+		assertFalse(preds.contains(h2));
+		assertEquals(0.0, preds.get(h2));
+		
+		preds.set(h1, 0.35); // h3 is now the largest
+		preds.set(h4, 0.36); // replaces h1
+		assertTrue(preds.contains(h3));
+		assertTrue(preds.contains(h4));
+		assertFalse(preds.contains(h1));
+		
+		// age both below the minimum: 0.4 * 0.98^k < 0.1 when k >= 69
+		clock.advance(SECONDS_IN_TIME_UNIT * 69);
+		preds.prune();
+		assertEquals(0, preds.size());
+	}
+	
+	public void testMinimumPredictability() {
+		/* only a minimum value, no maximum size */
+		DeliveryPredictabilities preds = new DeliveryPredictabilities(
+				ProphetRouter.GAMMA, SECONDS_IN_TIME_UNIT, 0, 0.1);
+		
+		preds.set(h1, 0.05); // below minimum -> not stored
+		assertEquals(0, preds.size());
+		assertFalse(preds.contains(h1));
+		
+		preds.set(h1, 0.5);
+		preds.set(h2, 0.3);
+		preds.set(h3, 0.2);
+		assertEquals(3, preds.size());
+		assertEquals(0.5, preds.get(h1), 0.0001);
+		assertEquals(0.2, preds.get(h3), 0.0001);
+		
+		preds.set(h2, 0.01); // drops below minimum -> removed
+		assertFalse(preds.contains(h2));
+		assertEquals(2, preds.size());
+		assertEquals(0.0, preds.get(h2));
+	}
 
 }
\ No newline at end of file
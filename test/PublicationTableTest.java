@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.contentpubsub.ContentFilter;
+import routing.contentpubsub.FilterIndex;
+import routing.contentpubsub.NameContentFilter;
+import routing.pubsub.PublicationTable;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Tests for the publication indexed tables of the pub/sub decision engines.
+ */
+public class PublicationTableTest extends TestCase {
+	private static final double DELTA = 0.000001;
+
+	public void setUp() throws Exception {
+		super.setUp();
+		PublicationTable.reset();
+	}
+
+	public void testInterning() {
+		int a = PublicationTable.getIndex("a");
+		int b = PublicationTable.getIndex("b");
+		assertTrue(a != b);
+		assertEquals(a, PublicationTable.getIndex("a"));
+		assertEquals("b", PublicationTable.getName(b));
+		assertEquals(-1, PublicationTable.getIndex((String)null));
+	}
+
+	public void testTable() {
+		PublicationTable t = new PublicationTable();
+		int a = PublicationTable.getIndex("a");
+		int b = PublicationTable.getIndex("b");
+		int c = PublicationTable.getIndex("c");
+
+		assertFalse(t.contains(a));
+		assertFalse(t.contains(-1));
+		assertEquals(0.5, t.get(a, 0.5), DELTA);
+
+		t.put(c, 0.1);
+		t.put(a, 0.2);
+		t.put(c, 0.3);
+		assertEquals(2, t.size());
+		assertEquals(c, t.getPublication(0));
+		assertEquals(a, t.getPublication(1));
+		assertEquals(0.3, t.get(c, 0.0), DELTA);
+		assertFalse(t.contains(b));
+
+		t.subscribe(b);
+		assertTrue(t.isSubscribed(b));
+		assertFalse(t.isSubscribed(a));
+		assertFalse(t.isSubscribed(-1));
+		t.unsubscribe(b);
+		assertFalse(t.isSubscribed(b));
+	}
+
+	public void testFilterIndex() {
+		TestUtils tu = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = tu.createHost();
+		DTNHost h2 = tu.createHost();
+		Message m = new Message(h1, h2, "M1", 1);
+		m.addProperty(PublicationTable.PUBNAME_PROP, "news");
+
+		FilterIndex index = new FilterIndex();
+		ContentFilter news = new NameContentFilter("news");
+		ContentFilter sports = new NameContentFilter("sports");
+		assertFalse(index.matches(m));
+
+		assertTrue(index.add(sports));
+		assertFalse(index.matches(m));
+		assertTrue(index.add(news));
+		assertFalse(index.add(news));
+		assertEquals(2, index.size());
+		assertTrue(index.matches(m));
+		assertEquals(1, index.getFilters(PublicationTable.getIndex(m)).size());
+
+		assertTrue(index.remove(news));
+		assertFalse(index.matches(m));
+
+		/* filters other than name filters are matched one by one */
+		index.add(new ContentFilter() {
+			public boolean match(Message msg) {
+				return msg.getId().equals("M1");
+			}
+		});
+		assertEquals(1, index.getOtherFilters().size());
+		assertTrue(index.matches(m));
+	}
+}
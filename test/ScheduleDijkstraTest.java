@@ -5,6 +5,7 @@
 package test;
 
 import java.util.List;
+import java.util.Random;
 
 import routing.schedule.ScheduleDijkstra;
 import routing.schedule.ScheduleOracle;
@@ -95,5 +96,86 @@ public class ScheduleDijkstraTest extends TestCase {
 		/* starts directly at 3, early enough for multihop */
 		comparePaths(new int[]{3,12,13,14,20}, d.getShortestPath(3, 20, 40));		
 	}
+	
+	public void testConnected() {
+		oracle.addEntry(15, 1, 6, 10); /* added after the others */
+		List<ScheduleEntry> connected = oracle.getConnected(1, 15);
+		
+		/* in the order of start times; equal times in the order added */
+		assertEquals(4, connected.size());
+		assertEquals(6, connected.get(0).getTo());
+		assertEquals(3, connected.get(1).getTo());
+		assertEquals(4, connected.get(2).getTo());
+		assertEquals(5, connected.get(3).getTo());
+		
+		assertEquals(1, oracle.getConnected(1, 30).size());
+		assertEquals(0, oracle.getConnected(1, 30.1).size());
+		assertEquals(0, oracle.getConnected(7, 0).size());
+		
+		/* changing the delta of an entry moves it */
+		connected.get(3).setDelta(-25);
+		assertEquals(5, oracle.getConnected(1, 0).get(0).getTo());
+		assertEquals(3, oracle.getConnected(1, 15).size());
+	}
+	
+	public void testRandomSchedules() {
+		final int NROF_NODES = 30;
+		Random rng = new Random(7);
+		oracle = new ScheduleOracle();
+		d = new ScheduleDijkstra(oracle);
+		
+		for (int i=0; i<1000; i++) {
+			oracle.addEntry(rng.nextInt(1000), rng.nextInt(NROF_NODES), 
+					rng.nextInt(NROF_NODES), 1 + rng.nextInt(100));
+		}
+		
+		for (int i=0; i<100; i++) {
+			int from = rng.nextInt(NROF_NODES);
+			int to = rng.nextInt(NROF_NODES);
+			double start = rng.nextInt(1000);
+			double arrival = getEarliestArrival(from, to, start, NROF_NODES);
+			List<ScheduleEntry> path = d.getShortestPath(from, to, start);
+			
+			if (from == to || arrival == Double.MAX_VALUE) {
+				assertEquals(0, path.size());
+				continue;
+			}
+			
+			/* a valid path that arrives at the earliest possible time */
+			double time = start;
+			int at = from;
+			for (ScheduleEntry se : path) {
+				assertEquals(at, se.getFrom());
+				assertTrue(se.getTime() >= time);
+				time = se.getDestinationTime();
+				at = se.getTo();
+			}
+			assertEquals(to, at);
+			assertEquals(arrival, time);
+		}
+	}
+	
+	/**
+	 * Returns the earliest arrival time by relaxing all entries until
+	 * nothing changes
+	 */
+	private double getEarliestArrival(int from, int to, double start, 
+			int nrofNodes) {
+		double[] times = new double[nrofNodes];
+		java.util.Arrays.fill(times, Double.MAX_VALUE);
+		times[from] = start;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (ScheduleEntry se : oracle.getEntries()) {
+				if (se.getTime() >= times[se.getFrom()] && 
+						se.getDestinationTime() < times[se.getTo()]) {
+					times[se.getTo()] = se.getDestinationTime();
+					changed = true;
+				}
+			}
+		}
+		return times[to];
+	}
 
 }
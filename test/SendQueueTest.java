@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import routing.SendQueue;
+import core.Connection;
+import core.Message;
+
+/**
+ * Tests for the SendQueue
+ */
+public class SendQueueTest extends AbstractRouterTest {
+	private Message m[];
+	private int nrof = 5;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		setRouterProto(new EpidemicRouter(ts));
+		super.setUp();
+
+		m = new Message[nrof];
+		for (int i=0; i<nrof; i++) {
+			m[i] = new Message(h0, h1, "M" + i, 1);
+		}
+	}
+
+	private List<Message> toList(SendQueue q) {
+		List<Message> list = new ArrayList<Message>();
+		for (Message msg : q) {
+			list.add(msg);
+		}
+		return list;
+	}
+
+	public void testFifoOrder() {
+		SendQueue q = new SendQueue(h0, MessageRouter.Q_MODE_FIFO);
+		for (int i=0; i<nrof; i++) {
+			q.add(m[i]);
+		}
+		assertEquals(nrof, q.size());
+
+		List<Message> list = toList(q);
+		for (int i=0; i<nrof; i++) {
+			assertEquals(m[i], list.get(i));
+		}
+		assertTrue(q.compare(m[0], m[4]) < 0);
+		assertTrue(q.compare(m[3], m[1]) > 0);
+
+		/* re-adding moves the message to the end */
+		q.add(m[0]);
+		list = toList(q);
+		assertEquals(nrof, list.size());
+		assertEquals(m[1], list.get(0));
+		assertEquals(m[0], list.get(nrof - 1));
+	}
+
+	public void testRemoveWhileIterating() {
+		SendQueue q = new SendQueue(h0, MessageRouter.Q_MODE_FIFO);
+		for (int i=0; i<nrof; i++) {
+			q.add(m[i]);
+		}
+
+		List<Message> seen = new ArrayList<Message>();
+		for (Message msg : q) {
+			seen.add(msg);
+			if (msg == m[1]) {
+				assertTrue(q.remove(m[1].getId()));
+				assertTrue(q.remove(m[2].getId()));
+			}
+		}
+
+		assertEquals(4, seen.size());
+		assertEquals(m[0], seen.get(0));
+		assertEquals(m[1], seen.get(1));
+		assertEquals(m[3], seen.get(2));
+		assertEquals(m[4], seen.get(3));
+		assertEquals(nrof - 2, q.size());
+		assertFalse(q.remove(m[2].getId()));
+
+		/* new messages go to the end in FIFO mode */
+		q.add(m[2]);
+		List<Message> list = toList(q);
+		assertEquals(m[0], list.get(0));
+		assertEquals(m[3], list.get(1));
+		assertEquals(m[4], list.get(2));
+		assertEquals(m[2], list.get(3));
+	}
+
+	public void testRandomOrderIsReproducible() {
+		SendQueue q1 = new SendQueue(h0, MessageRouter.Q_MODE_RANDOM);
+		SendQueue q2 = new SendQueue(h0, MessageRouter.Q_MODE_RANDOM);
+		for (int i=0; i<nrof; i++) {
+			q1.add(m[i]);
+			q2.add(m[i]);
+		}
+		q1.remove(m[2].getId());
+		q2.remove(m[2].getId());
+
+		List<Message> l1 = toList(q1);
+		assertEquals(nrof - 1, l1.size());
+		assertEquals(l1, toList(q2));
+		assertFalse(l1.contains(m[2]));
+		for (int i=1; i<l1.size(); i++) {
+			assertTrue(q1.compare(l1.get(i-1), l1.get(i)) < 0);
+		}
+	}
+
+	public void testRejections() {
+		h0.connect(h1);
+		Connection con = h0.getConnections().get(0);
+		SendQueue q = new SendQueue(h0, MessageRouter.Q_MODE_FIFO);
+		q.add(m[0]);
+		q.add(m[1]);
+
+		assertFalse(q.isRejected(m[0], con));
+		q.setRejected(m[0], con);
+		assertTrue(q.isRejected(m[0], con));
+		assertFalse(q.isRejected(m[1], con));
+
+		/* peer's buffer changes -> rejections are forgotten */
+		h1.createNewMessage(new Message(h1, h2, msgId1, 1));
+		assertFalse(q.isRejected(m[0], con));
+	}
+}
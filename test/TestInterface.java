@@ -8,6 +8,7 @@ import core.CBRConnection;
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
+import core.Settings;
 
 public class TestInterface extends NetworkInterface {
 	
@@ -16,6 +17,10 @@ public class TestInterface extends NetworkInterface {
 		transmitSpeed = speed;
 	}
 	
+	public TestInterface(Settings s) {
+		super(s);
+	}
+	
 	public TestInterface(TestInterface ti) {
 		super(ti);
 	}
@@ -68,8 +73,7 @@ public class TestInterface extends NetworkInterface {
 			assert con.isUp() : "Connection " + con + " was down!";
 
 			if (!isWithinRange(anotherInterface)) {
-				disconnect(con,anotherInterface);
-				connections.remove(i);
+				con.disconnect(this);
 			}
 			else {
 				i++;
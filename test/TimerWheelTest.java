@@ -0,0 +1,112 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.TimerWheel;
+
+/**
+ * Tests for the TimerWheel
+ */
+public class TimerWheelTest extends TestCase {
+	private static double INF = Double.POSITIVE_INFINITY;
+	private TimerWheel<String> wheel;
+	
+	protected void setUp() throws Exception {
+		super.setUp();
+		wheel = new TimerWheel<String>(1.0);
+	}
+	
+	public void testAdvance() {
+		assertEquals(INF, wheel.getNextTime());
+		wheel.schedule("a", 5.5);
+		wheel.schedule("b", 3);
+		wheel.schedule("c", 5.2);
+		wheel.schedule("d", 3);
+		assertEquals(4, wheel.size());
+		assertEquals(3.0, wheel.getNextTime());
+		
+		assertEquals(0, wheel.advance(2.9).size());
+		assertEquals(Arrays.asList("b", "d"), wheel.advance(3));
+		assertEquals(5.2, wheel.getNextTime());
+		assertEquals(Arrays.asList("c"), wheel.advance(5.3));
+		assertEquals(Arrays.asList("a"), wheel.advance(100));
+		assertEquals(0, wheel.size());
+		assertEquals(INF, wheel.getNextTime());
+		
+		/* already passed time expires at the next advance */
+		wheel.schedule("e", 50);
+		assertEquals(Arrays.asList("e"), wheel.advance(100));
+	}
+	
+	public void testCancel() {
+		TimerWheel.Timer<String> a = wheel.schedule("a", 10);
+		TimerWheel.Timer<String> b = wheel.schedule("b", 20000);
+		wheel.schedule("c", 10);
+		
+		assertTrue(a.isScheduled());
+		wheel.cancel(a);
+		assertFalse(a.isScheduled());
+		wheel.cancel(a); // no effect
+		assertEquals(2, wheel.size());
+		
+		assertEquals(Arrays.asList("c"), wheel.advance(15000));
+		wheel.cancel(b);
+		assertEquals(0, wheel.size());
+		assertEquals(0, wheel.advance(30000).size());
+	}
+	
+	public void testFarTimers() {
+		double[] times = {1e3, 5e4, 3e6, 2e7, 9e8};
+		for (int i = times.length - 1; i >= 0; i--) {
+			wheel.schedule("t" + i, times[i]);
+		}
+		
+		for (int i = 0; i < times.length; i++) {
+			double next = wheel.getNextTime();
+			assertTrue(next <= times[i]);
+			assertEquals(0, wheel.advance(times[i] - 0.5).size());
+			assertEquals(Arrays.asList("t" + i), wheel.advance(times[i]));
+		}
+	}
+	
+	public void testRandomTimers() {
+		Random rng = new Random(42);
+		List<Double> times = new ArrayList<Double>();
+		List<TimerWheel.Timer<String>> timers = 
+			new ArrayList<TimerWheel.Timer<String>>();
+		
+		for (int i = 0; i < 1000; i++) {
+			double time = rng.nextDouble() * 100000;
+			times.add(time);
+			timers.add(wheel.schedule("" + i, time));
+		}
+		for (int i = 0; i < 1000; i += 3) {
+			wheel.cancel(timers.get(i));
+		}
+		
+		double now = 0;
+		double lastExpiry = 0;
+		int nrofExpired = 0;
+		while (wheel.size() > 0) {
+			assertTrue(wheel.getNextTime() >= lastExpiry);
+			now += rng.nextDouble() * 1000;
+			for (String s : wheel.advance(now)) {
+				int i = Integer.parseInt(s);
+				assertTrue(i % 3 != 0);
+				assertTrue(times.get(i) <= now);
+				assertTrue(times.get(i) >= lastExpiry);
+				lastExpiry = times.get(i);
+				nrofExpired++;
+			}
+		}
+		assertEquals(666, nrofExpired);
+	}
+}